@@ -0,0 +1,124 @@
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * AsyncNotificationSink class - Hands notifications to a background thread
+ * Callers only pay for a queue offer. When the queue is full the notification
+ * is dropped and counted instead of blocking the caller.
+ * Linked to: NotificationSink.java
+ */
+public class AsyncNotificationSink implements NotificationSink, AutoCloseable {
+    private static final int DEFAULT_CAPACITY = 1024;
+    
+    // One queued notification
+    private static final class Notification {
+        private final char kind;
+        private final String title;
+        private final String message;
+        
+        Notification(char kind, String title, String message) {
+            this.kind = kind;
+            this.title = title;
+            this.message = message;
+        }
+    }
+    
+    private final NotificationSink delegate;
+    private final BlockingQueue<Notification> queue;
+    private final Thread worker;
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile boolean closed = false;
+    
+    public AsyncNotificationSink(NotificationSink delegate) {
+        this(delegate, DEFAULT_CAPACITY);
+    }
+    
+    public AsyncNotificationSink(NotificationSink delegate, int capacity) {
+        this.delegate = delegate;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.worker = new Thread(this::deliverLoop, "quickchat-notifications");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+    
+    @Override
+    public void success(String title, String message) {
+        enqueue(new Notification('S', title, message));
+    }
+    
+    @Override
+    public void error(String title, String message) {
+        enqueue(new Notification('E', title, message));
+    }
+    
+    @Override
+    public void warning(String title, String message) {
+        enqueue(new Notification('W', title, message));
+    }
+    
+    @Override
+    public void info(String title, String message) {
+        enqueue(new Notification('I', title, message));
+    }
+    
+    @Override
+    public boolean isEnabled() {
+        return delegate.isEnabled();
+    }
+    
+    // Number of notifications dropped because the queue was full
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+    
+    // Stop accepting notifications and deliver whatever is still queued
+    @Override
+    public void close() {
+        closed = true;
+        worker.interrupt();
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private void enqueue(Notification notification) {
+        if (closed || !queue.offer(notification)) {
+            dropped.incrementAndGet();
+        }
+    }
+    
+    private void deliverLoop() {
+        while (!closed || !queue.isEmpty()) {
+            try {
+                Notification notification = closed ? queue.poll() : queue.take();
+                if (notification != null) {
+                    deliver(notification);
+                }
+            } catch (InterruptedException e) {
+                // close() interrupts the wait, the loop then drains the queue
+            } catch (RuntimeException e) {
+                System.err.println("❌ Notification failed: " + e.getMessage());
+            }
+        }
+    }
+    
+    private void deliver(Notification notification) {
+        switch (notification.kind) {
+            case 'S':
+                delegate.success(notification.title, notification.message);
+                break;
+            case 'E':
+                delegate.error(notification.title, notification.message);
+                break;
+            case 'W':
+                delegate.warning(notification.title, notification.message);
+                break;
+            default:
+                delegate.info(notification.title, notification.message);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+
+/**
+ * BatchMessageImporter class - Headless bulk ingestion for QuickChat
+ * Reads one message per line in the form: recipient|message|action
+ * The action is 1/send, 2/disregard or 3/store. Blank lines and lines
+ * starting with '#' are skipped. The message may itself contain '|'.
+ * Linked to: poe.java (--batch) and QuickChat.java
+ */
+public class BatchMessageImporter {
+    // Only the first few bad lines are reported, the rest are just counted
+    private static final int MAX_REPORTED_ERRORS = 10;
+    
+    private final QuickChat quickChat;
+    
+    private int linesRead = 0;
+    private int sentCount = 0;
+    private int storedCount = 0;
+    private int disregardedCount = 0;
+    private int rejectedCount = 0;
+    private long elapsedMillis = 0;
+    
+    public BatchMessageImporter(QuickChat quickChat) {
+        this.quickChat = quickChat;
+    }
+    
+    // Read and process every record from the reader
+    public void importFrom(BufferedReader reader) throws IOException {
+        long start = System.nanoTime();
+        
+        String line;
+        while ((line = reader.readLine()) != null) {
+            linesRead++;
+            if (line.trim().isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            importLine(line);
+        }
+        
+        elapsedMillis += (System.nanoTime() - start) / 1_000_000;
+    }
+    
+    private void importLine(String line) {
+        int firstSeparator = line.indexOf('|');
+        int lastSeparator = line.lastIndexOf('|');
+        if (firstSeparator < 0 || firstSeparator == lastSeparator) {
+            reject("expected recipient|message|action");
+            return;
+        }
+        
+        String recipient = line.substring(0, firstSeparator).trim();
+        String messageContent = line.substring(firstSeparator + 1, lastSeparator);
+        int action = parseAction(line.substring(lastSeparator + 1).trim());
+        if (action == 0) {
+            reject("unknown action \"" + line.substring(lastSeparator + 1).trim() + "\"");
+            return;
+        }
+        
+        MessageStatus status = quickChat.processMessage(recipient, messageContent, action);
+        if (status == null) {
+            reject("message was not accepted (check recipient and length)");
+        } else if (status == MessageStatus.SENT) {
+            sentCount++;
+        } else if (status == MessageStatus.STORED) {
+            storedCount++;
+        } else {
+            disregardedCount++;
+        }
+    }
+    
+    // Map an action field to the QuickChat menu number, 0 if unknown
+    static int parseAction(String action) {
+        switch (action.toLowerCase()) {
+            case "1":
+            case "send":
+                return 1;
+            case "2":
+            case "disregard":
+                return 2;
+            case "3":
+            case "store":
+                return 3;
+            default:
+                return 0;
+        }
+    }
+    
+    private void reject(String reason) {
+        rejectedCount++;
+        if (rejectedCount <= MAX_REPORTED_ERRORS) {
+            System.err.println("❌ Line " + linesRead + ": " + reason);
+        }
+    }
+    
+    // Summary of everything imported so far
+    public String getSummary() {
+        int processed = sentCount + storedCount + disregardedCount;
+        long rate = elapsedMillis > 0 ? (processed * 1000L) / elapsedMillis : processed;
+        
+        return "📊 BATCH IMPORT SUMMARY\n" +
+               "   Lines read: " + linesRead + "\n" +
+               "   ✅ Sent: " + sentCount + "\n" +
+               "   💾 Stored: " + storedCount + "\n" +
+               "   🗑️ Disregarded: " + disregardedCount + "\n" +
+               "   ❌ Rejected: " + rejectedCount + "\n" +
+               "   ⏱️ Time: " + elapsedMillis + " ms (" + rate + " messages/s)";
+    }
+    
+    public int getLinesRead() { return linesRead; }
+    public int getSentCount() { return sentCount; }
+    public int getStoredCount() { return storedCount; }
+    public int getDisregardedCount() { return disregardedCount; }
+    public int getRejectedCount() { return rejectedCount; }
+}
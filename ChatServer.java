@@ -0,0 +1,226 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ChatServer class - Serves the QuickChat console flow to many clients over TCP
+ * Every connection runs register, login and the QuickChat menus on its own
+ * virtual thread, so idle connections cost a small heap object rather than a
+ * platform thread. All sessions share one MessageEngine and one Login, so a
+ * message sent by one client can be found by another.
+ * Connect with any line-based client, for example "nc localhost 5121".
+ * Linked to: poe.java (--serve), Login.java, QuickChat.java, MessageEngine.java and DeliveryPipeline.java
+ */
+public class ChatServer implements AutoCloseable {
+    private static final int MAX_SESSIONS = 100_000;
+    private static final long SESSION_MINUTES = 30;
+    private static final int MAX_LOGIN_ATTEMPTS = 3;
+    
+    private final ServerSocket serverSocket;
+    private final MessageEngine messageEngine;
+    private final Login login;
+    private final SessionManager sessionManager;
+    private final ExecutorService sessions = Executors.newVirtualThreadPerTaskExecutor();
+    private final Set<Socket> openSockets = ConcurrentHashMap.newKeySet();
+    private Thread acceptThread;
+    private volatile DeliveryPipeline deliveryPipeline;
+    private volatile StoredMessageScheduler storedMessageScheduler;
+    private volatile long sendStoredAfterMillis;
+    
+    // Listen on the loopback interface, port 0 picks a free port
+    public ChatServer(int port, MessageEngine messageEngine, Login login) throws IOException {
+        this.serverSocket = new ServerSocket();
+        this.serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        this.messageEngine = messageEngine;
+        this.login = login;
+        this.sessionManager = new SessionManager(MAX_SESSIONS, SESSION_MINUTES, TimeUnit.MINUTES);
+    }
+    
+    // Deliver messages sent in every session through one shared pipeline
+    public void setDeliveryPipeline(DeliveryPipeline deliveryPipeline) {
+        this.deliveryPipeline = deliveryPipeline;
+    }
+    
+    // Send messages stored in every session through one shared scheduler
+    public void setStoredMessageScheduler(StoredMessageScheduler scheduler, long sendAfterMillis) {
+        this.storedMessageScheduler = scheduler;
+        this.sendStoredAfterMillis = sendAfterMillis;
+    }
+    
+    // Accept connections on a background virtual thread
+    public void start() {
+        acceptThread = Thread.ofVirtual().name("quickchat-accept").start(this::acceptLoop);
+    }
+    
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                sessions.execute(() -> serve(socket));
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    System.err.println("❌ Could not accept connection: " + e.getMessage());
+                }
+            }
+        }
+    }
+    
+    // Run one client session from connect to disconnect
+    private void serve(Socket socket) {
+        openSockets.add(socket);
+        if (serverSocket.isClosed()) {
+            // Accepted just before close() disconnected everyone
+            openSockets.remove(socket);
+            closeQuietly(socket);
+            return;
+        }
+        String token = null;
+        try (socket) {
+            // Idle clients are dropped when their login session would have expired
+            socket.setSoTimeout((int) TimeUnit.MINUTES.toMillis(SESSION_MINUTES));
+            PrintStream out = new PrintStream(new BufferedOutputStream(socket.getOutputStream()),
+                false, StandardCharsets.UTF_8);
+            Scanner scanner = new Scanner(new FlushingInputStream(
+                new BufferedInputStream(socket.getInputStream()), out), StandardCharsets.UTF_8);
+            
+            token = authenticate(scanner, out);
+            if (token != null) {
+                QuickChat quickChat = new QuickChat(messageEngine, new ConsoleNotificationSink(out), true, out);
+                quickChat.attachSession(sessionManager, token);
+                quickChat.attachDeliveryPipeline(deliveryPipeline);
+                if (storedMessageScheduler != null) {
+                    quickChat.scheduleStoredMessages(storedMessageScheduler, sendStoredAfterMillis);
+                }
+                quickChat.startMessagingSystem(scanner);
+            }
+            out.println("👋 Goodbye!");
+            out.flush();
+        } catch (NoSuchElementException | SocketTimeoutException | SocketException e) {
+            // Client disconnected or went idle
+        } catch (IOException e) {
+            System.err.println("❌ Session failed: " + e.getMessage());
+        } finally {
+            if (token != null) {
+                sessionManager.invalidate(token);
+            }
+            openSockets.remove(socket);
+        }
+    }
+    
+    // Register if needed, then log in, returns the session token or null
+    private String authenticate(Scanner scanner, PrintStream out) {
+        out.println("🚀 WELCOME TO QUICKCHAT MESSAGING SYSTEM");
+        out.print("Do you already have an account? (y/n): ");
+        
+        if (!scanner.nextLine().trim().equalsIgnoreCase("y")) {
+            out.println("\n📝 REGISTRATION");
+            out.print("Enter username: ");
+            String username = scanner.nextLine();
+            out.print("Enter password: ");
+            String password = scanner.nextLine();
+            out.print("Enter cell phone number: ");
+            String cellPhone = scanner.nextLine();
+            
+            String registrationResult = login.registerUser(username, password, cellPhone);
+            out.println("\n" + registrationResult);
+            if (!registrationResult.equals("User registered successfully.")) {
+                return null;
+            }
+        }
+        
+        for (int attempt = 0; attempt < MAX_LOGIN_ATTEMPTS; attempt++) {
+            out.println("\n🔐 LOGIN");
+            out.print("Enter username: ");
+            String username = scanner.nextLine();
+            out.print("Enter password: ");
+            String password = scanner.nextLine();
+            
+            String token = login.loginUser(username, password, sessionManager);
+            if (token != null) {
+                out.println("\n🎉 Welcome " + username + ", it is great to see you again!");
+                return token;
+            }
+            out.println("\n" + login.returnLoginStatus(false, null, null));
+        }
+        return null;
+    }
+    
+    // Block until the server is closed
+    public void awaitTermination() throws InterruptedException {
+        if (acceptThread != null) {
+            acceptThread.join();
+        }
+    }
+    
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+    
+    public int getActiveSessions() {
+        return openSockets.size();
+    }
+    
+    // Stop accepting, disconnect every client and wait for their sessions to end
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        for (Socket socket : openSockets) {
+            closeQuietly(socket);
+        }
+        if (acceptThread != null) {
+            try {
+                acceptThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        sessions.close();
+    }
+    
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Nothing more can be done for this client
+        }
+    }
+    
+    // Flushes pending output before blocking for input, so prompts reach the client
+    private static class FlushingInputStream extends FilterInputStream {
+        private final PrintStream out;
+        
+        FlushingInputStream(InputStream in, PrintStream out) {
+            super(in);
+            this.out = out;
+        }
+        
+        @Override
+        public int read() throws IOException {
+            out.flush();
+            return super.read();
+        }
+        
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            out.flush();
+            return super.read(buffer, offset, length);
+        }
+    }
+}
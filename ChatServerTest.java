@@ -0,0 +1,81 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Unit tests for the ChatServer class over real local connections
+ */
+public class ChatServerTest {
+    
+    private Login createLogin() {
+        return new Login(new UserRegistry(), new PasswordHasher(1000));
+    }
+    
+    // Send every line up front, then read the whole session until the server hangs up
+    private String runSession(int port, String... lines) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            OutputStream out = socket.getOutputStream();
+            out.write((String.join("\n", lines) + "\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            
+            InputStream in = socket.getInputStream();
+            ByteArrayOutputStream received = new ByteArrayOutputStream();
+            in.transferTo(received);
+            return received.toString(StandardCharsets.UTF_8);
+        }
+    }
+    
+    @Test
+    public void testSessionsShareOneEngine() throws IOException {
+        MessageEngine engine = new MessageEngine();
+        try (ChatServer server = new ChatServer(0, engine, createLogin())) {
+            server.start();
+            
+            String first = runSession(server.getPort(), "n", "kyl_1", "Ch&&sec@ke99!", "+27838968976",
+                "kyl_1", "Ch&&sec@ke99!", "1", "1", "+27838884567", "Where are you? You are late!", "3", "5");
+            assertTrue(first.contains("User registered successfully."));
+            assertTrue(first.contains("Message stored successfully."));
+            assertTrue(first.contains("Goodbye!"));
+            
+            // The second client logs in with the account made by the first and sees its message
+            String second = runSession(server.getPort(), "y", "kyl_1", "wrong", "kyl_1", "Ch&&sec@ke99!",
+                "4", "2", "+27838884567", "5");
+            assertTrue(second.contains("Username or password incorrect"));
+            assertTrue(second.contains("[STORED] Where are you? You are late!"));
+        }
+        assertTrue(engine.size() == 1);
+    }
+    
+    @Test
+    public void testManyIdleConnections() throws IOException {
+        int clients = 500;
+        Socket[] sockets = new Socket[clients];
+        try (ChatServer server = new ChatServer(0, new MessageEngine(), createLogin())) {
+            server.start();
+            for (int i = 0; i < clients; i++) {
+                sockets[i] = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+            }
+            // Every client has been greeted, so each one has its own waiting session
+            for (Socket socket : sockets) {
+                assertTrue(socket.getInputStream().read() >= 0);
+            }
+            assertTrue(server.getActiveSessions() == clients);
+        } finally {
+            for (Socket socket : sockets) {
+                if (socket != null) {
+                    socket.close();
+                }
+            }
+        }
+    }
+    
+    private void assertTrue(boolean condition) {
+        if (!condition) {
+            throw new AssertionError("Expected condition to be true");
+        }
+    }
+}
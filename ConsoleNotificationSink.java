@@ -0,0 +1,42 @@
+import java.io.PrintStream;
+
+/**
+ * ConsoleNotificationSink class - Prints notifications as console lines
+ * Used when there is no display, so AWT is never loaded
+ * Linked to: NotificationSink.java
+ */
+public class ConsoleNotificationSink implements NotificationSink {
+    private final PrintStream out;
+    
+    public ConsoleNotificationSink() {
+        this(System.out);
+    }
+    
+    public ConsoleNotificationSink(PrintStream out) {
+        this.out = out;
+    }
+    
+    @Override
+    public void success(String title, String message) {
+        print("✅ " + title, message);
+    }
+    
+    @Override
+    public void error(String title, String message) {
+        print("❌ " + title, message);
+    }
+    
+    @Override
+    public void warning(String title, String message) {
+        print("⚠️ " + title, message);
+    }
+    
+    @Override
+    public void info(String title, String message) {
+        print(title, message);
+    }
+    
+    private void print(String title, String message) {
+        out.println("[" + title + "] " + message);
+    }
+}
@@ -0,0 +1,155 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ContentIndex class - Inverted index from the words in a message to its handle
+ * Words are split on whitespace and reduced to upper-case ASCII letters, the
+ * same way createMessageHash() reads the first and last words, so "tonight!"
+ * and "TONIGHT" are the same word. Each word keeps a sorted list of handles;
+ * handles are issued in insertion order, so adding is an append and results
+ * come out oldest to newest. Multi-word queries intersect the lists, driven
+ * by the shortest one and binary searching the rest, newest match first.
+ * Linked to: MessageStore.java and Message.java
+ */
+public class ContentIndex {
+    
+    // Sorted handles of the messages that contain one word
+    private static class Postings {
+        private int[] handles = new int[2];
+        private int count;
+    }
+    
+    private final Map<String, Postings> postings = new HashMap<>();
+    
+    // Words of a message or query, in order, without repeats
+    public static List<String> tokenize(String content) {
+        List<String> words = new ArrayList<>();
+        if (content == null) {
+            return words;
+        }
+        
+        StringBuilder word = new StringBuilder();
+        int length = content.length();
+        for (int i = 0; i <= length; i++) {
+            char c = i < length ? content.charAt(i) : ' ';
+            if (Message.isWhitespace(c)) {
+                if (word.length() > 0) {
+                    String token = word.toString();
+                    if (!words.contains(token)) {
+                        words.add(token);
+                    }
+                    word.setLength(0);
+                }
+            } else if (c >= 'a' && c <= 'z') {
+                word.append((char) (c - ('a' - 'A')));
+            } else if (c >= 'A' && c <= 'Z') {
+                word.append(c);
+            }
+        }
+        return words;
+    }
+    
+    // Index a message handle under every word in its content
+    public void add(String content, int handle) {
+        for (String word : tokenize(content)) {
+            Postings list = postings.computeIfAbsent(word, key -> new Postings());
+            if (list.count == list.handles.length) {
+                list.handles = Arrays.copyOf(list.handles, list.count * 2);
+            }
+            list.handles[list.count++] = handle;
+        }
+    }
+    
+    // Remove a message handle from every word in its content
+    public void remove(String content, int handle) {
+        for (String word : tokenize(content)) {
+            Postings list = postings.get(word);
+            if (list == null) {
+                continue;
+            }
+            int position = Arrays.binarySearch(list.handles, 0, list.count, handle);
+            if (position >= 0) {
+                list.count--;
+                System.arraycopy(list.handles, position + 1, list.handles, position, list.count - position);
+                if (list.count == 0) {
+                    postings.remove(word);
+                }
+            }
+        }
+    }
+    
+    // Give every handle its new number after the store compacts, -1 drops it; order is kept, so lists stay sorted
+    public void renumber(int[] newHandles) {
+        Iterator<Postings> lists = postings.values().iterator();
+        while (lists.hasNext()) {
+            Postings list = lists.next();
+            int count = 0;
+            for (int i = 0; i < list.count; i++) {
+                int handle = newHandles[list.handles[i]];
+                if (handle >= 0) {
+                    list.handles[count++] = handle;
+                }
+            }
+            list.count = count;
+            if (count == 0) {
+                lists.remove();
+            }
+        }
+    }
+    
+    // Handles of up to limit messages containing every word of the query, newest first
+    public int[] search(String query, int limit) {
+        List<String> words = tokenize(query);
+        if (words.isEmpty() || limit <= 0) {
+            return new int[0];
+        }
+        
+        // Walk the shortest list and look the others up, so a rare word keeps it cheap
+        Postings[] lists = new Postings[words.size()];
+        for (int i = 0; i < lists.length; i++) {
+            lists[i] = postings.get(words.get(i));
+            if (lists[i] == null) {
+                return new int[0];
+            }
+        }
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.count, b.count));
+        
+        int[] result = new int[Math.min(limit, lists[0].count)];
+        int found = 0;
+        int[] upperBounds = new int[lists.length];
+        for (int i = 1; i < lists.length; i++) {
+            upperBounds[i] = lists[i].count;
+        }
+        
+        for (int i = lists[0].count - 1; i >= 0 && found < result.length; i--) {
+            int handle = lists[0].handles[i];
+            boolean inAll = true;
+            for (int j = 1; j < lists.length && inAll; j++) {
+                // Going newest to oldest, so each later search can stop where the last one landed
+                int position = Arrays.binarySearch(lists[j].handles, 0, upperBounds[j], handle);
+                upperBounds[j] = position >= 0 ? position : -position - 1;
+                inAll = position >= 0;
+            }
+            if (inAll) {
+                result[found++] = handle;
+            }
+        }
+        return found == result.length ? result : Arrays.copyOf(result, found);
+    }
+    
+    // Number of messages containing a word
+    public int countOf(String word) {
+        List<String> words = tokenize(word);
+        Postings list = words.size() == 1 ? postings.get(words.get(0)) : null;
+        return list == null ? 0 : list.count;
+    }
+    
+    // Number of different words indexed
+    public int wordCount() {
+        return postings.size();
+    }
+}
@@ -0,0 +1,76 @@
+import java.util.List;
+
+/**
+ * Unit tests for the ContentIndex class and word search in MessageEngine
+ */
+public class ContentIndexTest {
+    
+    @Test
+    public void testTokenizeMatchesHashWords() {
+        List<String> words = ContentIndex.tokenize("  Hi Mike,\tcan you join us for dinner tonight! 123 hi");
+        assertTrue(words.get(0).equals("HI"));
+        assertTrue(words.get(1).equals("MIKE"));
+        assertTrue(words.contains("TONIGHT"));
+        assertTrue(!words.contains(""));
+        assertEquals(9, words.size());
+        
+        // The hash is built from the same first and last words
+        Message message = new Message();
+        message.setMessageID("0012345678");
+        message.setMessageContent("Hi Mike, can you join us for dinner tonight!");
+        List<String> hashWords = ContentIndex.tokenize(message.getMessageContent());
+        assertTrue(message.createMessageHash(1).endsWith(hashWords.get(0) + hashWords.get(hashWords.size() - 1)));
+    }
+    
+    @Test
+    public void testIntersectionNewestFirst() {
+        ContentIndex index = new ContentIndex();
+        index.add("dinner tonight", 0);
+        index.add("lunch tonight", 1);
+        index.add("Dinner at eight, tonight?", 2);
+        index.add("dinner tomorrow", 3);
+        
+        int[] handles = index.search("tonight DINNER", 10);
+        assertEquals(2, handles.length);
+        assertEquals(2, handles[0]);
+        assertEquals(0, handles[1]);
+        assertEquals(1, index.search("dinner", 1).length);
+        assertEquals(0, index.search("breakfast dinner", 10).length);
+        
+        index.remove("Dinner at eight, tonight?", 2);
+        assertEquals(0, index.search("tonight dinner", 10)[0]);
+        assertEquals(2, index.countOf("dinner"));
+    }
+    
+    @Test
+    public void testEngineSearchFollowsSendsAndDeletes() {
+        QuickChat quickChat = new QuickChat(new NoOpNotificationSink(), false);
+        for (int i = 0; i < 5000; i++) {
+            String extra = i % 100 == 0 ? " pizza" : "";
+            quickChat.processMessage("+27718693002", "Message number " + i + " about dinner" + extra, i % 3 + 1);
+        }
+        MessageEngine engine = quickChat.getMessageEngine();
+        
+        Message[] found = engine.findByContent("pizza dinner", 100);
+        assertEquals(50, found.length);
+        assertTrue(found[0].getMessageContent().startsWith("Message number 4900 "));
+        assertTrue(found[49].getMessageContent().startsWith("Message number 0 "));
+        
+        quickChat.deleteMessage(found[0].getMessageHash());
+        found = engine.findByContent("PIZZA", 3);
+        assertEquals(3, found.length);
+        assertTrue(found[0].getMessageContent().startsWith("Message number 4800 "));
+    }
+    
+    private void assertTrue(boolean condition) {
+        if (!condition) {
+            throw new AssertionError("Expected condition to be true");
+        }
+    }
+    
+    private void assertEquals(int expected, int actual) {
+        if (expected != actual) {
+            throw new AssertionError("Expected " + expected + " but was " + actual);
+        }
+    }
+}
@@ -0,0 +1,248 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * DeliveryPipeline class - Bounded, batching queue between QuickChat and a transport
+ * Senders only wait for a queue slot. A background thread takes whatever is
+ * queued, up to one batch, and hands it to the MessageTransport in one call.
+ * Failed batches are retried with exponential backoff and jitter, and given
+ * up on after a few attempts. Their messages then go to the undelivered
+ * handler, which QuickChat uses to store them again for a later retry.
+ * When the queue is full, submit() waits briefly and then refuses the
+ * message, so a slow transport pushes back on senders instead of growing
+ * the heap.
+ * Latency is measured per batch, from the oldest message being queued until
+ * the transport accepted the batch.
+ * submit() queues under a read lock and close() takes the write lock before
+ * it stops the worker, so nothing can be queued after the worker's last drain.
+ * Linked to: QuickChat.java, MessageTransport.java and poe.java (--deliver-to)
+ */
+public class DeliveryPipeline implements AutoCloseable {
+    private static final int DEFAULT_CAPACITY = 4096;
+    private static final int DEFAULT_BATCH_SIZE = 256;
+    private static final long DEFAULT_ACCEPT_TIMEOUT_MILLIS = 100;
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long BASE_BACKOFF_MILLIS = 10;
+    private static final long MAX_BACKOFF_MILLIS = 2000;
+    private static final long POLL_MILLIS = 50;
+    
+    // Told about each batch once it is delivered or given up on
+    public interface Listener {
+        void onBatchDelivered(int size, long latencyNanos, int attempts);
+        void onBatchFailed(List<Message> batch, IOException error);
+    }
+    
+    // One queued message and when it was queued
+    private static final class Pending {
+        private final Message message;
+        private final long queuedNanos;
+        
+        Pending(Message message, long queuedNanos) {
+            this.message = message;
+            this.queuedNanos = queuedNanos;
+        }
+    }
+    
+    private final MessageTransport transport;
+    private final BlockingQueue<Pending> queue;
+    private final int batchSize;
+    private final long acceptTimeoutMillis;
+    private final Thread worker;
+    private volatile Listener listener;
+    private volatile Consumer<List<Message>> undeliveredHandler;
+    private volatile boolean closed = false;
+    
+    // Held for reading while queueing, for writing while closing
+    private final ReentrantReadWriteLock closeLock = new ReentrantReadWriteLock();
+    
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder totalLatencyNanos = new LongAdder();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+    
+    // Guarded by itself: messages delivered or given up on, for awaitIdle()
+    private final Object idleLock = new Object();
+    private long finished = 0;
+    
+    public DeliveryPipeline(MessageTransport transport) {
+        this(transport, DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE, DEFAULT_ACCEPT_TIMEOUT_MILLIS);
+    }
+    
+    public DeliveryPipeline(MessageTransport transport, int capacity, int batchSize, long acceptTimeoutMillis) {
+        this.transport = transport;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.acceptTimeoutMillis = acceptTimeoutMillis;
+        this.worker = new Thread(this::deliverLoop, "quickchat-delivery");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+    
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+    
+    // Take back the messages of batches given up on, null to drop them after reporting
+    public void setUndeliveredHandler(Consumer<List<Message>> undeliveredHandler) {
+        this.undeliveredHandler = undeliveredHandler;
+    }
+    
+    // Queue a message for delivery, false if the queue stayed full or the pipeline is closed
+    public boolean submit(Message message) {
+        closeLock.readLock().lock();
+        try {
+            if (!closed && queue.offer(new Pending(message, System.nanoTime()), 
+                    acceptTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                accepted.increment();
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closeLock.readLock().unlock();
+        }
+        rejected.increment();
+        return false;
+    }
+    
+    // Wait until every accepted message has been delivered or given up on
+    public boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (idleLock) {
+            while (finished < accepted.sum()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(idleLock, remaining);
+            }
+            return true;
+        }
+    }
+    
+    // Stop accepting messages, deliver what is still queued and close the transport
+    @Override
+    public void close() throws IOException {
+        // Waits for submits already queueing, at most the accept timeout
+        closeLock.writeLock().lock();
+        try {
+            closed = true;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        transport.close();
+    }
+    
+    private void deliverLoop() {
+        List<Pending> batch = new ArrayList<>(batchSize);
+        while (!closed || !queue.isEmpty()) {
+            try {
+                // Polling rather than interrupting the worker, an interrupt would close file transports
+                Pending first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                deliver(batch);
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+    
+    private void deliver(List<Pending> batch) {
+        List<Message> messages = new ArrayList<>(batch.size());
+        long oldest = batch.get(0).queuedNanos;
+        for (Pending pending : batch) {
+            messages.add(pending.message);
+            oldest = Math.min(oldest, pending.queuedNanos);
+        }
+        
+        for (int attempt = 1; ; attempt++) {
+            try {
+                transport.deliver(messages);
+                long latency = System.nanoTime() - oldest;
+                delivered.add(messages.size());
+                batches.increment();
+                totalLatencyNanos.add(latency);
+                maxLatencyNanos.accumulateAndGet(latency, Math::max);
+                Listener current = listener;
+                if (current != null) {
+                    current.onBatchDelivered(messages.size(), latency, attempt);
+                }
+                break;
+            } catch (IOException e) {
+                if (attempt >= MAX_ATTEMPTS) {
+                    failed.add(messages.size());
+                    Listener current = listener;
+                    if (current != null) {
+                        current.onBatchFailed(messages, e);
+                    } else {
+                        System.err.println("❌ Gave up delivering " + messages.size() + " message(s): " + e.getMessage());
+                    }
+                    Consumer<List<Message>> handler = undeliveredHandler;
+                    if (handler != null) {
+                        handler.accept(messages);
+                    }
+                    break;
+                }
+                retries.increment();
+                backoff(attempt);
+            }
+        }
+        
+        synchronized (idleLock) {
+            finished += messages.size();
+            idleLock.notifyAll();
+        }
+    }
+    
+    // Exponential backoff with full jitter so retries from many batches spread out
+    private void backoff(int attempt) {
+        long ceiling = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << (attempt - 1));
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    public long getAcceptedCount() { return accepted.sum(); }
+    public long getRejectedCount() { return rejected.sum(); }
+    public long getDeliveredCount() { return delivered.sum(); }
+    public long getFailedCount() { return failed.sum(); }
+    public long getBatchCount() { return batches.sum(); }
+    public long getRetryCount() { return retries.sum(); }
+    public int getQueuedCount() { return queue.size(); }
+    
+    // One line summary of delivery so far
+    public String getSummary() {
+        long batchCount = batches.sum();
+        double averageMillis = batchCount == 0 ? 0 : totalLatencyNanos.sum() / (double) batchCount / 1_000_000;
+        return String.format("📦 Delivered %d message(s) in %d batch(es), latency avg %.1f ms, max %.1f ms | "
+            + "%d retried, %d failed, %d refused while full",
+            delivered.sum(), batchCount, averageMillis, maxLatencyNanos.get() / 1_000_000.0,
+            retries.sum(), failed.sum(), rejected.sum());
+    }
+}
@@ -0,0 +1,167 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit tests for the DeliveryPipeline class and its transports
+ */
+public class DeliveryPipelineTest {
+    
+    private QuickChat createQuickChat(DeliveryPipeline pipeline) {
+        QuickChat quickChat = new QuickChat(new NoOpNotificationSink(), false);
+        quickChat.attachDeliveryPipeline(pipeline);
+        return quickChat;
+    }
+    
+    @Test
+    public void testSentMessagesAreDeliveredInOrder() throws Exception {
+        LoopbackMessageTransport transport = new LoopbackMessageTransport();
+        DeliveryPipeline pipeline = new DeliveryPipeline(transport);
+        QuickChat quickChat = createQuickChat(pipeline);
+        for (int i = 0; i < 1000; i++) {
+            quickChat.processMessage("+27718693002", "Message " + i, 1);
+        }
+        quickChat.processMessage("+27718693002", "Kept for later", 3);
+        
+        assertTrue(pipeline.awaitIdle(10, TimeUnit.SECONDS));
+        List<Message> delivered = transport.getDelivered();
+        assertEquals(1000, delivered.size());
+        assertTrue(delivered.get(999).getMessageContent().equals("Message 999"));
+        assertTrue(transport.getBatchCount() == pipeline.getBatchCount());
+        pipeline.close();
+    }
+    
+    @Test
+    public void testFailedBatchesAreRetried() throws Exception {
+        LoopbackMessageTransport transport = new LoopbackMessageTransport();
+        transport.failNext(2);
+        DeliveryPipeline pipeline = new DeliveryPipeline(transport);
+        int[] attempts = { 0 };
+        pipeline.setListener(new DeliveryPipeline.Listener() {
+            @Override
+            public void onBatchDelivered(int size, long latencyNanos, int attemptCount) {
+                attempts[0] = attemptCount;
+            }
+            
+            @Override
+            public void onBatchFailed(List<Message> batch, IOException error) {
+                throw new AssertionError("Batch should have been delivered");
+            }
+        });
+        
+        createQuickChat(pipeline).processMessage("+27718693002", "Hi Mike, can you join us for dinner tonight", 1);
+        assertTrue(pipeline.awaitIdle(10, TimeUnit.SECONDS));
+        assertEquals(3, attempts[0]);
+        assertEquals(2, (int) pipeline.getRetryCount());
+        assertEquals(1, transport.getDelivered().size());
+        pipeline.close();
+    }
+    
+    @Test
+    public void testExhaustedBatchesAreStoredAgain() throws Exception {
+        LoopbackMessageTransport transport = new LoopbackMessageTransport();
+        transport.failNext(5);
+        DeliveryPipeline pipeline = new DeliveryPipeline(transport);
+        QuickChat quickChat = createQuickChat(pipeline);
+        StoredMessageScheduler scheduler = new StoredMessageScheduler(quickChat::sendStoredMessages, 16, () -> 0L);
+        quickChat.scheduleStoredMessages(scheduler, 60_000);
+        pipeline.setUndeliveredHandler(quickChat::storeUndelivered);
+        
+        assertTrue(quickChat.processMessage("+27718693002", "Did you get the cake?", 1) == MessageStatus.SENT);
+        assertTrue(pipeline.awaitIdle(10, TimeUnit.SECONDS));
+        assertEquals(1, (int) pipeline.getFailedCount());
+        assertEquals(0, quickChat.getSentCount());
+        assertEquals(1, quickChat.getStoredCount());
+        assertEquals(1, scheduler.size());
+        pipeline.close();
+    }
+    
+    @Test
+    public void testSubmitRacingCloseLosesNothing() throws Exception {
+        for (int round = 0; round < 20; round++) {
+            LoopbackMessageTransport transport = new LoopbackMessageTransport();
+            DeliveryPipeline pipeline = new DeliveryPipeline(transport, 64, 16, 1);
+            Thread[] senders = new Thread[4];
+            for (int t = 0; t < senders.length; t++) {
+                senders[t] = new Thread(() -> {
+                    for (int i = 0; i < 500; i++) {
+                        Message message = new Message();
+                        message.setMessageContent("Racing close " + i);
+                        pipeline.submit(message);
+                    }
+                });
+                senders[t].start();
+            }
+            Thread.sleep(1);
+            pipeline.close();
+            for (Thread sender : senders) {
+                sender.join();
+            }
+            
+            // Every accepted message was delivered before the worker stopped
+            assertEquals((int) pipeline.getAcceptedCount(), transport.getDelivered().size());
+        }
+    }
+    
+    @Test
+    public void testFullQueueStoresMessageInstead() throws Exception {
+        // A transport that holds the first batch until released, so the queue fills up
+        CountDownLatch release = new CountDownLatch(1);
+        DeliveryPipeline pipeline = new DeliveryPipeline(batch -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+        }, 2, 1, 10);
+        QuickChat quickChat = createQuickChat(pipeline);
+        StoredMessageScheduler scheduler = new StoredMessageScheduler(quickChat::sendStoredMessages, 16, () -> 0L);
+        quickChat.scheduleStoredMessages(scheduler, 60_000);
+        
+        MessageStatus last = null;
+        for (int i = 0; i < 5; i++) {
+            last = quickChat.processMessage("+27718693002", "Message " + i, 1);
+        }
+        assertTrue(last == MessageStatus.STORED);
+        assertTrue(pipeline.getRejectedCount() > 0);
+        assertEquals(5, quickChat.getSentCount() + quickChat.getStoredCount());
+        // Messages stored for a full queue are retried like any other stored message
+        assertEquals(quickChat.getStoredCount(), scheduler.size());
+        
+        release.countDown();
+        assertTrue(pipeline.awaitIdle(10, TimeUnit.SECONDS));
+        pipeline.close();
+    }
+    
+    @Test
+    public void testFileTransportWritesImportableLines() throws Exception {
+        Path outbox = Files.createTempFile("quickchat", ".outbox");
+        DeliveryPipeline pipeline = new DeliveryPipeline(new FileMessageTransport(outbox));
+        createQuickChat(pipeline).processMessage("027718693002", "Hi | there\nMike", 1);
+        pipeline.close();
+        
+        QuickChat imported = new QuickChat(new NoOpNotificationSink(), false);
+        try (BufferedReader reader = Files.newBufferedReader(outbox, StandardCharsets.UTF_8)) {
+            new BatchMessageImporter(imported).importFrom(reader);
+        }
+        assertEquals(1, imported.getSentCount());
+        assertTrue(imported.getSentMessages()[0].equals("Hi | there Mike"));
+    }
+    
+    private void assertTrue(boolean condition) {
+        if (!condition) {
+            throw new AssertionError("Expected condition to be true");
+        }
+    }
+    
+    private void assertEquals(int expected, int actual) {
+        if (expected != actual) {
+            throw new AssertionError("Expected " + expected + " but was " + actual);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * FileMessageTransport class - Delivers messages by appending them to an outbox file
+ * Each message becomes one "recipient|message|send" line, the same format
+ * BatchMessageImporter reads. Each batch is built in memory and appended in
+ * one go; if that fails part way the file is cut back to where the batch
+ * started, so a retried batch never leaves duplicate lines in the outbox.
+ * Linked to: MessageTransport.java, DeliveryPipeline.java and poe.java (--deliver-to)
+ */
+public class FileMessageTransport implements MessageTransport {
+    private final FileChannel channel;
+    
+    public FileMessageTransport(Path outboxPath) throws IOException {
+        this.channel = FileChannel.open(outboxPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        this.channel.position(channel.size());
+    }
+    
+    @Override
+    public void deliver(List<Message> batch) throws IOException {
+        StringBuilder lines = new StringBuilder(batch.size() * 64);
+        for (Message message : batch) {
+            lines.append(message.getRecipient()).append('|');
+            // Line breaks would split the record, so they become spaces
+            lines.append(message.getMessageContent().replace('\n', ' ').replace('\r', ' '));
+            lines.append("|send").append(System.lineSeparator());
+        }
+        
+        ByteBuffer bytes = StandardCharsets.UTF_8.encode(lines.toString());
+        long start = channel.position();
+        try {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        } catch (IOException e) {
+            // Drop the part of the batch that did get written before it is retried
+            try {
+                channel.truncate(start);
+                channel.position(start);
+            } catch (IOException truncateError) {
+                e.addSuppressed(truncateError);
+            }
+            throw e;
+        }
+    }
+    
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
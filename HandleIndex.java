@@ -0,0 +1,136 @@
+import java.util.Arrays;
+
+/**
+ * HandleIndex class - Open addressing hash index from a text key to a message handle
+ * Each entry is two ints, the handle and the key's hash code, kept in flat
+ * arrays. The key itself stays in the store's columns and is compared through
+ * a KeyColumn, so the index holds no String, Integer or entry objects.
+ * A later entry for the same key replaces the earlier one, like Map.put().
+ * Linked to: MessageStore.java
+ */
+public class HandleIndex {
+    private static final int EMPTY = -1;
+    private static final int REMOVED = -2;
+    private static final int INITIAL_CAPACITY = 16;
+    
+    // Compares a key with the one stored for a handle
+    public interface KeyColumn {
+        boolean matches(int handle, String key);
+    }
+    
+    private final KeyColumn column;
+    private int[] handles = new int[INITIAL_CAPACITY];
+    private int[] codes = new int[INITIAL_CAPACITY];
+    private int size = 0;
+    private int occupied = 0;  // Live and removed slots, removed ones still lengthen probes
+    
+    public HandleIndex(KeyColumn column) {
+        this.column = column;
+        Arrays.fill(handles, EMPTY);
+    }
+    
+    // Handle stored for a key, or -1 if there is none
+    public int find(String key) {
+        if (key == null) {
+            return -1;
+        }
+        int slot = slotOf(key, spread(key.hashCode()));
+        return slot < 0 ? -1 : handles[slot];
+    }
+    
+    // Point a key at a handle, the key must already be in the handle's column
+    public void put(String key, int handle) {
+        if (key == null) {
+            return;
+        }
+        int code = spread(key.hashCode());
+        int existing = slotOf(key, code);
+        if (existing >= 0) {
+            handles[existing] = handle;
+            return;
+        }
+        
+        if ((occupied + 1) * 4 > handles.length * 3) {
+            resize();
+        }
+        int mask = handles.length - 1;
+        int slot = code & mask;
+        while (handles[slot] >= 0) {
+            slot = (slot + 1) & mask;
+        }
+        if (handles[slot] == EMPTY) {
+            occupied++;
+        }
+        handles[slot] = handle;
+        codes[slot] = code;
+        size++;
+    }
+    
+    // Drop a key, but only if it still points at this handle
+    public void remove(String key, int handle) {
+        if (key == null) {
+            return;
+        }
+        int slot = slotOf(key, spread(key.hashCode()));
+        if (slot >= 0 && handles[slot] == handle) {
+            handles[slot] = REMOVED;
+            size--;
+        }
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    // Point every entry at its handle's new number after the store compacts, -1 drops the entry
+    public void renumber(int[] newHandles) {
+        for (int slot = 0; slot < handles.length; slot++) {
+            if (handles[slot] >= 0) {
+                handles[slot] = newHandles[handles[slot]];
+                if (handles[slot] < 0) {
+                    handles[slot] = REMOVED;
+                    size--;
+                }
+            }
+        }
+    }
+    
+    // Slot holding a key, or -1
+    private int slotOf(String key, int code) {
+        int mask = handles.length - 1;
+        for (int slot = code & mask; handles[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (handles[slot] >= 0 && codes[slot] == code && column.matches(handles[slot], key)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+    
+    // Double when live entries need it, otherwise just clear out removed slots
+    private void resize() {
+        int[] oldHandles = handles;
+        int[] oldCodes = codes;
+        int capacity = (size + 1) * 2 > oldHandles.length ? oldHandles.length * 2 : oldHandles.length;
+        handles = new int[capacity];
+        codes = new int[capacity];
+        Arrays.fill(handles, EMPTY);
+        
+        int mask = capacity - 1;
+        for (int i = 0; i < oldHandles.length; i++) {
+            if (oldHandles[i] >= 0) {
+                int slot = oldCodes[i] & mask;
+                while (handles[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                handles[slot] = oldHandles[i];
+                codes[slot] = oldCodes[i];
+            }
+        }
+        occupied = size;
+    }
+    
+    // String hash codes differ mostly in their low bits once masked, so mix the high bits in
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
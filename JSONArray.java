@@ -1,32 +0,0 @@
-
-public class JSONArray {
-
-    public JSONArray() {
-       
-    }
-
-    public JSONArray(String content) {
-   
-    }
-
-    public void put(JSONObject jsonMessage) {
-
-        throw new UnsupportedOperationException("Unimplemented method 'put'");
-    }
-
-    public char[] toString(int i) {
-    
-        throw new UnsupportedOperationException("Unimplemented method 'toString'");
-    }
-
-    public int length() {
-       
-        throw new UnsupportedOperationException("Unimplemented method 'length'");
-    }
-
-    public JSONObject getJSONObject(int i) {
-      
-        throw new UnsupportedOperationException("Unimplemented method 'getJSONObject'");
-    }
-
-}
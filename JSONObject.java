@@ -1,24 +0,0 @@
-
-public class JSONObject {
-
-    public void put(String string, String messageID) {
- 
-        throw new UnsupportedOperationException("Unimplemented method 'put'");
-    }
-
-    public void put(String string, boolean sent) {
-     
-        throw new UnsupportedOperationException("Unimplemented method 'put'");
-    }
-
-    public String getString(String string) {
-     
-        throw new UnsupportedOperationException("Unimplemented method 'getString'");
-    }
-
-    public boolean getBoolean(String string) {
-       
-        throw new UnsupportedOperationException("Unimplemented method 'getBoolean'");
-    }
-
-}
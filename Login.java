@@ -1,15 +1,31 @@
-import java.util.regex.Pattern;
-import java.util.regex.Matcher;
-
 /**
  * Login class - Handles user registration and authentication
- * Linked to: poe.java (main application)
+ * Users are kept in a UserRegistry that can be shared between threads, and
+ * passwords are only ever stored as salted hashes.
+ * Linked to: poe.java (main application), UserRegistry.java and PasswordHasher.java
  */
 public class Login {
+    private final UserRegistry userRegistry;
+    private final PasswordHasher passwordHasher;
+    
+    // Hash checked when the username is unknown, so both cases take the same time
+    // Made on the first unknown username, two threads racing only hash it twice
+    private volatile String dummyHash;
+    
+    // Last user registered through this object, for testing purposes
     private String storedUsername;
     private String storedPassword;
     private String storedCellPhone;
     
+    public Login() {
+        this(new UserRegistry(), new PasswordHasher());
+    }
+    
+    public Login(UserRegistry userRegistry, PasswordHasher passwordHasher) {
+        this.userRegistry = userRegistry;
+        this.passwordHasher = passwordHasher;
+    }
+    
     // Check if username contains underscore and is no more than 5 characters
     public boolean checkUserName(String username) {
         return username.contains("_") && username.length() <= 5;
@@ -33,13 +49,9 @@ public class Login {
         return hasCapital && hasNumber && hasSpecial;
     }
     
-    // Check cell phone number format
+    // Check cell phone number format (+27 or 027 followed by 9 digits)
     public boolean checkCellPhoneNumber(String cellPhone) {
-        // Regex for South African numbers with country code (+27 or 027) followed by 9 digits
-        String regex = "^(\\+27|027)[0-9]{9}$";
-        Pattern pattern = Pattern.compile(regex);
-        Matcher matcher = pattern.matcher(cellPhone);
-        return matcher.matches();
+        return PhoneNumbers.isValid(cellPhone);
     }
     
     // Register user with validation
@@ -73,20 +85,41 @@ public class Login {
             cellphoneValid = true;
         }
         
-        // If all validations passed, store the credentials
+        // If all validations passed, store the credentials with a hashed password
         if (usernameValid && passwordValid && cellphoneValid) {
+            String passwordHash = passwordHasher.hash(password);
+            String canonicalCellPhone = PhoneNumbers.normalise(cellPhone);
+            if (!userRegistry.register(new UserRegistry.UserAccount(username, passwordHash, canonicalCellPhone))) {
+                return "❌ Username is already registered.\n";
+            }
+            
             this.storedUsername = username;
-            this.storedPassword = password;
-            this.storedCellPhone = cellPhone;
+            this.storedPassword = passwordHash;
+            this.storedCellPhone = canonicalCellPhone;
             return "User registered successfully.";
         }
         
         return message.toString();
     }
     
-    // Verify login credentials
+    // Verify login credentials against the salted hash
     public boolean loginUser(String username, String password) {
-        return username.equals(storedUsername) && password.equals(storedPassword);
+        UserRegistry.UserAccount account = userRegistry.find(username);
+        if (account == null) {
+            String dummy = dummyHash;
+            if (dummy == null) {
+                dummy = passwordHasher.hash("QuickChat-dummy-password");
+                dummyHash = dummy;
+            }
+            passwordHasher.verify(password, dummy);
+            return false;
+        }
+        return passwordHasher.verify(password, account.getPasswordHash());
+    }
+    
+    // Verify login credentials once and start a session, returns its token or null
+    public String loginUser(String username, String password, SessionManager sessionManager) {
+        return loginUser(username, password) ? sessionManager.createSession(username) : null;
     }
     
     // Return login status message
@@ -103,6 +136,7 @@ public class Login {
         return storedUsername;
     }
     
+    // Returns the salted hash, the plain password is never kept
     public String getStoredPassword() {
         return storedPassword;
     }
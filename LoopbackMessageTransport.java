@@ -0,0 +1,39 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * LoopbackMessageTransport class - Keeps delivered messages in memory
+ * Stands in for a real network when testing or running without an outbox.
+ * It can be told to fail a number of deliveries to exercise retries.
+ * Linked to: MessageTransport.java and DeliveryPipeline.java
+ */
+public class LoopbackMessageTransport implements MessageTransport {
+    private final List<Message> delivered = new ArrayList<>();
+    private int failuresLeft = 0;
+    private int batchCount = 0;
+    
+    @Override
+    public synchronized void deliver(List<Message> batch) throws IOException {
+        if (failuresLeft > 0) {
+            failuresLeft--;
+            throw new IOException("Simulated delivery failure");
+        }
+        delivered.addAll(batch);
+        batchCount++;
+    }
+    
+    // Fail the next few deliveries
+    public synchronized void failNext(int deliveries) {
+        this.failuresLeft = deliveries;
+    }
+    
+    // Copy of every message delivered so far, in delivery order
+    public synchronized List<Message> getDelivered() {
+        return new ArrayList<>(delivered);
+    }
+    
+    public synchronized int getBatchCount() {
+        return batchCount;
+    }
+}
@@ -1,12 +1,11 @@
-import javax.swing.JOptionPane;
-import java.util.Random;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 
 /**
  * Message class for QuickChat messaging system
  * Handles message creation, validation, display, and notifications
- * Linked to: QuickChat.java
+ * Notifications go to a NotificationSink, see NotificationSinks for the default
+ * Linked to: QuickChat.java and NotificationSink.java
  */
 public class Message {
     private String messageID;
@@ -16,6 +15,7 @@ public class Message {
     private boolean isSent;
     private boolean isStored;
     private String sender;
+    private NotificationSink notificationSink = NotificationSinks.getDefault();
     
     public Message() {
         this.sender = "You";
@@ -25,41 +25,93 @@ public class Message {
         this.sender = sender;
     }
     
-    // Generate random message ID
+    // Generate a unique 10 digit message ID
     public void generateMessageID() {
-        Random random = new Random();
-        StringBuilder id = new StringBuilder();
-        
-        for (int i = 0; i < 10; i++) {
-            id.append(random.nextInt(10));
-        }
-        
-        this.messageID = id.toString();
-        System.out.println("🔑 Message ID generated: " + this.messageID);
+        this.messageID = MessageIdGenerator.nextID();
     }
     
-    // Create message hash
+    // Create message hash: first two ID digits, message number, first and last words
+    // Single pass over the content, no regex and only the result string is allocated
     public String createMessageHash(int messageNumber) {
         if (messageID == null || messageContent == null) {
             return "";
         }
         
-        // Get first two numbers of message ID
-        String firstTwo = messageID.length() >= 2 ? messageID.substring(0, 2) : messageID;
+        String content = messageContent;
+        int length = content.length();
         
-        // Get first and last words of message
-        String[] words = messageContent.split("\\s+");
-        String firstWord = words.length > 0 ? words[0] : "";
-        String lastWord = words.length > 1 ? words[words.length - 1] : firstWord;
-        
-        // Remove punctuation from words
-        firstWord = firstWord.replaceAll("[^a-zA-Z]", "").toUpperCase();
-        lastWord = lastWord.replaceAll("[^a-zA-Z]", "").toUpperCase();
+        // Find the first and last words the same way split("\\s+") does:
+        // leading whitespace makes the first word empty, one word is both first and last
+        int firstStart = 0;
+        while (firstStart < length && isWhitespace(content.charAt(firstStart))) {
+            firstStart++;
+        }
+        int firstEnd = firstStart;
+        while (firstEnd < length && !isWhitespace(content.charAt(firstEnd))) {
+            firstEnd++;
+        }
+        int lastEnd = length;
+        while (lastEnd > firstStart && isWhitespace(content.charAt(lastEnd - 1))) {
+            lastEnd--;
+        }
+        int lastStart = lastEnd;
+        while (lastStart > firstStart && !isWhitespace(content.charAt(lastStart - 1))) {
+            lastStart--;
+        }
+        if (firstStart > 0) {
+            firstEnd = firstStart;  // Empty first word
+        }
         
-        this.messageHash = firstTwo + ":" + messageNumber + ":" + firstWord + lastWord;
+        // First two digits of the ID, ':', number (at most 11 chars), ':', then the letters
+        int idLength = Math.min(2, messageID.length());
+        char[] hash = new char[idLength + 13 + (firstEnd - firstStart) + (lastEnd - lastStart)];
+        messageID.getChars(0, idLength, hash, 0);
+        int position = idLength;
+        hash[position++] = ':';
+        position = appendNumber(hash, position, messageNumber);
+        hash[position++] = ':';
+        position = appendLetters(hash, position, content, firstStart, firstEnd);
+        position = appendLetters(hash, position, content, lastStart, lastEnd);
+        
+        this.messageHash = new String(hash, 0, position);
         return this.messageHash;
     }
     
+    // Same characters as the regex class \s, also used to split words for ContentIndex
+    static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+    
+    // Copy only ASCII letters, in upper case
+    private static int appendLetters(char[] hash, int position, String content, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = content.charAt(i);
+            if (c >= 'a' && c <= 'z') {
+                hash[position++] = (char) (c - ('a' - 'A'));
+            } else if (c >= 'A' && c <= 'Z') {
+                hash[position++] = c;
+            }
+        }
+        return position;
+    }
+    
+    private static int appendNumber(char[] hash, int position, int number) {
+        long value = number;
+        if (value < 0) {
+            hash[position++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        for (int i = position + digits - 1; i >= position; i--) {
+            hash[i] = (char) ('0' + (value % 10));
+            value /= 10;
+        }
+        return position + digits;
+    }
+    
     // Send message with validation
     public String sendMessage() {
         // Check message length
@@ -84,6 +136,9 @@ public class Message {
         this.isSent = true;
         this.isStored = false;
         
+        // Keep the recipient in the canonical +27 form
+        this.recipient = PhoneNumbers.normalise(recipient);
+        
         // Show success notification
         showMessageSentNotification();
         
@@ -103,13 +158,9 @@ public class Message {
         return "Press 0 to delete message.";
     }
     
-    // Check recipient cell number format
+    // Check recipient cell number format (+27 or 027 followed by 9 digits)
     public boolean checkRecipientCell() {
-        if (recipient == null) return false;
-        
-        String cleanRecipient = recipient.replaceAll("[^0-9+]", "");
-        return (cleanRecipient.startsWith("+27") && cleanRecipient.length() == 12) ||
-               (cleanRecipient.startsWith("027") && cleanRecipient.length() == 11);
+        return PhoneNumbers.isValid(recipient);
     }
     
     // Print message details
@@ -127,7 +178,7 @@ public class Message {
             "📊 Status: " + status + "\n" +
             "⏰ Time: " + timestamp;
         
-        JOptionPane.showMessageDialog(null, details, "📋 Message Information", JOptionPane.INFORMATION_MESSAGE);
+        notificationSink.info("📋 Message Information", details);
         System.out.println("\n" + details);
     }
     
@@ -142,18 +193,23 @@ public class Message {
     
     // Notification methods
     private void showSuccessNotification(String title, String message) {
-        JOptionPane.showMessageDialog(null, message, "✅ " + title, JOptionPane.INFORMATION_MESSAGE);
+        notificationSink.success(title, message);
     }
     
     private void showErrorNotification(String title, String message) {
-        JOptionPane.showMessageDialog(null, message, "❌ " + title, JOptionPane.ERROR_MESSAGE);
+        notificationSink.error(title, message);
     }
     
     private void showWarningNotification(String title, String message) {
-        JOptionPane.showMessageDialog(null, message, "⚠️ " + title, JOptionPane.WARNING_MESSAGE);
+        notificationSink.warning(title, message);
     }
     
     private void showMessageSentNotification() {
+        // Skip building the text when nobody will see it
+        if (!notificationSink.isEnabled()) {
+            return;
+        }
+        
         String notification = 
             "🚀 MESSAGE SENT SUCCESSFULLY!\n\n" +
             "📱 To: " + recipient + "\n" +
@@ -162,7 +218,7 @@ public class Message {
             "📝 Message: " + (messageContent.length() > 30 ? messageContent.substring(0, 30) + "..." : messageContent) + "\n" +
             "⏰ Time: " + LocalDateTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss"));
         
-        JOptionPane.showMessageDialog(null, notification, "💬 Message Delivered", JOptionPane.INFORMATION_MESSAGE);
+        notificationSink.info("💬 Message Delivered", notification);
     }
     
     // Getters and setters
@@ -178,6 +234,9 @@ public class Message {
     public void setSent(boolean sent) { this.isSent = sent; }
     public void setStored(boolean stored) { this.isStored = stored; }
     public void setSender(String sender) { this.sender = sender; }
+    public void setNotificationSink(NotificationSink notificationSink) { this.notificationSink = notificationSink; }
+    public void setMessageID(String messageID) { this.messageID = messageID; }
+    public void setMessageHash(String messageHash) { this.messageHash = messageHash; }
     
     public String getMessageID() { return messageID; }
     public String getMessageHash() { return messageHash; }
@@ -0,0 +1,167 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
+
+/**
+ * MessageAnalytics class - Bulk report figures computed in parallel over a MessageSnapshot
+ * Every aggregate is a histogram: the snapshot is split into a few ranges
+ * per core, each range is counted into its own array on the common fork/join
+ * pool, and the arrays are added together. Nothing is shared while counting,
+ * so the work scales with the cores, and writers only wait while the snapshot
+ * is copied, never while it is analysed.
+ * Unlike MessageStatistics, which is kept up to date on every change, these
+ * figures are recomputed on request, so any question can be asked of them.
+ * Linked to: MessageSnapshot.java, MessageEngine.java and QuickChat.java
+ */
+public class MessageAnalytics {
+    // Smaller ranges cost more to schedule than they save
+    private static final int MIN_RANGE = 16 * 1024;
+    
+    private final MessageSnapshot snapshot;
+    private int[] lengths;  // Content length per message, worked out once on first use
+    
+    public MessageAnalytics(MessageSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+    
+    // Analyse a consistent snapshot of an engine
+    public static MessageAnalytics of(MessageEngine engine) {
+        return new MessageAnalytics(engine.analyticsSnapshot());
+    }
+    
+    public int size() {
+        return snapshot.size();
+    }
+    
+    // Messages per status, indexed by MessageStatus.ordinal()
+    public int[] countByStatus() {
+        return histogram(MessageStatus.values().length, i -> snapshot.statuses[i]);
+    }
+    
+    // Messages per recipient number in any format, the busiest first, at most limit entries
+    public Map<String, Integer> countByRecipient(int limit) {
+        RecipientDictionary recipients = snapshot.getRecipients();
+        int[] counts = histogram(recipients.canonicalSize(), snapshot::getCanonicalRecipient);
+        
+        Integer[] codes = new Integer[counts.length];
+        int used = 0;
+        for (int code = 0; code < counts.length; code++) {
+            if (counts[code] > 0 && code != RecipientDictionary.NO_NUMBER) {
+                codes[used++] = code;
+            }
+        }
+        Arrays.sort(codes, 0, used, (a, b) -> Integer.compare(counts[b], counts[a]));
+        
+        Map<String, Integer> result = new LinkedHashMap<>();
+        for (int i = 0; i < Math.min(limit, used); i++) {
+            result.put(recipients.canonicalTextOf(codes[i]), counts[codes[i]]);
+        }
+        return result;
+    }
+    
+    // Messages of a status (null for any) per content length, lengths over MAX_LENGTH share the last entry
+    public int[] lengthHistogram(MessageStatus status) {
+        int[] lengths = lengths();
+        return histogram(MessageStatistics.MAX_LENGTH + 1, i -> matches(i, status)
+            ? Math.min(lengths[i], MessageStatistics.MAX_LENGTH) : -1);
+    }
+    
+    // Content length at a percentile (0-100) of messages with a status (null for any), -1 if there are none
+    public int lengthPercentile(double percentile, MessageStatus status) {
+        int[] histogram = lengthHistogram(status);
+        long total = 0;
+        for (int count : histogram) {
+            total += count;
+        }
+        if (total == 0) {
+            return -1;
+        }
+        
+        // Nearest rank: the smallest length with at least that share of messages at or below it
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+        for (int length = 0; length < histogram.length; length++) {
+            seen += histogram[length];
+            if (seen >= rank) {
+                return length;
+            }
+        }
+        return histogram.length - 1;
+    }
+    
+    // Up to limit longest messages with a status (null for any), longest first, earliest first on ties
+    public Message[] longest(int limit, MessageStatus status) {
+        if (limit <= 0) {
+            return new Message[0];
+        }
+        
+        // The histogram gives the shortest length that can make the cut, so only candidates are sorted
+        int[] histogram = lengthHistogram(status);
+        int threshold = histogram.length - 1;
+        for (int seen = histogram[threshold]; seen < limit && threshold > 0; ) {
+            seen += histogram[--threshold];
+        }
+        int cut = threshold;
+        int[] lengths = lengths();
+        int[] candidates = IntStream.range(0, snapshot.size()).parallel()
+            .filter(i -> matches(i, status) && lengths[i] >= cut)
+            .toArray();
+        
+        List<Message> messages = new ArrayList<>(candidates.length);
+        for (int index : candidates) {
+            messages.add(snapshot.getMessage(index));
+        }
+        messages.sort(Comparator.comparingInt((Message message) -> message.getMessageContent().length()).reversed()
+            .thenComparingInt(message -> MessageEngine.messageNumberOf(message.getMessageHash())));
+        return messages.subList(0, Math.min(limit, messages.size())).toArray(new Message[0]);
+    }
+    
+    // Messages per hash prefix, the two digits taken from the message ID, indexed 0-99
+    public int[] countByHashPrefix() {
+        return histogram(100, snapshot::getHashPrefix);
+    }
+    
+    private boolean matches(int index, MessageStatus status) {
+        return status == null || snapshot.statuses[index] == status.ordinal();
+    }
+    
+    private synchronized int[] lengths() {
+        if (lengths == null) {
+            int[] result = new int[snapshot.size()];
+            IntStream.range(0, result.length).parallel().forEach(i -> result[i] = snapshot.getContentLength(i));
+            lengths = result;
+        }
+        return lengths;
+    }
+    
+    // Count every message into bucketOf(index), negative buckets are skipped
+    private int[] histogram(int buckets, IntUnaryOperator bucketOf) {
+        int size = snapshot.size();
+        int ranges = Math.max(1, Math.min(ForkJoinPool.getCommonPoolParallelism() * 4, size / MIN_RANGE));
+        return IntStream.range(0, ranges).parallel()
+            .mapToObj(range -> {
+                int[] counts = new int[buckets];
+                int end = (int) ((long) size * (range + 1) / ranges);
+                for (int i = (int) ((long) size * range / ranges); i < end; i++) {
+                    int bucket = bucketOf.applyAsInt(i);
+                    if (bucket >= 0) {
+                        counts[bucket]++;
+                    }
+                }
+                return counts;
+            })
+            .reduce((a, b) -> {
+                for (int i = 0; i < a.length; i++) {
+                    a[i] += b[i];
+                }
+                return a;
+            })
+            .orElseGet(() -> new int[buckets]);
+    }
+}
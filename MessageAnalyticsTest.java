@@ -0,0 +1,143 @@
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Unit tests for the MessageAnalytics class and the snapshots it reads
+ */
+public class MessageAnalyticsTest {
+    
+    private QuickChat createQuickChat(int messageCount, long seed) {
+        QuickChat quickChat = new QuickChat(new MessageEngine(8), new NoOpNotificationSink(), false);
+        Random random = new Random(seed);
+        for (int i = 0; i < messageCount; i++) {
+            StringBuilder content = new StringBuilder();
+            int length = 1 + random.nextInt(250);
+            for (int j = 0; j < length; j++) {
+                content.append(j % 7 == 0 ? ' ' : (char) ('a' + random.nextInt(26)));
+            }
+            quickChat.processMessage("+2771869300" + random.nextInt(10), content.toString(), 1 + random.nextInt(3));
+        }
+        return quickChat;
+    }
+    
+    @Test
+    public void testAggregatesMatchASerialScan() {
+        QuickChat quickChat = createQuickChat(50_000, 11);
+        MessageEngine engine = quickChat.getMessageEngine();
+        for (Message message : engine.page(MessageStatus.STORED, 0, 500)) {
+            engine.delete(message.getMessageHash());
+        }
+        
+        // What the serial loops would have counted
+        Message[] all = engine.toArray();
+        int[] statusCounts = new int[3];
+        int[] prefixCounts = new int[100];
+        int[] sentLengths = new int[MessageStatistics.MAX_LENGTH + 1];
+        int recipientCount = 0;
+        for (Message message : all) {
+            MessageStatus status = message.isSent() ? MessageStatus.SENT 
+                : message.isStored() ? MessageStatus.STORED : MessageStatus.DISREGARDED;
+            statusCounts[status.ordinal()]++;
+            prefixCounts[Integer.parseInt(message.getMessageHash().substring(0, 2))]++;
+            if (status == MessageStatus.SENT) {
+                sentLengths[message.getMessageContent().length()]++;
+            }
+            if (RecipientIndex.canonicalise(message.getRecipient()).equals("27718693003")) {
+                recipientCount++;
+            }
+        }
+        
+        MessageAnalytics analytics = MessageAnalytics.of(engine);
+        assertEquals(all.length, analytics.size());
+        assertArrayEquals(statusCounts, analytics.countByStatus());
+        assertArrayEquals(prefixCounts, analytics.countByHashPrefix());
+        assertArrayEquals(sentLengths, analytics.lengthHistogram(MessageStatus.SENT));
+        
+        Map<String, Integer> recipients = analytics.countByRecipient(10);
+        assertEquals(10, recipients.size());
+        assertEquals(recipientCount, recipients.get("27718693003"));
+        int previous = Integer.MAX_VALUE;
+        for (int count : recipients.values()) {
+            assertTrue(count <= previous);
+            previous = count;
+        }
+        
+        Message longest = engine.getLongestSent();
+        Message[] top = analytics.longest(5, MessageStatus.SENT);
+        assertEquals(5, top.length);
+        assertTrue(top[0].getMessageHash().equals(longest.getMessageHash()));
+        for (int i = 1; i < top.length; i++) {
+            assertTrue(top[i - 1].getMessageContent().length() >= top[i].getMessageContent().length());
+        }
+        
+        // Nearest rank: the 90th percentile is the length of the ceil(0.9 n)-th shortest sent message
+        int rank = (int) Math.ceil(0.9 * statusCounts[MessageStatus.SENT.ordinal()]);
+        int p90 = 0;
+        for (int seen = sentLengths[0]; seen < rank; ) {
+            seen += sentLengths[++p90];
+        }
+        assertEquals(p90, analytics.lengthPercentile(90, MessageStatus.SENT));
+        assertEquals(-1, new MessageAnalytics(new MessageEngine().analyticsSnapshot()).lengthPercentile(50, null));
+    }
+    
+    @Test
+    public void testSnapshotIsConsistentWhileWritersRun() throws InterruptedException {
+        QuickChat quickChat = createQuickChat(20_000, 3);
+        MessageEngine engine = quickChat.getMessageEngine();
+        Thread writer = new Thread(() -> {
+            Random random = new Random(5);
+            for (int i = 0; i < 20_000; i++) {
+                if (random.nextBoolean()) {
+                    quickChat.processMessage("+27838884567", "Written while analysing " + i, 1 + random.nextInt(3));
+                } else {
+                    Message[] page = engine.page(MessageStatus.SENT, random.nextInt(100), 1);
+                    if (page.length > 0) {
+                        engine.delete(page[0].getMessageHash());
+                    }
+                }
+            }
+        });
+        writer.start();
+        
+        // Each snapshot sees every shard at the same moment, so its counts always agree with each other
+        while (writer.isAlive()) {
+            MessageSnapshot snapshot = engine.analyticsSnapshot();
+            MessageAnalytics analytics = new MessageAnalytics(snapshot);
+            int[] byStatus = analytics.countByStatus();
+            assertEquals(snapshot.size(), byStatus[0] + byStatus[1] + byStatus[2]);
+            int sum = 0;
+            for (int count : analytics.countByRecipient(Integer.MAX_VALUE).values()) {
+                sum += count;
+            }
+            assertEquals(snapshot.size(), sum);
+            if (snapshot.size() > 0) {
+                assertTrue(snapshot.getMessage(snapshot.size() - 1).getMessageHash() != null);
+            }
+        }
+        writer.join();
+        assertEquals(engine.size(), engine.analyticsSnapshot().size());
+    }
+    
+    private void assertTrue(boolean condition) {
+        if (!condition) {
+            throw new AssertionError("Expected condition to be true");
+        }
+    }
+    
+    private void assertEquals(int expected, int actual) {
+        if (expected != actual) {
+            throw new AssertionError("Expected " + expected + " but was " + actual);
+        }
+    }
+    
+    private void assertArrayEquals(int[] expected, int[] actual) {
+        if (expected.length != actual.length) {
+            throw new AssertionError("Expected " + expected.length + " entries but was " + actual.length);
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (expected[i] != actual[i]) {
+                throw new AssertionError("Entry " + i + ": expected " + expected[i] + " but was " + actual[i]);
+            }
+        }
+    }
+}
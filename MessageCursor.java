@@ -0,0 +1,32 @@
+/**
+ * MessageCursor class - Position in a walk over every message of a MessageEngine
+ * Remembers the next sequence number to look at in each shard, which unlike a
+ * handle survives the shard compacting, so every page starts
+ * where the last one ended. Messages added or deleted between pages never make
+ * a page skip or repeat a message, the way they would with an offset, and a
+ * page never walks over the messages before it. A walk over one status view
+ * also passes over messages that join the view behind the last page shown,
+ * so pages stay in insertion order when statuses change between them.
+ * Linked to: MessageEngine.java and QuickChat.java
+ */
+public class MessageCursor {
+    // Next sequence number to look at in each shard, read and advanced by MessageEngine.next()
+    final long[] nextSequences;
+    
+    // Message number of the last message shown, ones that join a view behind it are passed over
+    int lastNumber = Integer.MIN_VALUE;
+    private boolean more = true;
+    
+    MessageCursor(int shardCount) {
+        this.nextSequences = new long[shardCount];
+    }
+    
+    // False once a page has reached the end of every shard
+    public boolean hasMore() {
+        return more;
+    }
+    
+    void setMore(boolean more) {
+        this.more = more;
+    }
+}
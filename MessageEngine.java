@@ -0,0 +1,698 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * MessageEngine class - Thread-safe message state shared by any number of senders
+ * Messages are spread over independent shards, each a MessageStore with its
+ * own lock, chosen by the message number in the hash. Message numbers come
+ * from one atomic counter, so two senders never get the same hash number, and
+ * the counters are LongAdders, so senders on different cores rarely contend.
+ * Lookups by hash go straight to one shard; lookups by ID or recipient ask
+ * every shard, which costs the shard count rather than the message count.
+ * The engine also owns persistence: the write-ahead log and JSON archives.
+ * Linked to: QuickChat.java, MessageStore.java, MessageLog.java and ChatServer.java
+ */
+public class MessageEngine {
+    private static final int SNAPSHOT_INTERVAL = 100_000;
+    private static final long COMMIT_INTERVAL_MILLIS = 10;
+    private static final int RECENT_CAPACITY = 256;
+    
+    // Insertion order across shards is the order of message numbers
+    private static final Comparator<Message> BY_MESSAGE_NUMBER = 
+        Comparator.comparingInt(message -> messageNumberOf(message.getMessageHash()));
+    
+    private final MessageStore[] shards;
+    
+    // One code per recipient number, shared by every shard, the statistics and snapshots
+    private final RecipientDictionary recipients = new RecipientDictionary();
+    private final int shardMask;
+    private final AtomicInteger messageCounter = new AtomicInteger();
+    private final LongAdder totalMessagesSent = new LongAdder();
+    
+    // Report figures, one stripe per shard updated while that shard is locked, so shards never share a lock
+    private final MessageStatistics statistics;
+    
+    // Hashes of the last messages sent, for the recent messages view
+    private final RecentMessages recentlySent = new RecentMessages(RECENT_CAPACITY);
+    
+    // Write-ahead log of every change, null when persistence is off
+    private volatile MessageLog messageLog;
+    private volatile Path snapshotPath;
+    private volatile boolean waitForCommit;
+    private final AtomicBoolean checkpointing = new AtomicBoolean();
+    
+    public MessageEngine() {
+        this(Runtime.getRuntime().availableProcessors() * 2);
+    }
+    
+    public MessageEngine(int shardCount) {
+        // Round up to a power of two so a mask picks the shard
+        int size = Integer.highestOneBit(Math.max(1, shardCount - 1)) << 1;
+        this.shards = new MessageStore[Math.max(1, size)];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new MessageStore(recipients);
+        }
+        this.shardMask = shards.length - 1;
+        this.statistics = new MessageStatistics(recipients, shards.length);
+    }
+    
+    // Reserve the next message number for a hash, never handed out twice
+    public int nextMessageNumber() {
+        return messageCounter.incrementAndGet();
+    }
+    
+    // Check if any shard already holds a message with this ID
+    public boolean containsID(String messageID) {
+        for (MessageStore shard : shards) {
+            synchronized (shard) {
+                if (shard.findByID(messageID) >= 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    // Keep a message with its status and log it
+    public void add(Message message, MessageStatus status) {
+        int shardIndex = shardIndexOf(message.getMessageHash());
+        MessageStore shard = shards[shardIndex];
+        MessageLog log = messageLog;
+        long sequence;
+        synchronized (shard) {
+            int handle = shard.add(message, status);
+            statistics.onAdd(message, status, locatorOf(shardIndex, handle));
+            sequence = appendToLog(log, l -> l.appendAdd(message, status));
+        }
+        if (status == MessageStatus.SENT) {
+            totalMessagesSent.increment();
+            recentlySent.record(message.getMessageHash());
+        }
+        afterLogAppend(log, sequence);
+    }
+    
+    // Delete a message by hash and log it, returns the deleted message or null
+    public Message delete(String messageHash) {
+        MessageLog log = messageLog;
+        long[] sequence = { 0 };
+        Message message = removeByHash(messageHash, 
+            () -> sequence[0] = appendToLog(log, l -> l.appendDelete(messageHash)));
+        afterLogAppend(log, sequence[0]);
+        return message;
+    }
+    
+    // Move a message from one status to another and log it, false if it was not in that status
+    public boolean changeStatus(String messageHash, MessageStatus from, MessageStatus to) {
+        return changeStatus(messageHash, from, to, messageLog);
+    }
+    
+    // Move a message to another status, from any status when from is null, and log it unless log is null
+    private boolean changeStatus(String messageHash, MessageStatus from, MessageStatus to, MessageLog log) {
+        int shardIndex = shardIndexOf(messageHash);
+        MessageStore shard = shards[shardIndex];
+        long sequence;
+        synchronized (shard) {
+            int handle = shard.findByHash(messageHash);
+            if (handle < 0 || (from != null && shard.getStatus(handle) != from)) {
+                return false;
+            }
+            from = shard.getStatus(handle);
+            if (from == to) {
+                return true;
+            }
+            shard.setStatus(handle, to);
+            statistics.onStatusChange(shard.get(handle), from, to, locatorOf(shardIndex, handle));
+            sequence = appendToLog(log, l -> l.appendStatusChange(messageHash, to));
+        }
+        if (to == MessageStatus.SENT) {
+            totalMessagesSent.increment();
+            recentlySent.record(messageHash);
+        } else if (from == MessageStatus.SENT) {
+            totalMessagesSent.decrement();
+        }
+        afterLogAppend(log, sequence);
+        return true;
+    }
+    
+    // Find a message by hash, or null
+    public Message findByHash(String messageHash) {
+        MessageStore shard = shardFor(messageHash);
+        synchronized (shard) {
+            int handle = shard.findByHash(messageHash);
+            return handle < 0 ? null : shard.get(handle);
+        }
+    }
+    
+    // Find a message by ID, or null
+    public Message findByID(String messageID) {
+        for (MessageStore shard : shards) {
+            synchronized (shard) {
+                int handle = shard.findByID(messageID);
+                if (handle >= 0) {
+                    return shard.get(handle);
+                }
+            }
+        }
+        return null;
+    }
+    
+    // Messages sent to a number or number prefix, in insertion order
+    public Message[] findByRecipient(String recipientPrefix) {
+        Message[][] parts = new Message[shards.length][];
+        for (int i = 0; i < shards.length; i++) {
+            MessageStore shard = shards[i];
+            synchronized (shard) {
+                int[] handles = shard.findByRecipient(recipientPrefix);
+                parts[i] = new Message[handles.length];
+                for (int j = 0; j < handles.length; j++) {
+                    parts[i][j] = shard.get(handles[j]);
+                }
+            }
+        }
+        return merge(parts);
+    }
+    
+    // One page of a status view in insertion order, only walks as far as the page
+    public Message[] page(MessageStatus status, int offset, int limit) {
+        int wanted = offset + limit;
+        Message[][] parts = new Message[shards.length][];
+        for (int i = 0; i < shards.length; i++) {
+            MessageStore shard = shards[i];
+            synchronized (shard) {
+                Message[] part = new Message[Math.min(wanted, shard.count(status))];
+                int n = 0;
+                for (int handle = shard.firstHandle(status); handle != -1 && n < part.length; 
+                     handle = shard.handleFrom(status, handle + 1)) {
+                    part[n++] = shard.get(handle);
+                }
+                parts[i] = part;
+            }
+        }
+        Message[] merged = merge(parts);
+        int from = Math.min(offset, merged.length);
+        return Arrays.copyOfRange(merged, from, Math.min(wanted, merged.length));
+    }
+    
+    // Start a walk over every message, see next()
+    public MessageCursor cursor() {
+        return new MessageCursor(shards.length);
+    }
+    
+    // Next page of up to limit messages in insertion order, moves the cursor past them
+    public Message[] next(MessageCursor cursor, int limit) {
+        return next(cursor, null, limit);
+    }
+    
+    // Next page of up to limit messages with a status (any when null) in insertion order, moves the cursor past them
+    public Message[] next(MessageCursor cursor, MessageStatus status, int limit) {
+        // Each shard offers its next limit live messages, the page takes the earliest of those
+        Message[][] offered = new Message[shards.length][];
+        long[][] sequences = new long[shards.length][];
+        boolean more = false;
+        for (int i = 0; i < shards.length; i++) {
+            MessageStore shard = shards[i];
+            synchronized (shard) {
+                offered[i] = new Message[limit];
+                sequences[i] = new long[limit];
+                int n = 0;
+                int handle = shard.handleFrom(status, shard.handleAtSequence(cursor.nextSequences[i]));
+                for (; handle != -1 && n < limit; handle = shard.handleFrom(status, handle + 1)) {
+                    // Joined the view behind the last page, such as a stored message sent since
+                    if (messageNumberOf(shard.getMessageHash(handle)) < cursor.lastNumber) {
+                        continue;
+                    }
+                    sequences[i][n] = shard.getSequence(handle);
+                    offered[i][n++] = shard.get(handle);
+                }
+                offered[i] = Arrays.copyOf(offered[i], n);
+                more |= handle != -1;
+            }
+        }
+        
+        // Merge from the front of every shard's offer, so each shard only ever gives up a prefix
+        Message[] page = new Message[limit];
+        int[] taken = new int[shards.length];
+        int count = 0;
+        while (count < limit) {
+            int earliest = -1;
+            for (int i = 0; i < shards.length; i++) {
+                if (taken[i] < offered[i].length && (earliest < 0 || BY_MESSAGE_NUMBER.compare(
+                        offered[i][taken[i]], offered[earliest][taken[earliest]]) < 0)) {
+                    earliest = i;
+                }
+            }
+            if (earliest < 0) {
+                break;
+            }
+            page[count++] = offered[earliest][taken[earliest]++];
+        }
+        
+        for (int i = 0; i < shards.length; i++) {
+            if (taken[i] > 0) {
+                cursor.nextSequences[i] = sequences[i][taken[i] - 1] + 1;
+            }
+            more |= taken[i] < offered[i].length;
+        }
+        if (count > 0) {
+            cursor.lastNumber = messageNumberOf(page[count - 1].getMessageHash());
+        }
+        cursor.setMore(more);
+        return Arrays.copyOf(page, count);
+    }
+    
+    // Up to count of the last messages sent that are still sent, oldest first
+    public Message[] recentlySent(int count) {
+        List<Message> recent = new ArrayList<>(count);
+        Set<String> seen = new HashSet<>();
+        for (String messageHash : recentlySent.newest(RECENT_CAPACITY)) {
+            if (recent.size() == count) {
+                break;
+            }
+            // Deleted or no longer sent since, or sent twice after a restore
+            Message message = seen.add(messageHash) ? findByHash(messageHash) : null;
+            if (message != null && message.isSent()) {
+                recent.add(message);
+            }
+        }
+        Collections.reverse(recent);
+        return recent.toArray(new Message[0]);
+    }
+    
+    // Up to limit messages containing every word of a query, newest first
+    public Message[] findByContent(String query, int limit) {
+        Message[][] parts = new Message[shards.length][];
+        for (int i = 0; i < shards.length; i++) {
+            MessageStore shard = shards[i];
+            synchronized (shard) {
+                int[] handles = shard.findByContent(query, limit);
+                parts[i] = new Message[handles.length];
+                for (int j = 0; j < handles.length; j++) {
+                    parts[i][j] = shard.get(handles[j]);
+                }
+            }
+        }
+        
+        // Each shard gave its newest matches, the newest overall are among them
+        Message[] merged = merge(parts);
+        Message[] newest = new Message[Math.min(limit, merged.length)];
+        for (int i = 0; i < newest.length; i++) {
+            newest[i] = merged[merged.length - 1 - i];
+        }
+        return newest;
+    }
+    
+    // Copy of all messages in insertion order
+    public Message[] toArray() {
+        Message[][] parts = new Message[shards.length][];
+        for (int i = 0; i < shards.length; i++) {
+            synchronized (shards[i]) {
+                parts[i] = shards[i].toArray();
+            }
+        }
+        return merge(parts);
+    }
+    
+    // Copy of all messages with a status in insertion order
+    public Message[] toArray(MessageStatus status) {
+        Message[][] parts = new Message[shards.length][];
+        for (int i = 0; i < shards.length; i++) {
+            synchronized (shards[i]) {
+                parts[i] = shards[i].toArray(status);
+            }
+        }
+        return merge(parts);
+    }
+    
+    // Point-in-time copy of every message with its status, in insertion order
+    public MessageStore snapshot() {
+        Message[][] messages = new Message[shards.length][];
+        MessageStatus[][] statuses = new MessageStatus[shards.length][];
+        int total = 0;
+        for (int i = 0; i < shards.length; i++) {
+            MessageStore shard = shards[i];
+            synchronized (shard) {
+                messages[i] = new Message[shard.size()];
+                statuses[i] = new MessageStatus[shard.size()];
+                int n = 0;
+                for (int handle = 0; handle < shard.handleLimit(); handle++) {
+                    if (shard.isLive(handle)) {
+                        messages[i][n] = shard.get(handle);
+                        statuses[i][n++] = shard.getStatus(handle);
+                    }
+                }
+            }
+            total += messages[i].length;
+        }
+        
+        // Message number and position packed together so they sort as one long
+        Message[] allMessages = new Message[total];
+        MessageStatus[] allStatuses = new MessageStatus[total];
+        long[] order = new long[total];
+        int position = 0;
+        for (int i = 0; i < shards.length; i++) {
+            for (int j = 0; j < messages[i].length; j++) {
+                allMessages[position] = messages[i][j];
+                allStatuses[position] = statuses[i][j];
+                order[position] = ((long) messageNumberOf(messages[i][j].getMessageHash()) << 32) | position;
+                position++;
+            }
+        }
+        Arrays.sort(order);
+        
+        MessageStore copy = new MessageStore(recipients);
+        for (long entry : order) {
+            int p = (int) entry;
+            copy.add(allMessages[p], allStatuses[p]);
+        }
+        return copy;
+    }
+    
+    // Consistent copy of every message's columns for MessageAnalytics, writers wait only while it is copied
+    public MessageSnapshot analyticsSnapshot() {
+        MessageSnapshot[] result = new MessageSnapshot[1];
+        withAllShardsLocked(0, () -> {
+            int total = 0;
+            for (MessageStore shard : shards) {
+                total += shard.size();
+            }
+            MessageSnapshot snapshot = new MessageSnapshot(total, shards.length, recipients);
+            int position = 0;
+            for (int i = 0; i < shards.length; i++) {
+                position = shards[i].copyInto(snapshot, i, position);
+            }
+            result[0] = snapshot;
+        });
+        return result[0];
+    }
+    
+    // Number of live messages
+    public int size() {
+        int size = 0;
+        for (MessageStore shard : shards) {
+            synchronized (shard) {
+                size += shard.size();
+            }
+        }
+        return size;
+    }
+    
+    // Number of messages with a status
+    public int count(MessageStatus status) {
+        int count = 0;
+        for (MessageStore shard : shards) {
+            synchronized (shard) {
+                count += shard.count(status);
+            }
+        }
+        return count;
+    }
+    
+    // Message slots allocated over all shards
+    public int capacity() {
+        int capacity = 0;
+        for (MessageStore shard : shards) {
+            synchronized (shard) {
+                capacity += shard.capacity();
+            }
+        }
+        return capacity;
+    }
+    
+    // Bytes of message text held in the shards' text pools
+    public long textBytes() {
+        long bytes = 0;
+        for (MessageStore shard : shards) {
+            synchronized (shard) {
+                bytes += shard.textBytes();
+            }
+        }
+        return bytes;
+    }
+    
+    // Messages ever sent, including ones that were deleted later
+    public int getTotalMessagesSent() {
+        return totalMessagesSent.intValue();
+    }
+    
+    public MessageStatistics getStatistics() {
+        return statistics;
+    }
+    
+    // Longest sent message, the earliest one if several share the length, or null
+    public Message getLongestSent() {
+        while (true) {
+            long locator = statistics.getLongestSentLocator();
+            if (locator < 0) {
+                return null;
+            }
+            
+            // The shard may have changed or compacted since, then the locator is read again
+            MessageStore shard = shards[(int) (locator >>> 32)];
+            synchronized (shard) {
+                if (statistics.getLongestSentLocator() == locator) {
+                    return shard.get((int) locator);
+                }
+            }
+        }
+    }
+    
+    public RecipientDictionary getRecipients() {
+        return recipients;
+    }
+    
+    public int getShardCount() {
+        return shards.length;
+    }
+    
+    // Recover from "<base>.snapshot.json" and "<base>.wal", then log every change
+    public void enableWriteAheadLog(Path basePath, boolean waitForCommit) throws IOException {
+        this.snapshotPath = basePath.resolveSibling(basePath.getFileName() + ".snapshot.json");
+        this.waitForCommit = waitForCommit;
+        
+        if (Files.exists(snapshotPath)) {
+            loadMessages(snapshotPath);
+        }
+        
+        // Replay is idempotent, so records already in the snapshot are skipped
+        Path logPath = basePath.resolveSibling(basePath.getFileName() + ".wal");
+        messageLog = MessageLog.open(logPath, new MessageLog.Listener() {
+            @Override
+            public void onAdd(Message message, MessageStatus status) {
+                restore(message, status);
+            }
+            
+            @Override
+            public void onDelete(String messageHash) {
+                removeByHash(messageHash, null);
+            }
+            
+            @Override
+            public void onStatusChange(String messageHash, MessageStatus status) {
+                changeStatus(messageHash, null, status, null);
+            }
+        }, COMMIT_INTERVAL_MILLIS);
+    }
+    
+    // Commit and close the write-ahead log
+    public void closeWriteAheadLog() throws IOException {
+        MessageLog log = messageLog;
+        if (log != null) {
+            messageLog = null;
+            log.close();
+        }
+    }
+    
+    // Save every message to a JSON archive, streaming one message at a time
+    public int saveMessages(Path path) throws IOException {
+        // Write next to the archive first so a failed save never leaves half a file
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        int written;
+        try (MessageJsonWriter writer = new MessageJsonWriter(Files.newBufferedWriter(temp, StandardCharsets.UTF_8))) {
+            for (MessageStore shard : shards) {
+                synchronized (shard) {
+                    for (int handle = 0; handle < shard.handleLimit(); handle++) {
+                        if (shard.isLive(handle)) {
+                            writer.write(shard.get(handle), shard.getStatus(handle));
+                        }
+                    }
+                }
+            }
+            written = writer.getWrittenCount();
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return written;
+    }
+    
+    // Load messages from a JSON archive, reading one message at a time, returns how many were new
+    public int loadMessages(Path path) throws IOException {
+        int loaded = 0;
+        try (MessageJsonReader reader = new MessageJsonReader(Files.newBufferedReader(path, StandardCharsets.UTF_8))) {
+            Message message;
+            while ((message = reader.readMessage()) != null) {
+                if (restore(message, reader.getLastStatus())) {
+                    loaded++;
+                }
+            }
+        }
+        return loaded;
+    }
+    
+    // Message number from a hash like "00:12:HITONIGHT", 0 if there is none
+    public static int messageNumberOf(String messageHash) {
+        if (messageHash == null) {
+            return 0;
+        }
+        int first = messageHash.indexOf(':');
+        int second = messageHash.indexOf(':', first + 1);
+        if (first < 0 || second < 0) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(messageHash.substring(first + 1, second));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+    
+    // Put a message that was created earlier back without logging it again, false if its hash
+    // is already here, as when an archive and a write-ahead log snapshot hold the same messages
+    private boolean restore(Message message, MessageStatus status) {
+        int shardIndex = shardIndexOf(message.getMessageHash());
+        MessageStore shard = shards[shardIndex];
+        synchronized (shard) {
+            if (shard.findByHash(message.getMessageHash()) >= 0) {
+                return false;
+            }
+            int handle = shard.add(message, status);
+            statistics.onAdd(message, status, locatorOf(shardIndex, handle));
+        }
+        if (status == MessageStatus.SENT) {
+            totalMessagesSent.increment();
+            recentlySent.record(message.getMessageHash());
+        }
+        
+        // New hashes must carry on from the highest message number seen
+        int number = messageNumberOf(message.getMessageHash());
+        messageCounter.accumulateAndGet(number, Math::max);
+        return true;
+    }
+    
+    // Remove a message by hash, running onRemoved (null for none) before the shard lock is released
+    private Message removeByHash(String messageHash, Runnable onRemoved) {
+        int shardIndex = shardIndexOf(messageHash);
+        MessageStore shard = shards[shardIndex];
+        synchronized (shard) {
+            int handle = shard.findByHash(messageHash);
+            if (handle < 0) {
+                return null;
+            }
+            MessageStatus status = shard.getStatus(handle);
+            Message removed = shard.remove(handle);
+            statistics.onRemove(removed, status, locatorOf(shardIndex, handle));
+            if (onRemoved != null) {
+                onRemoved.run();
+            }
+            
+            // Reclaims tombstones and text under delete churn, the statistics follow the new handles
+            int[] newHandles = shard.compactIfSparse();
+            if (newHandles != null) {
+                statistics.renumber(shardIndex, newHandles);
+            }
+            return removed;
+        }
+    }
+    
+    // Writes one change to the log, returns the sequence number of its last record
+    private interface LogAppend {
+        long appendTo(MessageLog log) throws IOException;
+    }
+    
+    // Called with the shard lock held, so the records for one hash are in the order the changes
+    // were made and replay never sees a delete before its add, returns 0 if nothing was logged
+    private static long appendToLog(MessageLog log, LogAppend append) {
+        if (log == null) {
+            return 0;
+        }
+        try {
+            return append.appendTo(log);
+        } catch (IOException e) {
+            System.err.println("❌ Could not write to message log: " + e.getMessage());
+            return 0;
+        }
+    }
+    
+    // Called after the shard lock is released, waiting for a commit or writing a snapshot takes a while
+    private void afterLogAppend(MessageLog log, long sequence) {
+        if (log == null || sequence == 0) {
+            return;
+        }
+        try {
+            if (waitForCommit) {
+                log.awaitCommitted(sequence);
+            }
+            // Snapshot and compact so recovery time stays bounded, one thread at a time
+            if (log.getRecordsSinceCheckpoint() >= SNAPSHOT_INTERVAL && checkpointing.compareAndSet(false, true)) {
+                try {
+                    log.checkpoint(() -> saveMessages(snapshotPath));
+                } finally {
+                    checkpointing.set(false);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("❌ Could not write to message log: " + e.getMessage());
+        }
+    }
+    
+    // Shards are always locked in index order, and everywhere else only one at a time, so this cannot deadlock
+    private void withAllShardsLocked(int index, Runnable action) {
+        if (index == shards.length) {
+            action.run();
+            return;
+        }
+        synchronized (shards[index]) {
+            withAllShardsLocked(index + 1, action);
+        }
+    }
+    
+    private MessageStore shardFor(String messageHash) {
+        return shards[shardIndexOf(messageHash)];
+    }
+    
+    private int shardIndexOf(String messageHash) {
+        return messageNumberOf(messageHash) & shardMask;
+    }
+    
+    // Shard and handle in one long, so statistics can point at a message without holding it
+    private static long locatorOf(int shardIndex, int handle) {
+        return ((long) shardIndex << 32) | handle;
+    }
+    
+    // Join per-shard results back into insertion order
+    private static Message[] merge(Message[][] parts) {
+        int total = 0;
+        for (Message[] part : parts) {
+            total += part.length;
+        }
+        Message[] result = new Message[total];
+        int index = 0;
+        for (Message[] part : parts) {
+            System.arraycopy(part, 0, result, index, part.length);
+            index += part.length;
+        }
+        Arrays.sort(result, BY_MESSAGE_NUMBER);
+        return result;
+    }
+}
@@ -0,0 +1,219 @@
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Unit tests for the MessageEngine class with several senders at once
+ */
+public class MessageEngineTest {
+    private static final int SENDERS = 8;
+    private static final int MESSAGES_PER_SENDER = 2000;
+    
+    @Test
+    public void testConcurrentSendersLoseNothing() throws InterruptedException {
+        MessageEngine engine = new MessageEngine(4);
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] senders = new Thread[SENDERS];
+        for (int s = 0; s < SENDERS; s++) {
+            // Each sender has its own front end over the shared engine
+            QuickChat quickChat = new QuickChat(engine, new NoOpNotificationSink(), false);
+            int action = s % 3 + 1;
+            senders[s] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < MESSAGES_PER_SENDER; i++) {
+                    quickChat.processMessage("+27718693002", "Message " + i + " tonight", action);
+                }
+            });
+            senders[s].start();
+        }
+        start.countDown();
+        for (Thread sender : senders) {
+            sender.join();
+        }
+        
+        int total = SENDERS * MESSAGES_PER_SENDER;
+        assertEquals(total, engine.size());
+        assertEquals(total, engine.count(MessageStatus.SENT) + engine.count(MessageStatus.STORED) + 
+            engine.count(MessageStatus.DISREGARDED));
+        assertEquals(engine.count(MessageStatus.SENT), engine.getTotalMessagesSent());
+        
+        // Every message has its own ID and hash number, and all of them are found again
+        Set<String> ids = new HashSet<>();
+        Set<Integer> numbers = new HashSet<>();
+        for (Message message : engine.toArray()) {
+            ids.add(message.getMessageID());
+            numbers.add(MessageEngine.messageNumberOf(message.getMessageHash()));
+            assertTrue(engine.findByHash(message.getMessageHash()).getMessageID().equals(message.getMessageID()));
+        }
+        assertEquals(total, ids.size());
+        assertEquals(total, numbers.size());
+        assertEquals(total, engine.findByRecipient("0277186").length);
+    }
+    
+    @Test
+    public void testResultsComeBackInInsertionOrder() {
+        MessageEngine engine = new MessageEngine(4);
+        QuickChat quickChat = new QuickChat(engine, new NoOpNotificationSink(), false);
+        for (int i = 0; i < 20; i++) {
+            quickChat.processMessage("+27838884567", "Message number " + i, 3);
+        }
+        quickChat.deleteMessage(engine.toArray()[5].getMessageHash());
+        
+        Message[] messages = engine.toArray();
+        assertEquals(19, messages.length);
+        for (int i = 1; i < messages.length; i++) {
+            assertTrue(MessageEngine.messageNumberOf(messages[i - 1].getMessageHash()) < 
+                MessageEngine.messageNumberOf(messages[i].getMessageHash()));
+        }
+        
+        MessageStore snapshot = engine.snapshot();
+        assertEquals(19, snapshot.size());
+        assertTrue(snapshot.get(5).getMessageHash().equals(messages[5].getMessageHash()));
+        assertTrue(engine.findByID(messages[7].getMessageID()).getMessageHash().equals(messages[7].getMessageHash()));
+    }
+    
+    @Test
+    public void testCursorShowsEveryMessageOnceWhileOthersChange() {
+        MessageEngine engine = new MessageEngine(4);
+        QuickChat quickChat = new QuickChat(engine, new NoOpNotificationSink(), false);
+        for (int i = 0; i < 50; i++) {
+            quickChat.processMessage("+27838884567", "Message number " + i, 3);
+        }
+        Message[] before = engine.toArray();
+        
+        // Delete a message not yet shown and add new ones after every page
+        MessageCursor cursor = engine.cursor();
+        Set<String> shown = new HashSet<>();
+        int previous = -1;
+        int pages = 0;
+        while (cursor.hasMore()) {
+            for (Message message : engine.next(cursor, 7)) {
+                assertTrue(shown.add(message.getMessageHash()));
+                int number = MessageEngine.messageNumberOf(message.getMessageHash());
+                assertTrue(number > previous);
+                previous = number;
+            }
+            if (pages < 3) {
+                quickChat.deleteMessage(before[49 - pages].getMessageHash());
+                quickChat.processMessage("+27838884567", "Added on page " + pages, 3);
+            }
+            pages++;
+        }
+        
+        assertEquals(engine.size(), shown.size());
+        assertTrue(!shown.contains(before[49].getMessageHash()));
+        assertTrue(shown.contains(before[0].getMessageHash()));
+    }
+    
+    @Test
+    public void testStatusCursorKeepsOrderWhileStatusesChange() {
+        MessageEngine engine = new MessageEngine(4);
+        QuickChat quickChat = new QuickChat(engine, new NoOpNotificationSink(), false);
+        for (int i = 0; i < 40; i++) {
+            quickChat.processMessage("+27838884567", "Message number " + i, i % 2 == 0 ? 1 : 3);
+        }
+        Message[] stored = engine.toArray(MessageStatus.STORED);
+        
+        // Earlier stored messages are sent after every page, they must not turn up out of order
+        MessageCursor cursor = engine.cursor();
+        Set<String> shown = new HashSet<>();
+        int previous = -1;
+        int pages = 0;
+        while (cursor.hasMore()) {
+            for (Message message : engine.next(cursor, MessageStatus.SENT, 6)) {
+                assertTrue(shown.add(message.getMessageHash()));
+                int number = MessageEngine.messageNumberOf(message.getMessageHash());
+                assertTrue(number > previous);
+                previous = number;
+            }
+            if (pages < stored.length) {
+                engine.changeStatus(stored[pages].getMessageHash(), MessageStatus.STORED, MessageStatus.SENT);
+            }
+            pages++;
+        }
+        
+        // Each page's sends sit before the cursor, every message sent from the start is shown
+        assertEquals(20, shown.size());
+        assertEquals(40, engine.count(MessageStatus.SENT) + engine.count(MessageStatus.STORED));
+        assertTrue(engine.toArray(MessageStatus.SENT)[1].getMessageHash().equals(stored[0].getMessageHash()));
+    }
+    
+    @Test
+    public void testCursorAndStatisticsSurviveCompaction() {
+        MessageEngine engine = new MessageEngine(2);
+        for (int i = 1; i <= 6000; i++) {
+            Message message = new Message();
+            message.setNotificationSink(new NoOpNotificationSink());
+            message.setRecipient("+27838884567");
+            message.setMessageContent("x".repeat(1 + i % 200));
+            message.setMessageHash("00:" + i + ":XX");
+            engine.add(message, MessageStatus.SENT);
+        }
+        MessageCursor cursor = engine.cursor();
+        Message[] first = engine.next(cursor, 10);
+        
+        // Enough deletes for both shards to compact, which renumbers their handles
+        long capacity = engine.capacity();
+        for (int i = 11; i <= 6000; i++) {
+            if (i % 6 != 0) {
+                engine.delete("00:" + i + ":XX");
+            }
+        }
+        assertTrue(engine.capacity() < capacity);
+        
+        int previous = MessageEngine.messageNumberOf(first[first.length - 1].getMessageHash());
+        int shown = first.length;
+        while (cursor.hasMore()) {
+            for (Message message : engine.next(cursor, 64)) {
+                int number = MessageEngine.messageNumberOf(message.getMessageHash());
+                assertTrue(number > previous);
+                previous = number;
+                shown++;
+            }
+        }
+        assertEquals(engine.size(), shown);
+        
+        int longest = 0;
+        for (Message message : engine.toArray(MessageStatus.SENT)) {
+            longest = Math.max(longest, message.getMessageContent().length());
+        }
+        assertEquals(engine.size(), engine.getStatistics().getSentCount());
+        assertEquals(longest, engine.getLongestSent().getMessageContent().length());
+        assertEquals(engine.size(), engine.findByRecipient("+27838884567").length);
+    }
+    
+    @Test
+    public void testRecentlySentKeepsTheNewestStillSent() {
+        MessageEngine engine = new MessageEngine(4);
+        QuickChat quickChat = new QuickChat(engine, new NoOpNotificationSink(), false);
+        for (int i = 0; i < 300; i++) {
+            quickChat.processMessage("+27838884567", "Sent " + i, 1);
+        }
+        quickChat.processMessage("+27838884567", "Stored", 3);
+        Message[] sent = engine.toArray(MessageStatus.SENT);
+        quickChat.deleteMessage(sent[299].getMessageHash());
+        
+        Message[] recent = engine.recentlySent(5);
+        assertEquals(5, recent.length);
+        for (int i = 0; i < recent.length; i++) {
+            assertTrue(recent[i].getMessageContent().equals("Sent " + (294 + i)));
+        }
+        assertEquals(0, new MessageEngine(4).recentlySent(5).length);
+    }
+    
+    private void assertTrue(boolean condition) {
+        if (!condition) {
+            throw new AssertionError("Expected condition to be true");
+        }
+    }
+    
+    private void assertEquals(int expected, int actual) {
+        if (expected != actual) {
+            throw new AssertionError("Expected " + expected + " but was " + actual);
+        }
+    }
+}
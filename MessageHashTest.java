@@ -0,0 +1,58 @@
+import java.util.Random;
+
+/**
+ * Unit tests for Message.createMessageHash against the original regex version
+ */
+public class MessageHashTest {
+    
+    // The original split/replaceAll implementation the fast version must match
+    private String regexHash(String messageID, String content, int messageNumber) {
+        String firstTwo = messageID.length() >= 2 ? messageID.substring(0, 2) : messageID;
+        String[] words = content.split("\\s+");
+        String firstWord = words.length > 0 ? words[0] : "";
+        String lastWord = words.length > 1 ? words[words.length - 1] : firstWord;
+        firstWord = firstWord.replaceAll("[^a-zA-Z]", "").toUpperCase();
+        lastWord = lastWord.replaceAll("[^a-zA-Z]", "").toUpperCase();
+        return firstTwo + ":" + messageNumber + ":" + firstWord + lastWord;
+    }
+    
+    private String fastHash(String messageID, String content, int messageNumber) {
+        Message message = new Message();
+        message.setNotificationSink(new NoOpNotificationSink());
+        message.setMessageID(messageID);
+        message.setMessageContent(content);
+        return message.createMessageHash(messageNumber);
+    }
+    
+    @Test
+    public void testKnownMessages() {
+        assertEquals("00:0:HITONIGHT", fastHash("0012345678", "Hi Mike, can you join us for dinner tonight", 0));
+        assertEquals("12:3:HIHI", fastHash("1234567890", "Hi!", 3));
+        assertEquals("12:3:THERE", fastHash("1234567890", "  hi there  ", 3));
+        assertEquals("1:-7:", fastHash("1", " \t ", -7));
+        assertEquals("12:2147483647:", fastHash("12", "", Integer.MAX_VALUE));
+    }
+    
+    @Test
+    public void testMatchesRegexVersionOnRandomContent() {
+        Random random = new Random(42);
+        String alphabet = "aZ9 \t\n\u000B\f\r!é_-'xY";
+        int[] numbers = { 0, 1, 42, -5, Integer.MIN_VALUE, Integer.MAX_VALUE };
+        for (int i = 0; i < 20_000; i++) {
+            StringBuilder content = new StringBuilder();
+            int length = random.nextInt(20);
+            for (int j = 0; j < length; j++) {
+                content.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            String messageID = i % 50 == 0 ? "7" : "8412345678";
+            int number = numbers[i % numbers.length];
+            assertEquals(regexHash(messageID, content.toString(), number), fastHash(messageID, content.toString(), number));
+        }
+    }
+    
+    private void assertEquals(String expected, String actual) {
+        if (expected == null ? actual != null : !expected.equals(actual)) {
+            throw new AssertionError("Expected \"" + expected + "\" but was \"" + actual + "\"");
+        }
+    }
+}
@@ -0,0 +1,53 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * MessageIdGenerator class - Fast, collision-free 10 digit message IDs
+ * Each thread reserves a block of sequence numbers from one shared counter,
+ * so threads almost never contend. Every sequence number is mapped to an ID
+ * by multiplying with a constant that shares no factor with 10^10, which is a
+ * one-to-one mapping, so a process never hands out the same ID twice until
+ * 10^10 IDs have been issued. Apart from the returned String nothing is allocated.
+ * Linked to: Message.java and QuickChat.java
+ */
+public final class MessageIdGenerator {
+    private static final long ID_RANGE = 10_000_000_000L;  // 10 digits
+    private static final long MULTIPLIER = 918_273_647L;    // Odd and not a multiple of 5
+    private static final int BLOCK_SIZE = 1024;
+    
+    // Random start per process so IDs differ between runs
+    private static final long OFFSET = new SplittableRandom().nextLong(ID_RANGE);
+    private static final AtomicLong nextBlock = new AtomicLong();
+    
+    // Per-thread block of reserved sequence numbers and a reusable digit buffer
+    private static final class ThreadState {
+        private long next = 0;
+        private long end = 0;
+        private final char[] digits = new char[10];
+    }
+    
+    private static final ThreadLocal<ThreadState> state = ThreadLocal.withInitial(ThreadState::new);
+    
+    private MessageIdGenerator() {
+    }
+    
+    // Next unique message ID as 10 digits
+    public static String nextID() {
+        ThreadState thread = state.get();
+        if (thread.next == thread.end) {
+            thread.next = nextBlock.getAndIncrement() * BLOCK_SIZE;
+            thread.end = thread.next + BLOCK_SIZE;
+        }
+        long sequence = thread.next++ % ID_RANGE;
+        
+        // sequence is below 10^10 and MULTIPLIER below 9.2 * 10^8, so the product fits in a long
+        long id = (sequence * MULTIPLIER + OFFSET) % ID_RANGE;
+        
+        char[] digits = thread.digits;
+        for (int i = digits.length - 1; i >= 0; i--) {
+            digits[i] = (char) ('0' + (id % 10));
+            id /= 10;
+        }
+        return new String(digits);
+    }
+}
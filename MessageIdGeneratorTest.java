@@ -0,0 +1,50 @@
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Unit tests for the MessageIdGenerator class
+ */
+public class MessageIdGeneratorTest {
+    
+    @Test
+    public void testIDsAreTenDigits() {
+        for (int i = 0; i < 1000; i++) {
+            String id = MessageIdGenerator.nextID();
+            assertTrue(id.length() == 10);
+            for (int j = 0; j < id.length(); j++) {
+                assertTrue(Character.isDigit(id.charAt(j)));
+            }
+        }
+    }
+    
+    @Test
+    public void testIDsAreUniqueAcrossThreads() throws InterruptedException {
+        int threads = 4;
+        int perThread = 50_000;
+        String[][] results = new String[threads][perThread];
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final String[] ids = results[t];
+            workers[t] = new Thread(() -> {
+                for (int i = 0; i < ids.length; i++) {
+                    ids[i] = MessageIdGenerator.nextID();
+                }
+            });
+            workers[t].start();
+        }
+        
+        Set<String> seen = new HashSet<>();
+        for (int t = 0; t < threads; t++) {
+            workers[t].join();
+            for (String id : results[t]) {
+                assertTrue(seen.add(id));
+            }
+        }
+    }
+    
+    private void assertTrue(boolean condition) {
+        if (!condition) {
+            throw new AssertionError("Expected condition to be true");
+        }
+    }
+}
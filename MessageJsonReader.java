@@ -0,0 +1,116 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * MessageJsonReader class - Reads a JSON array of messages one object at a time
+ * Uses org.json's JSONTokener over the stream: the array's brackets and commas
+ * are read here, and each element is parsed into a JSONObject on its own, so
+ * only the message being read is held in memory and large archives load with
+ * bounded heap. Unknown fields are skipped. Malformed records, including an
+ * unknown status, fail with an IOException naming where in the file they are.
+ * Linked to: MessageJsonWriter.java and QuickChat.java
+ */
+public class MessageJsonReader implements AutoCloseable {
+    private final Reader in;
+    private final JSONTokener tokener;
+    private boolean started = false;
+    private boolean finished = false;
+    private MessageStatus lastStatus;
+    
+    public MessageJsonReader(Reader in) {
+        this.in = in instanceof BufferedReader ? in : new BufferedReader(in);
+        this.tokener = new JSONTokener(this.in);
+    }
+    
+    // Read the next message, or null when the array is finished
+    public Message readMessage() throws IOException {
+        if (finished) {
+            return null;
+        }
+        
+        try {
+            char c = tokener.nextClean();
+            if (!started) {
+                if (c != '[') {
+                    throw error("Expected '['");
+                }
+                started = true;
+                c = tokener.nextClean();
+                if (c == ']') {
+                    finished = true;
+                    return null;
+                }
+                tokener.back();
+            } else if (c == ']') {
+                finished = true;
+                return null;
+            } else if (c != ',') {
+                throw error("Expected ',' or ']'");
+            }
+            
+            Object value = tokener.nextValue();
+            if (!(value instanceof JSONObject)) {
+                throw error("Expected a message object");
+            }
+            return toMessage((JSONObject) value);
+        } catch (JSONException e) {
+            // JSONTokener's messages already say where they went wrong
+            throw new IOException("Invalid message archive: " + e.getMessage(), e);
+        }
+    }
+    
+    // Status of the message returned by the last readMessage() call
+    public MessageStatus getLastStatus() {
+        return lastStatus;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+    
+    private Message toMessage(JSONObject object) throws IOException {
+        MessageStatus status = MessageStatus.DISREGARDED;
+        String statusName = stringOf(object, "status");
+        if (statusName != null) {
+            try {
+                status = MessageStatus.valueOf(statusName);
+            } catch (IllegalArgumentException e) {
+                throw error("Unknown status \"" + statusName + "\"");
+            }
+        }
+        
+        Message message = new Message(object.has("sender") ? stringOf(object, "sender") : "You");
+        message.setMessageID(stringOf(object, "messageID"));
+        message.setMessageHash(stringOf(object, "messageHash"));
+        message.setRecipient(stringOf(object, "recipient"));
+        String messageContent = stringOf(object, "messageContent");
+        if (messageContent != null) {
+            message.setMessageContent(messageContent);
+        }
+        message.setSent(status == MessageStatus.SENT);
+        message.setStored(status == MessageStatus.STORED);
+        lastStatus = status;
+        return message;
+    }
+    
+    // A string field, null when it is missing or null
+    private String stringOf(JSONObject object, String name) throws IOException {
+        if (object.isNull(name)) {
+            return null;
+        }
+        Object value = object.get(name);
+        if (!(value instanceof String)) {
+            throw error("Field \"" + name + "\" is not a string");
+        }
+        return (String) value;
+    }
+    
+    private IOException error(String message) {
+        return new IOException("Invalid message archive: " + message + tokener);
+    }
+}
@@ -0,0 +1,82 @@
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+/**
+ * Unit tests for the MessageJsonWriter and MessageJsonReader classes
+ */
+public class MessageJsonTest {
+    
+    @Test
+    public void testRoundTripKeepsFieldsAndStatus() throws IOException {
+        Message message = new Message("Kyle");
+        message.setNotificationSink(new NoOpNotificationSink());
+        message.setRecipient("+27718693002");
+        message.setMessageContent("Quotes \"and\" back\\slashes\nnew line ✅");
+        message.setMessageID("0012345678");
+        message.createMessageHash(7);
+        
+        StringWriter out = new StringWriter();
+        try (MessageJsonWriter writer = new MessageJsonWriter(out)) {
+            writer.write(message, MessageStatus.STORED);
+            writer.write(message, MessageStatus.SENT);
+        }
+        
+        MessageJsonReader reader = new MessageJsonReader(new StringReader(out.toString()));
+        Message first = reader.readMessage();
+        assertEquals(message.getMessageContent(), first.getMessageContent());
+        assertEquals(message.getMessageHash(), first.getMessageHash());
+        assertEquals("Kyle", first.getSender());
+        assertTrue(first.isStored() && reader.getLastStatus() == MessageStatus.STORED);
+        
+        Message second = reader.readMessage();
+        assertTrue(second.isSent() && reader.getLastStatus() == MessageStatus.SENT);
+        assertTrue(reader.readMessage() == null);
+    }
+    
+    @Test
+    public void testReaderSkipsUnknownFieldsAndNulls() throws IOException {
+        String json = "[ {\"extra\": {\"nested\": [1, 2, \"x\"]}, \"messageID\": null, " +
+                      "\"recipient\": \"027718693002\", \"messageContent\": \"Hi\", \"status\": \"DISREGARDED\", " +
+                      "\"count\": 12.5, \"flag\": true} ]";
+        MessageJsonReader reader = new MessageJsonReader(new StringReader(json));
+        
+        Message message = reader.readMessage();
+        assertTrue(message.getMessageID() == null);
+        assertEquals("027718693002", message.getRecipient());
+        assertTrue(!message.isSent() && !message.isStored());
+        assertTrue(reader.readMessage() == null);
+    }
+    
+    @Test
+    public void testUnknownStatusIsAnIOExceptionWithItsOffset() {
+        String json = "[ {\"messageContent\": \"Hi\", \"status\": \"SENT\"},\n  {\"messageContent\": \"Bad\", \"status\": \"LOST\"} ]";
+        MessageJsonReader reader = new MessageJsonReader(new StringReader(json));
+        try {
+            assertEquals("Hi", reader.readMessage().getMessageContent());
+            reader.readMessage();
+            throw new AssertionError("Expected an IOException");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("LOST") && e.getMessage().contains("line 2"));
+        }
+    }
+    
+    @Test
+    public void testEmptyArray() throws IOException {
+        StringWriter out = new StringWriter();
+        new MessageJsonWriter(out).close();
+        assertTrue(new MessageJsonReader(new StringReader(out.toString())).readMessage() == null);
+    }
+    
+    private void assertTrue(boolean condition) {
+        if (!condition) {
+            throw new AssertionError("Expected condition to be true");
+        }
+    }
+    
+    private void assertEquals(String expected, String actual) {
+        if (expected == null ? actual != null : !expected.equals(actual)) {
+            throw new AssertionError("Expected \"" + expected + "\" but was \"" + actual + "\"");
+        }
+    }
+}
@@ -0,0 +1,61 @@
+import java.io.IOException;
+import java.io.Writer;
+import org.json.JSONException;
+import org.json.JSONWriter;
+
+/**
+ * MessageJsonWriter class - Streams messages to a JSON array, one object at a time
+ * Each message is written straight to the output by org.json's JSONWriter, so
+ * nothing is kept in memory apart from the writer's own buffer and an archive
+ * of any size can be written. Each message goes on its own line.
+ * Linked to: MessageJsonReader.java and QuickChat.java
+ */
+public class MessageJsonWriter implements AutoCloseable {
+    private final Writer out;
+    private int written = 0;
+    private boolean closed = false;
+    
+    public MessageJsonWriter(Writer out) throws IOException {
+        this.out = out;
+        out.write("[\n");
+    }
+    
+    // Write one message with the status it is kept in
+    public void write(Message message, MessageStatus status) throws IOException {
+        if (written > 0) {
+            out.write(",\n");
+        }
+        out.write("  ");
+        try {
+            new JSONWriter(out)
+                .object()
+                .key("messageID").value(message.getMessageID())
+                .key("messageHash").value(message.getMessageHash())
+                .key("recipient").value(message.getRecipient())
+                .key("messageContent").value(message.getMessageContent())
+                .key("sender").value(message.getSender())
+                .key("status").value(status.name())
+                .endObject();
+        } catch (JSONException e) {
+            // JSONWriter wraps the Writer's IOException
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e);
+        }
+        written++;
+    }
+    
+    // Number of messages written so far
+    public int getWrittenCount() {
+        return written;
+    }
+    
+    // Finish the JSON array and close the underlying writer
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        out.write(written > 0 ? "\n]\n" : "]\n");
+        out.close();
+    }
+}
@@ -0,0 +1,393 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * MessageLog class - Append-only binary write-ahead log of message state changes
+ * Records are buffered in memory and written by a background thread that
+ * commits everything pending with a single fsync (group commit). Callers that
+ * need durability wait for their record's sequence number to be committed.
+ * Appending only takes this object's monitor for a moment and never waits on
+ * it, so it is safe inside the engine's shard locks. Waiting for a commit uses
+ * a ReentrantLock condition instead of Object.wait(), so virtual threads that
+ * wait give their carrier thread back.
+ * A checkpoint writes a snapshot through the owner and then truncates the log,
+ * so recovery only has to replay what happened since the last snapshot.
+ * 
+ * File layout: magic, version, then records of [length][crc32][payload].
+ * Replay stops at the first torn or corrupt record and the log is cut there.
+ * Linked to: QuickChat.java
+ */
+public class MessageLog implements AutoCloseable {
+    private static final int MAGIC = 0x5143574C;  // "QCWL"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    
+    private static final byte ADD = 1;
+    private static final byte DELETE = 2;
+    private static final byte STATUS = 3;
+    
+    // Called for every record during replay
+    public interface Listener {
+        void onAdd(Message message, MessageStatus status);
+        void onDelete(String messageHash);
+        void onStatusChange(String messageHash, MessageStatus status);
+    }
+    
+    // Writes a snapshot of everything logged so far
+    public interface SnapshotWriter {
+        void writeSnapshot() throws IOException;
+    }
+    
+    private final FileChannel channel;
+    private final long commitIntervalMillis;
+    private final Thread committer;
+    
+    // Guarded by this: records waiting for the next group commit
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream(64 * 1024);
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream(512);
+    private final DataOutputStream recordOut = new DataOutputStream(record);
+    private final CRC32 crc = new CRC32();
+    private long nextSequence = 1;
+    private long recordsSinceCheckpoint = 0;
+    
+    // Guarded by commitLock: how far the file has got, committed is signalled whenever that changes
+    private final ReentrantLock commitLock = new ReentrantLock();
+    private final Condition committed = commitLock.newCondition();
+    private final Condition commitWanted = commitLock.newCondition();
+    private long committedSequence = 0;
+    private IOException commitFailure;
+    private volatile boolean closed = false;
+    
+    // Held while writing to the file so commits and checkpoints never interleave
+    private final ReentrantLock fileLock = new ReentrantLock();
+    
+    private MessageLog(FileChannel channel, long commitIntervalMillis, long existingRecords) {
+        this.channel = channel;
+        this.commitIntervalMillis = commitIntervalMillis;
+        this.recordsSinceCheckpoint = existingRecords;
+        this.committer = new Thread(this::commitLoop, "quickchat-message-log");
+        this.committer.setDaemon(true);
+        this.committer.start();
+    }
+    
+    // Replay an existing log into the listener and open it for appending
+    public static MessageLog open(Path path, Listener listener, long commitIntervalMillis) throws IOException {
+        long validLength = HEADER_SIZE;
+        long replayed = 0;
+        
+        if (Files.exists(path) && Files.size(path) >= HEADER_SIZE) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    throw new IOException("Not a QuickChat message log: " + path);
+                }
+                
+                byte[] payload = new byte[512];
+                CRC32 check = new CRC32();
+                while (true) {
+                    int length;
+                    int expectedCrc;
+                    try {
+                        length = in.readInt();
+                        expectedCrc = in.readInt();
+                        if (length <= 0 || length > 1 << 20) {
+                            break;
+                        }
+                        if (payload.length < length) {
+                            payload = new byte[length];
+                        }
+                        in.readFully(payload, 0, length);
+                    } catch (EOFException e) {
+                        break;  // Torn write at the end of the log
+                    }
+                    
+                    check.reset();
+                    check.update(payload, 0, length);
+                    if ((int) check.getValue() != expectedCrc) {
+                        break;
+                    }
+                    
+                    applyRecord(payload, length, listener);
+                    validLength += 8 + length;
+                    replayed++;
+                }
+            }
+        }
+        
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, 
+            StandardOpenOption.WRITE);
+        if (channel.size() < HEADER_SIZE) {
+            writeHeader(channel);
+        }
+        // Drop anything after the last good record
+        channel.truncate(validLength);
+        channel.position(validLength);
+        return new MessageLog(channel, commitIntervalMillis, replayed);
+    }
+    
+    // Log a message that was sent, stored or disregarded, returns its sequence number
+    public long appendAdd(Message message, MessageStatus status) throws IOException {
+        synchronized (this) {
+            recordOut.writeByte(ADD);
+            recordOut.writeByte(status.ordinal());
+            writeString(message.getMessageID());
+            writeString(message.getMessageHash());
+            writeString(message.getRecipient());
+            writeString(message.getMessageContent());
+            writeString(message.getSender());
+            return finishRecord();
+        }
+    }
+    
+    // Log a deleted message, returns its sequence number
+    public long appendDelete(String messageHash) throws IOException {
+        synchronized (this) {
+            recordOut.writeByte(DELETE);
+            writeString(messageHash);
+            return finishRecord();
+        }
+    }
+    
+    // Log a message moved to another status, one record so a crash never splits the change
+    public long appendStatusChange(String messageHash, MessageStatus status) throws IOException {
+        synchronized (this) {
+            recordOut.writeByte(STATUS);
+            recordOut.writeByte(status.ordinal());
+            writeString(messageHash);
+            return finishRecord();
+        }
+    }
+    
+    // Wait until the record with this sequence number is on disk
+    public void awaitCommitted(long sequence) throws IOException {
+        commitLock.lock();
+        try {
+            while (committedSequence < sequence) {
+                if (commitFailure != null) {
+                    throw commitFailure;
+                }
+                if (closed) {
+                    throw new IOException("Message log is closed");
+                }
+                commitWanted.signal();  // Wake the committer instead of waiting for its next tick
+                try {
+                    committed.await(commitIntervalMillis, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for the message log");
+                }
+            }
+        } finally {
+            commitLock.unlock();
+        }
+    }
+    
+    // Commit everything appended so far
+    public void sync() throws IOException {
+        commitPending();
+    }
+    
+    // Records written since the last checkpoint
+    public synchronized long getRecordsSinceCheckpoint() {
+        return recordsSinceCheckpoint;
+    }
+    
+    // Commit, write a snapshot, then start the log again from empty
+    public void checkpoint(SnapshotWriter snapshotWriter) throws IOException {
+        fileLock.lock();
+        try {
+            commitPending();
+            snapshotWriter.writeSnapshot();
+            
+            channel.truncate(HEADER_SIZE);
+            channel.position(HEADER_SIZE);
+            channel.force(true);
+            synchronized (this) {
+                recordsSinceCheckpoint = 0;
+            }
+        } finally {
+            fileLock.unlock();
+        }
+    }
+    
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            commitPending();
+        } finally {
+            commitLock.lock();
+            try {
+                closed = true;
+                committed.signalAll();
+            } finally {
+                commitLock.unlock();
+            }
+            committer.interrupt();
+            channel.close();
+        }
+    }
+    
+    private void writeString(String value) throws IOException {
+        recordOut.writeBoolean(value != null);
+        if (value != null) {
+            recordOut.writeUTF(value);
+        }
+    }
+    
+    // Frame the record that was just written and move it to the pending buffer
+    private long finishRecord() throws IOException {
+        if (closed) {
+            record.reset();
+            throw new IOException("Message log is closed");
+        }
+        
+        byte[] payload = record.toByteArray();
+        record.reset();
+        crc.reset();
+        crc.update(payload, 0, payload.length);
+        
+        writeInt(pending, payload.length);
+        writeInt(pending, (int) crc.getValue());
+        pending.write(payload, 0, payload.length);
+        recordsSinceCheckpoint++;
+        return nextSequence++;
+    }
+    
+    private void commitLoop() {
+        while (true) {
+            commitLock.lock();
+            try {
+                if (closed) {
+                    return;
+                }
+                commitWanted.await(commitIntervalMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                if (closed) {
+                    return;
+                }
+            } finally {
+                commitLock.unlock();
+            }
+            try {
+                commitPending();
+            } catch (IOException e) {
+                commitLock.lock();
+                try {
+                    commitFailure = e;
+                    committed.signalAll();
+                } finally {
+                    commitLock.unlock();
+                }
+            }
+        }
+    }
+    
+    // One write and one fsync for every record that is pending
+    private void commitPending() throws IOException {
+        fileLock.lock();
+        try {
+            ByteArrayOutputStream batch;
+            long lastSequence;
+            synchronized (this) {
+                if (pending.size() == 0) {
+                    return;
+                }
+                batch = pending;
+                pending = new ByteArrayOutputStream(Math.max(64 * 1024, batch.size()));
+                lastSequence = nextSequence - 1;
+            }
+            
+            ByteBuffer buffer = ByteBuffer.wrap(batch.toByteArray());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+            
+            commitLock.lock();
+            try {
+                committedSequence = lastSequence;
+                committed.signalAll();
+            } finally {
+                commitLock.unlock();
+            }
+        } finally {
+            fileLock.unlock();
+        }
+    }
+    
+    private static void applyRecord(byte[] payload, int length, Listener listener) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload, 0, length));
+        byte type = in.readByte();
+        if (type == ADD) {
+            MessageStatus status = statusOf(in.readByte());
+            String messageID = readString(in);
+            String messageHash = readString(in);
+            String recipient = readString(in);
+            String messageContent = readString(in);
+            String sender = readString(in);
+            
+            Message message = new Message(sender);
+            message.setMessageID(messageID);
+            message.setMessageHash(messageHash);
+            message.setRecipient(recipient);
+            if (messageContent != null) {
+                message.setMessageContent(messageContent);
+            }
+            message.setSent(status == MessageStatus.SENT);
+            message.setStored(status == MessageStatus.STORED);
+            listener.onAdd(message, status);
+        } else if (type == DELETE) {
+            listener.onDelete(readString(in));
+        } else if (type == STATUS) {
+            MessageStatus status = statusOf(in.readByte());
+            listener.onStatusChange(readString(in), status);
+        } else {
+            throw new IOException("Unknown message log record type: " + type);
+        }
+    }
+    
+    // Status bytes past the known statuses come from a newer version or a damaged log
+    private static MessageStatus statusOf(byte b) throws IOException {
+        if (b < 0 || b >= MessageStatus.values().length) {
+            throw new IOException("Unknown message status in log: " + b);
+        }
+        return MessageStatus.values()[b];
+    }
+    
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+    
+    private static void writeHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).flip();
+        channel.position(0);
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+    }
+    
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+}
@@ -0,0 +1,232 @@
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Unit tests for the MessageLog class and QuickChat recovery
+ */
+public class MessageLogTest {
+    
+    private QuickChat createQuickChat() {
+        return new QuickChat(new NoOpNotificationSink(), false);
+    }
+    
+    @Test
+    public void testReplayRestoresSendsStoresAndDeletes() throws IOException {
+        Path base = Files.createTempDirectory("quickchat").resolve("messages");
+        
+        QuickChat quickChat = createQuickChat();
+        quickChat.enableWriteAheadLog(base, true);
+        quickChat.processMessage("+27718693002", "Hi Mike, can you join us for dinner tonight", 1);
+        quickChat.processMessage("+27838884567", "Where are you? You are late!", 3);
+        quickChat.processMessage("+27834484567", "Yohoooo, I am at your gate.", 2);
+        String deletedHash = quickChat.getAllMessages()[1].getMessageHash();
+        quickChat.deleteMessage(deletedHash);
+        quickChat.closeWriteAheadLog();
+        
+        QuickChat recovered = createQuickChat();
+        recovered.enableWriteAheadLog(base, false);
+        assertEquals(2, recovered.getTotalMessagesCount());
+        assertEquals(1, recovered.getSentCount());
+        assertEquals(0, recovered.getStoredCount());
+        assertEquals(1, recovered.getDisregardedCount());
+        
+        // Hash numbers carry on after recovery
+        recovered.processMessage("+27718693002", "Ok I am leaving without you", 1);
+        assertTrue(recovered.getAllMessages()[2].getMessageHash().contains(":4:"));
+        recovered.closeWriteAheadLog();
+    }
+    
+    @Test
+    public void testReplayRestoresStatusChanges() throws IOException {
+        Path base = Files.createTempDirectory("quickchat").resolve("messages");
+        
+        QuickChat quickChat = createQuickChat();
+        quickChat.enableWriteAheadLog(base, true);
+        quickChat.processMessage("+27838884567", "Where are you? You are late!", 3);
+        quickChat.sendStoredMessage(quickChat.getAllMessages()[0].getMessageHash());
+        quickChat.closeWriteAheadLog();
+        
+        QuickChat recovered = createQuickChat();
+        recovered.enableWriteAheadLog(base, false);
+        assertEquals(1, recovered.getTotalMessagesCount());
+        assertEquals(1, recovered.getSentCount());
+        assertEquals(1, recovered.returnTotalMessages());
+        recovered.closeWriteAheadLog();
+        
+        // The change is one record, so no crash can leave the message deleted but not added back
+        int[] records = new int[3];
+        MessageLog log = MessageLog.open(base.resolveSibling("messages.wal"), new MessageLog.Listener() {
+            @Override
+            public void onAdd(Message message, MessageStatus status) {
+                records[0]++;
+            }
+            
+            @Override
+            public void onDelete(String messageHash) {
+                records[1]++;
+            }
+            
+            @Override
+            public void onStatusChange(String messageHash, MessageStatus status) {
+                records[2]++;
+            }
+        }, 10);
+        log.close();
+        assertEquals(1, records[0]);
+        assertEquals(0, records[1]);
+        assertEquals(1, records[2]);
+    }
+    
+    @Test
+    public void testTornTailIsIgnored() throws IOException {
+        Path base = Files.createTempDirectory("quickchat").resolve("messages");
+        
+        QuickChat quickChat = createQuickChat();
+        quickChat.enableWriteAheadLog(base, false);
+        quickChat.processMessage("+27718693002", "First message", 1);
+        quickChat.closeWriteAheadLog();
+        
+        // Simulate a crash half way through writing the next record
+        try (OutputStream out = Files.newOutputStream(base.resolveSibling("messages.wal"), StandardOpenOption.APPEND)) {
+            out.write(new byte[] { 0, 0, 0, 40, 1, 2 });
+        }
+        
+        QuickChat recovered = createQuickChat();
+        recovered.enableWriteAheadLog(base, true);
+        assertEquals(1, recovered.getTotalMessagesCount());
+        recovered.processMessage("+27718693002", "Second message", 3);
+        recovered.closeWriteAheadLog();
+        
+        QuickChat again = createQuickChat();
+        again.enableWriteAheadLog(base, false);
+        assertEquals(2, again.getTotalMessagesCount());
+        again.closeWriteAheadLog();
+    }
+    
+    @Test
+    public void testUnknownStatusIsAnIOException() throws IOException {
+        Path base = Files.createTempDirectory("quickchat").resolve("messages");
+        
+        QuickChat quickChat = createQuickChat();
+        quickChat.enableWriteAheadLog(base, false);
+        quickChat.processMessage("+27718693002", "First message", 1);
+        quickChat.closeWriteAheadLog();
+        
+        // A whole, checksummed status change record with a status this version does not know
+        byte[] payload = { 3, 99, 0 };
+        CRC32 check = new CRC32();
+        check.update(payload);
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(
+                base.resolveSibling("messages.wal"), StandardOpenOption.APPEND))) {
+            out.writeInt(payload.length);
+            out.writeInt((int) check.getValue());
+            out.write(payload);
+        }
+        
+        try {
+            createQuickChat().enableWriteAheadLog(base, false);
+            throw new AssertionError("Expected an IOException");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("Unknown message status in log: 99"));
+        }
+    }
+    
+    @Test
+    public void testArchiveAndSnapshotAreNotLoadedTwice() throws IOException {
+        Path base = Files.createTempDirectory("quickchat").resolve("messages");
+        Path archive = base.resolveSibling("archive.json");
+        
+        QuickChat quickChat = createQuickChat();
+        quickChat.processMessage("+27718693002", "Hi Mike, can you join us for dinner tonight", 3);
+        quickChat.processMessage("+27838884567", "Where are you? You are late!", 3);
+        quickChat.saveMessages(archive);
+        // What a checkpoint leaves behind
+        quickChat.saveMessages(base.resolveSibling("messages.snapshot.json"));
+        
+        QuickChat restarted = createQuickChat();
+        assertEquals(2, restarted.loadMessages(archive));
+        restarted.enableWriteAheadLog(base, false);
+        assertEquals(2, restarted.getTotalMessagesCount());
+        assertEquals(2, restarted.getStoredCount());
+        assertEquals(0, restarted.loadMessages(archive));
+        restarted.closeWriteAheadLog();
+    }
+    
+    @Test
+    public void testDeleteRacingItsAddReplaysAsDeleted() throws IOException, InterruptedException {
+        Path base = Files.createTempDirectory("quickchat").resolve("messages");
+        MessageEngine engine = new MessageEngine(4);
+        engine.enableWriteAheadLog(base, false);
+        
+        // Each deleter spins until the message it wants shows up, often before add() has returned
+        int pairs = 4;
+        int count = 2000;
+        Thread[] threads = new Thread[pairs * 2];
+        for (int p = 0; p < pairs; p++) {
+            int first = p * count + 1;
+            threads[p * 2] = new Thread(() -> {
+                for (int i = first; i < first + count; i++) {
+                    Message message = new Message();
+                    message.setNotificationSink(new NoOpNotificationSink());
+                    message.setMessageHash("00:" + i + ":HI");
+                    engine.add(message, MessageStatus.STORED);
+                }
+            });
+            threads[p * 2 + 1] = new Thread(() -> {
+                for (int i = first; i < first + count; i++) {
+                    while (engine.delete("00:" + i + ":HI") == null) {
+                        Thread.onSpinWait();
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        engine.closeWriteAheadLog();
+        
+        MessageEngine recovered = new MessageEngine(4);
+        recovered.enableWriteAheadLog(base, false);
+        assertEquals(0, recovered.size());
+        recovered.closeWriteAheadLog();
+    }
+    
+    @Test
+    public void testCheckpointTruncatesLog() throws IOException {
+        Path path = Files.createTempFile("quickchat", ".wal");
+        Files.delete(path);
+        MessageLog log = MessageLog.open(path, null, 10);
+        Message message = new Message();
+        message.setNotificationSink(new NoOpNotificationSink());
+        message.setMessageHash("00:1:HI");
+        log.appendAdd(message, MessageStatus.SENT);
+        log.appendDelete("00:1:HI");
+        
+        boolean[] snapshotWritten = { false };
+        log.checkpoint(() -> snapshotWritten[0] = true);
+        assertTrue(snapshotWritten[0]);
+        assertEquals(0, (int) log.getRecordsSinceCheckpoint());
+        log.close();
+        assertEquals(8, (int) Files.size(path));
+    }
+    
+    private void assertTrue(boolean condition) {
+        if (!condition) {
+            throw new AssertionError("Expected condition to be true");
+        }
+    }
+    
+    private void assertEquals(int expected, int actual) {
+        if (expected != actual) {
+            throw new AssertionError("Expected " + expected + " but was " + actual);
+        }
+    }
+}
@@ -0,0 +1,314 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * MessageSegment class - Read-only, memory-mapped archive of encoded messages
+ * The segment file holds the records and a separate ".idx" file holds a
+ * compact offset index plus a sorted message ID table. Both files are mapped,
+ * so paging through history or finding a message by ID never deserialises
+ * the archive onto the heap. Only records that are read become Message objects.
+ * 
+ * Record layout: status byte, ID, hash, recipient code (-1 for null), content
+ * and sender, strings as length-prefixed UTF-8 (length -1 for null).
+ * Index layout: magic, count, ID count, recipient count, count record offsets,
+ * (ID, record) pairs sorted by ID, then the recipient table, one string per code.
+ * Recipients are written once each, in the order first seen, and decoded once
+ * when the segment is opened, so records that share a number share its String.
+ * Linked to: QuickChat.java, MessageStore.java and RecipientDictionary.java
+ */
+public class MessageSegment implements AutoCloseable {
+    private static final int INDEX_MAGIC = 0x51435332;         // "QCS2"
+    private static final int INDEX_HEADER_SIZE = 16;
+    private static final int ID_ENTRY_SIZE = 12;
+    private static final int RECORD_BITS = 29;  // A 2 GB segment holds far fewer records than 2^29
+    private static final long MAX_PACKED_ID = (1L << (63 - RECORD_BITS)) - 1;
+    
+    private final FileChannel segmentChannel;
+    private final FileChannel indexChannel;
+    private final MappedByteBuffer records;
+    private final MappedByteBuffer index;
+    private final int count;
+    private final int idTableStart;
+    private final int idCount;
+    private final String[] recipients;
+    
+    private MessageSegment(FileChannel segmentChannel, FileChannel indexChannel) throws IOException {
+        this.segmentChannel = segmentChannel;
+        this.indexChannel = indexChannel;
+        if (segmentChannel.size() > Integer.MAX_VALUE || indexChannel.size() > Integer.MAX_VALUE) {
+            throw new IOException("Message segment is larger than 2 GB, split it into several segments");
+        }
+        
+        this.records = segmentChannel.map(FileChannel.MapMode.READ_ONLY, 0, segmentChannel.size());
+        this.index = indexChannel.map(FileChannel.MapMode.READ_ONLY, 0, indexChannel.size());
+        if (index.capacity() < INDEX_HEADER_SIZE || index.getInt(0) != INDEX_MAGIC) {
+            throw new IOException("Not a QuickChat segment index");
+        }
+        this.count = index.getInt(4);
+        this.idTableStart = INDEX_HEADER_SIZE + count * 8;
+        this.idCount = index.getInt(8);
+        this.recipients = readRecipientTable(idTableStart + idCount * ID_ENTRY_SIZE, index.getInt(12));
+    }
+    
+    // Map an existing segment and its index
+    public static MessageSegment open(Path segmentPath) throws IOException {
+        FileChannel segmentChannel = FileChannel.open(segmentPath, StandardOpenOption.READ);
+        try {
+            FileChannel indexChannel = FileChannel.open(indexPathFor(segmentPath), StandardOpenOption.READ);
+            try {
+                return new MessageSegment(segmentChannel, indexChannel);
+            } catch (IOException e) {
+                indexChannel.close();
+                throw e;
+            }
+        } catch (IOException e) {
+            segmentChannel.close();
+            throw e;
+        }
+    }
+    
+    // Write every live message in the store to a new segment and index
+    public static int write(Path segmentPath, MessageStore store) throws IOException {
+        int total = store.size();
+        long[] offsets = new long[total];
+        long[] idEntries = new long[total];  // ID and record packed together so they sort as one long
+        int idCount = 0;
+        int written = 0;
+        
+        // The store's dictionary codes, renumbered to the recipients this segment uses
+        RecipientDictionary dictionary = store.getRecipients();
+        int[] segmentCodes = new int[0];
+        List<String> recipientTable = new ArrayList<>();
+        
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(segmentPath), 64 * 1024))) {
+            for (int handle = 0; handle < store.handleLimit(); handle++) {
+                Message message = store.get(handle);
+                if (message == null) {
+                    continue;
+                }
+                
+                // size() counts every byte written so far, it only wraps past 2 GB
+                if (out.size() < 0) {
+                    throw new IOException("Message segment is larger than 2 GB, split it into several segments");
+                }
+                offsets[written] = out.size();
+                out.writeByte(store.getStatus(handle).ordinal());
+                writeString(out, message.getMessageID());
+                writeString(out, message.getMessageHash());
+                int code = store.getRecipientCode(handle);
+                if (code >= segmentCodes.length) {
+                    int oldLength = segmentCodes.length;
+                    segmentCodes = Arrays.copyOf(segmentCodes, Math.max(code + 1, dictionary.size()));
+                    Arrays.fill(segmentCodes, oldLength, segmentCodes.length, -1);
+                }
+                if (code >= 0 && segmentCodes[code] < 0) {
+                    segmentCodes[code] = recipientTable.size();
+                    recipientTable.add(dictionary.textOf(code));
+                }
+                out.writeInt(code < 0 ? -1 : segmentCodes[code]);
+                writeString(out, message.getMessageContent());
+                writeString(out, message.getSender());
+                
+                long id = parseID(message.getMessageID());
+                if (id >= 0 && id <= MAX_PACKED_ID) {
+                    idEntries[idCount++] = (id << RECORD_BITS) | written;
+                }
+                written++;
+            }
+        }
+        
+        // Sort (ID, record) pairs by ID for binary search
+        Arrays.sort(idEntries, 0, idCount);
+        
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(indexPathFor(segmentPath)), 64 * 1024))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(written);
+            out.writeInt(idCount);
+            out.writeInt(recipientTable.size());
+            for (int i = 0; i < written; i++) {
+                out.writeLong(offsets[i]);
+            }
+            for (int i = 0; i < idCount; i++) {
+                out.writeLong(idEntries[i] >>> RECORD_BITS);
+                out.writeInt((int) (idEntries[i] & ((1L << RECORD_BITS) - 1)));
+            }
+            for (String recipient : recipientTable) {
+                writeString(out, recipient);
+            }
+        }
+        return written;
+    }
+    
+    // Number of records in the segment
+    public int size() {
+        return count;
+    }
+    
+    // Number of different recipients in the segment
+    public int recipientCount() {
+        return recipients.length;
+    }
+    
+    // Materialise one record as a Message
+    public Message read(int record) throws IOException {
+        ByteBuffer view = recordView(record);
+        MessageStatus status = statusOf(view.get());
+        String messageID = readString(view);
+        String messageHash = readString(view);
+        String recipient = recipientOf(view.getInt());
+        String messageContent = readString(view);
+        String sender = readString(view);
+        
+        Message message = new Message(sender);
+        message.setMessageID(messageID);
+        message.setMessageHash(messageHash);
+        message.setRecipient(recipient);
+        if (messageContent != null) {
+            message.setMessageContent(messageContent);
+        }
+        message.setSent(status == MessageStatus.SENT);
+        message.setStored(status == MessageStatus.STORED);
+        return message;
+    }
+    
+    // Status of one record without decoding the rest of it
+    public MessageStatus readStatus(int record) throws IOException {
+        return statusOf(records.get((int) offsetOf(record)));
+    }
+    
+    // Find a record by message ID with a binary search over the mapped ID table, -1 if absent
+    // IDs are searched as numbers, so the record's own ID is compared to tell "42" from "0000000042"
+    public int findByID(String messageID) {
+        long id = parseID(messageID);
+        if (id < 0) {
+            return -1;
+        }
+        
+        int low = 0;
+        int high = idCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long middleID = index.getLong(idTableStart + middle * ID_ENTRY_SIZE);
+            if (middleID < id) {
+                low = middle + 1;
+            } else if (middleID > id) {
+                high = middle - 1;
+            } else {
+                return findInRun(messageID, id, middle);
+            }
+        }
+        return -1;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        try {
+            segmentChannel.close();
+        } finally {
+            indexChannel.close();
+        }
+    }
+    
+    // Check every entry with the same numeric ID, from the first of them, for the exact ID
+    private int findInRun(String messageID, long id, int entry) {
+        while (entry > 0 && index.getLong(idTableStart + (entry - 1) * ID_ENTRY_SIZE) == id) {
+            entry--;
+        }
+        for (; entry < idCount && index.getLong(idTableStart + entry * ID_ENTRY_SIZE) == id; entry++) {
+            int record = index.getInt(idTableStart + entry * ID_ENTRY_SIZE + 8);
+            ByteBuffer view = recordView(record);
+            view.get();  // Status
+            if (messageID.equals(readString(view))) {
+                return record;
+            }
+        }
+        return -1;
+    }
+    
+    private static MessageStatus statusOf(byte b) throws IOException {
+        if (b < 0 || b >= MessageStatus.values().length) {
+            throw new IOException("Unknown message status in segment: " + b);
+        }
+        return MessageStatus.values()[b];
+    }
+    
+    private long offsetOf(int record) {
+        if (record < 0 || record >= count) {
+            throw new IndexOutOfBoundsException("Invalid segment record: " + record);
+        }
+        return index.getLong(INDEX_HEADER_SIZE + record * 8);
+    }
+    
+    private ByteBuffer recordView(int record) {
+        ByteBuffer view = records.duplicate();
+        view.position((int) offsetOf(record));
+        return view;
+    }
+    
+    private String recipientOf(int code) {
+        return code < 0 ? null : recipients[code];
+    }
+    
+    private String[] readRecipientTable(int position, int recipientCount) {
+        ByteBuffer view = index.duplicate();
+        view.position(position);
+        String[] table = new String[recipientCount];
+        for (int i = 0; i < recipientCount; i++) {
+            table[i] = readString(view);
+        }
+        return table;
+    }
+    
+    private static String readString(ByteBuffer view) {
+        int length = view.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+    
+    // Message IDs are 10 digits, so they fit in a long; -1 for anything else
+    private static long parseID(String messageID) {
+        if (messageID == null || messageID.isEmpty() || messageID.length() > 18) {
+            return -1;
+        }
+        long id = 0;
+        for (int i = 0; i < messageID.length(); i++) {
+            char c = messageID.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            id = id * 10 + (c - '0');
+        }
+        return id;
+    }
+    
+    private static Path indexPathFor(Path segmentPath) {
+        return segmentPath.resolveSibling(segmentPath.getFileName() + ".idx");
+    }
+}
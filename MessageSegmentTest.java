@@ -0,0 +1,112 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Unit tests for the MessageSegment class
+ */
+public class MessageSegmentTest {
+    
+    @Test
+    public void testWriteThenReadBackByRecordAndID() throws IOException {
+        MessageStore store = new MessageStore();
+        for (int i = 0; i < 2000; i++) {
+            Message message = new Message();
+            message.setNotificationSink(new NoOpNotificationSink());
+            message.setRecipient(i % 2 == 0 ? "+27718693002" : i % 5 == 0 ? null : "0838884567");
+            message.setMessageContent("Archived message ✅ " + i);
+            message.setMessageID(String.format("%010d", 9_999_999_999L - i * 7L));
+            message.createMessageHash(i + 1);
+            store.add(message, i % 3 == 0 ? MessageStatus.STORED : MessageStatus.SENT);
+        }
+        store.remove(store.findByID(String.format("%010d", 9_999_999_999L)));
+        
+        Path path = Files.createTempDirectory("quickchat").resolve("archive.seg");
+        assertEquals(1999, MessageSegment.write(path, store));
+        
+        try (MessageSegment segment = MessageSegment.open(path)) {
+            assertEquals(1999, segment.size());
+            assertEquals("Archived message ✅ 1", segment.read(0).getMessageContent());
+            
+            int record = segment.findByID(String.format("%010d", 9_999_999_999L - 1500 * 7L));
+            Message message = segment.read(record);
+            assertEquals("Archived message ✅ 1500", message.getMessageContent());
+            assertTrue(segment.readStatus(record) == MessageStatus.STORED && message.isStored());
+            
+            assertEquals("+27718693002", message.getRecipient());
+            assertEquals("0838884567", segment.read(0).getRecipient());
+            assertEquals(null, segment.read(4).getRecipient());
+            assertEquals(2, segment.recipientCount());
+            assertTrue(segment.read(1).getRecipient() == segment.read(3).getRecipient());
+            
+            assertEquals(-1, segment.findByID(String.format("%010d", 9_999_999_999L)));
+            assertEquals(-1, segment.findByID("not-an-id"));
+        }
+    }
+    
+    @Test
+    public void testFindByIDMatchesTheWholeID() throws IOException {
+        MessageStore store = new MessageStore();
+        for (String id : new String[] { "0000000042", "0000000043", "43" }) {
+            Message message = new Message();
+            message.setNotificationSink(new NoOpNotificationSink());
+            message.setRecipient("+27718693002");
+            message.setMessageContent("Message " + id);
+            message.setMessageID(id);
+            store.add(message, MessageStatus.SENT);
+        }
+        
+        Path path = Files.createTempDirectory("quickchat").resolve("ids.seg");
+        MessageSegment.write(path, store);
+        try (MessageSegment segment = MessageSegment.open(path)) {
+            assertEquals(-1, segment.findByID("42"));
+            assertEquals(-1, segment.findByID("042"));
+            assertEquals("Message 0000000042", segment.read(segment.findByID("0000000042")).getMessageContent());
+            assertEquals("Message 43", segment.read(segment.findByID("43")).getMessageContent());
+            assertEquals("Message 0000000043", segment.read(segment.findByID("0000000043")).getMessageContent());
+        }
+    }
+    
+    @Test
+    public void testUnknownStatusIsAnIOException() throws IOException {
+        MessageStore store = new MessageStore();
+        Message message = new Message();
+        message.setNotificationSink(new NoOpNotificationSink());
+        message.setMessageContent("From a newer version");
+        message.setMessageID("0000000001");
+        store.add(message, MessageStatus.SENT);
+        
+        Path path = Files.createTempDirectory("quickchat").resolve("status.seg");
+        MessageSegment.write(path, store);
+        byte[] bytes = Files.readAllBytes(path);
+        bytes[0] = 99;
+        Files.write(path, bytes);
+        
+        try (MessageSegment segment = MessageSegment.open(path)) {
+            try {
+                segment.read(0);
+                throw new AssertionError("Expected an IOException");
+            } catch (IOException e) {
+                assertTrue(e.getMessage().contains("99"));
+            }
+        }
+    }
+    
+    private void assertTrue(boolean condition) {
+        if (!condition) {
+            throw new AssertionError("Expected condition to be true");
+        }
+    }
+    
+    private void assertEquals(int expected, int actual) {
+        if (expected != actual) {
+            throw new AssertionError("Expected " + expected + " but was " + actual);
+        }
+    }
+    
+    private void assertEquals(String expected, String actual) {
+        if (expected == null ? actual != null : !expected.equals(actual)) {
+            throw new AssertionError("Expected \"" + expected + "\" but was \"" + actual + "\"");
+        }
+    }
+}
@@ -0,0 +1,117 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * MessageSnapshot class - Read-only, point-in-time copy of a MessageEngine's columns
+ * Only the primitive columns of live messages are copied (status, recipient
+ * code, packed ID and text references), one dense array each, while every
+ * shard is locked, so the copy is consistent and writers wait only for a few
+ * array copies. Text is not copied: TextPool slabs are append-only, so the
+ * snapshot reads them through read-only views while writers carry on.
+ * Messages are in shard order, not insertion order.
+ * Linked to: MessageEngine.java, MessageStore.java, MessageAnalytics.java and TextPool.java
+ */
+public class MessageSnapshot {
+    private static final MessageStatus[] STATUSES = MessageStatus.values();
+    
+    // Filled by MessageStore.copyInto(), one entry per live message
+    final byte[] statuses;
+    final int[] recipientCodes;
+    final long[] ids;
+    final long[] contentRefs;
+    final long[] hashRefs;
+    final long[] senderRefs;
+    final Map<Integer, String> otherIDs = new HashMap<>();
+    
+    // Messages from shard i start at shardStarts[i] and read their text from pools[i]
+    final int[] shardStarts;
+    final TextPool[] pools;
+    private final RecipientDictionary recipients;
+    private final int size;
+    
+    MessageSnapshot(int size, int shardCount, RecipientDictionary recipients) {
+        this.size = size;
+        this.statuses = new byte[size];
+        this.recipientCodes = new int[size];
+        this.ids = new long[size];
+        this.contentRefs = new long[size];
+        this.hashRefs = new long[size];
+        this.senderRefs = new long[size];
+        this.shardStarts = new int[shardCount];
+        this.pools = new TextPool[shardCount];
+        this.recipients = recipients;
+    }
+    
+    // Number of messages in the snapshot
+    public int size() {
+        return size;
+    }
+    
+    public MessageStatus getStatus(int index) {
+        return STATUSES[statuses[index]];
+    }
+    
+    // Canonical recipient code, see RecipientDictionary
+    public int getCanonicalRecipient(int index) {
+        return recipients.canonicalCodeOf(recipientCodes[index]);
+    }
+    
+    // Content length in chars, read from the pool without decoding the content
+    public int getContentLength(int index) {
+        return poolOf(index).charLength(contentRefs[index]);
+    }
+    
+    // First two characters of the hash as a number 0-99, or -1 if they are not digits
+    public int getHashPrefix(int index) {
+        TextPool pool = poolOf(index);
+        int first = pool.byteAt(hashRefs[index], 0);
+        int second = pool.byteAt(hashRefs[index], 1);
+        if (first < '0' || first > '9' || second < '0' || second > '9') {
+            return -1;
+        }
+        return (first - '0') * 10 + (second - '0');
+    }
+    
+    public String getMessageHash(int index) {
+        return poolOf(index).get(hashRefs[index]);
+    }
+    
+    // Decode one message, as MessageStore.get() would have when the snapshot was taken
+    public Message getMessage(int index) {
+        TextPool pool = poolOf(index);
+        MessageStatus status = getStatus(index);
+        Message message = new Message(pool.get(senderRefs[index]));
+        long id = ids[index];
+        message.setMessageID(id == MessageStore.UNPACKED_ID ? otherIDs.get(index) : MessageStore.unpackID(id));
+        message.setMessageHash(pool.get(hashRefs[index]));
+        message.setRecipient(recipients.textOf(recipientCodes[index]));
+        String content = pool.get(contentRefs[index]);
+        if (content != null) {
+            message.setMessageContent(content);
+        }
+        message.setSent(status == MessageStatus.SENT);
+        message.setStored(status == MessageStatus.STORED);
+        return message;
+    }
+    
+    public RecipientDictionary getRecipients() {
+        return recipients;
+    }
+    
+    private TextPool poolOf(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Invalid snapshot index: " + index);
+        }
+        // Last shard whose start is at or before the index, empty shards share a start
+        int shard = Arrays.binarySearch(shardStarts, index);
+        if (shard < 0) {
+            shard = -shard - 2;
+        } else {
+            while (shard + 1 < shardStarts.length && shardStarts[shard + 1] == index) {
+                shard++;
+            }
+        }
+        return pools[shard];
+    }
+}
@@ -0,0 +1,385 @@
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * MessageStatistics class - Report figures kept up to date on every change
+ * Sent message figures are striped, one stripe per MessageEngine shard, and a
+ * stripe is only changed while its shard is locked, so writers to different
+ * shards never wait for each other. Each stripe counts sent messages per
+ * length, and a report adds up those 251 counters per stripe, so the longest,
+ * k-th longest and median lengths cost the same at any store size.
+ * Each length keeps its sent messages in message number order, linked through
+ * arrays indexed by handle, so the longest message is still known after it or
+ * others are deleted, and unlinking one is constant time.
+ * Per-recipient counts cover every live message, in atomic ints indexed by the
+ * RecipientDictionary's canonical code for the number, shared by all stripes.
+ * Linked to: MessageEngine.java, QuickChat.java and RecipientDictionary.java
+ */
+public class MessageStatistics {
+    // Longest length that gets its own bucket, longer messages share the last one
+    public static final int MAX_LENGTH = 250;
+    
+    private static final int NONE = -1;
+    private static final int RECIPIENT_CHUNK_SHIFT = 10;
+    private static final int RECIPIENT_CHUNK_MASK = (1 << RECIPIENT_CHUNK_SHIFT) - 1;
+    
+    private final Stripe[] stripes;
+    private final RecipientDictionary recipients;
+    
+    // Chunks are only ever added, under the lock, and published through the volatile directory
+    private volatile AtomicIntegerArray[] recipientCounts = new AtomicIntegerArray[0];
+    private final Object recipientGrowLock = new Object();
+    private final AtomicInteger distinctRecipients = new AtomicInteger();
+    
+    // Sent messages of one shard, guarded by the stripe
+    private static class Stripe {
+        private final int[] lengthCounts = new int[MAX_LENGTH + 1];
+        private int sentCount = 0;
+        private long sentCharacters = 0;
+        
+        // Per length, a list of handles in message number order
+        private final int[] heads = new int[MAX_LENGTH + 1];
+        private final int[] tails = new int[MAX_LENGTH + 1];
+        
+        // Indexed by handle: neighbours in the list, message number, and content length + 1 (0 when not sent)
+        private int[] previous = new int[16];
+        private int[] next = new int[16];
+        private int[] numbers = new int[16];
+        private int[] lengths = new int[16];
+        
+        private Stripe() {
+            Arrays.fill(heads, NONE);
+            Arrays.fill(tails, NONE);
+        }
+    }
+    
+    public MessageStatistics(RecipientDictionary recipients) {
+        this(recipients, 1);
+    }
+    
+    // One stripe per shard, locators name the shard in their high 32 bits
+    public MessageStatistics(RecipientDictionary recipients, int stripeCount) {
+        this.recipients = recipients;
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+    
+    // Count a message that has joined the store, the locator says where the caller keeps it
+    public void onAdd(Message message, MessageStatus status, long locator) {
+        int number = canonicalCodeOf(message);
+        AtomicIntegerArray counts = recipientChunk(number);
+        if (counts.incrementAndGet(number & RECIPIENT_CHUNK_MASK) == 1) {
+            distinctRecipients.incrementAndGet();
+        }
+        if (status == MessageStatus.SENT) {
+            addSent(message, locator);
+        }
+    }
+    
+    // Stop counting a message that has left the store
+    public void onRemove(Message message, MessageStatus status, long locator) {
+        int number = canonicalCodeOf(message);
+        AtomicIntegerArray counts = recipientChunk(number);
+        if (counts.decrementAndGet(number & RECIPIENT_CHUNK_MASK) == 0) {
+            distinctRecipients.decrementAndGet();
+        }
+        if (status == MessageStatus.SENT) {
+            removeSent(locator);
+        }
+    }
+    
+    // Follow a message that moved from one status to another
+    public void onStatusChange(Message message, MessageStatus from, MessageStatus to, long locator) {
+        if (from == MessageStatus.SENT) {
+            removeSent(locator);
+        }
+        if (to == MessageStatus.SENT) {
+            addSent(message, locator);
+        }
+    }
+    
+    // Move a stripe's sent messages to their new handles after its shard compacts, -1 for gone ones
+    public void renumber(int stripeIndex, int[] newHandles) {
+        Stripe stripe = stripes[stripeIndex];
+        synchronized (stripe) {
+            // Handles only move down and keep their order, so each slot is read before it is written
+            int limit = Math.min(stripe.lengths.length, newHandles.length);
+            for (int handle = 0; handle < limit; handle++) {
+                if (stripe.lengths[handle] == 0) {
+                    continue;
+                }
+                int to = newHandles[handle];
+                int previous = stripe.previous[handle];
+                int next = stripe.next[handle];
+                stripe.previous[to] = previous == NONE ? NONE : newHandles[previous];
+                stripe.next[to] = next == NONE ? NONE : newHandles[next];
+                stripe.numbers[to] = stripe.numbers[handle];
+                stripe.lengths[to] = stripe.lengths[handle];
+                if (to != handle) {
+                    stripe.lengths[handle] = 0;
+                }
+            }
+            for (int length = 0; length <= MAX_LENGTH; length++) {
+                if (stripe.heads[length] != NONE) {
+                    stripe.heads[length] = newHandles[stripe.heads[length]];
+                    stripe.tails[length] = newHandles[stripe.tails[length]];
+                }
+            }
+        }
+    }
+    
+    // Locator of the longest sent message, the lowest message number if several share the length, or -1
+    public long getLongestSentLocator() {
+        int length = getKthLongestLength(1);
+        if (length < 0) {
+            return -1;
+        }
+        
+        // setMessageContent() caps content at MAX_LENGTH, so the last bucket holds one length too
+        long best = -1;
+        int bestNumber = Integer.MAX_VALUE;
+        for (int i = 0; i < stripes.length; i++) {
+            Stripe stripe = stripes[i];
+            synchronized (stripe) {
+                int head = stripe.heads[length];
+                if (head != NONE && stripe.numbers[head] < bestNumber) {
+                    bestNumber = stripe.numbers[head];
+                    best = ((long) i << 32) | head;
+                }
+            }
+        }
+        return best;
+    }
+    
+    // Length of the k-th longest sent message (1 = longest), or -1 if there are fewer than k
+    public int getKthLongestLength(int k) {
+        int[] counts = lengthCounts();
+        for (int length = MAX_LENGTH; length >= 0 && k >= 1; length--) {
+            k -= counts[length];
+            if (k <= 0) {
+                return length;
+            }
+        }
+        return -1;
+    }
+    
+    // Median sent message length, or -1 if nothing has been sent
+    public int getMedianLength() {
+        return getKthLongestLength((getSentCount() + 1) / 2);
+    }
+    
+    // Nearest rank sent length: the smallest with at least that share of sent messages at or below it, or -1
+    public int getLengthPercentile(double percentile) {
+        int[] counts = lengthCounts();
+        long total = 0;
+        for (int count : counts) {
+            total += count;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+        for (int length = 0; length <= MAX_LENGTH && total > 0; length++) {
+            seen += counts[length];
+            if (seen >= rank) {
+                return length;
+            }
+        }
+        return -1;
+    }
+    
+    public double getAverageLength() {
+        int sent = 0;
+        long characters = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                sent += stripe.sentCount;
+                characters += stripe.sentCharacters;
+            }
+        }
+        return sent == 0 ? 0 : characters / (double) sent;
+    }
+    
+    // Sent messages per length range, bucketWidth characters wide
+    public int[] getLengthHistogram(int bucketWidth) {
+        int[] counts = lengthCounts();
+        int[] histogram = new int[MAX_LENGTH / bucketWidth + 1];
+        for (int length = 0; length <= MAX_LENGTH; length++) {
+            histogram[length / bucketWidth] += counts[length];
+        }
+        return histogram;
+    }
+    
+    // Live messages to a number, in any of its formats
+    public int getRecipientCount(String recipient) {
+        int number = recipients.canonicalCodeOf(recipient);
+        AtomicIntegerArray[] chunks = recipientCounts;
+        if (number < 0 || (number >>> RECIPIENT_CHUNK_SHIFT) >= chunks.length) {
+            return 0;
+        }
+        return chunks[number >>> RECIPIENT_CHUNK_SHIFT].get(number & RECIPIENT_CHUNK_MASK);
+    }
+    
+    // Up to limit canonical numbers with the most live messages, busiest first, reads the counters without locking
+    public Map<String, Integer> getTopRecipients(int limit) {
+        Map<String, Integer> result = new LinkedHashMap<>();
+        if (limit <= 0) {
+            return result;
+        }
+        AtomicIntegerArray[] chunks = recipientCounts;
+        int[] codes = new int[limit];
+        int[] counts = new int[limit];
+        int used = 0;
+        for (int chunk = 0; chunk < chunks.length; chunk++) {
+            for (int i = 0; i < chunks[chunk].length(); i++) {
+                int code = (chunk << RECIPIENT_CHUNK_SHIFT) | i;
+                int count = chunks[chunk].get(i);
+                if (count <= 0 || code == RecipientDictionary.NO_NUMBER || (used == limit && count <= counts[used - 1])) {
+                    continue;
+                }
+                
+                // Insertion into the short sorted list, ties keep the earlier code first
+                int position = used < limit ? used++ : used - 1;
+                while (position > 0 && counts[position - 1] < count) {
+                    codes[position] = codes[position - 1];
+                    counts[position] = counts[position - 1];
+                    position--;
+                }
+                codes[position] = code;
+                counts[position] = count;
+            }
+        }
+        
+        for (int i = 0; i < used; i++) {
+            result.put(recipients.canonicalTextOf(codes[i]), counts[i]);
+        }
+        return result;
+    }
+    
+    // Number of different recipients with live messages
+    public int getDistinctRecipients() {
+        return distinctRecipients.get();
+    }
+    
+    public int getSentCount() {
+        int sent = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                sent += stripe.sentCount;
+            }
+        }
+        return sent;
+    }
+    
+    // Sent messages per length, added up over the stripes
+    private int[] lengthCounts() {
+        int[] counts = new int[MAX_LENGTH + 1];
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                for (int length = 0; length <= MAX_LENGTH; length++) {
+                    counts[length] += stripe.lengthCounts[length];
+                }
+            }
+        }
+        return counts;
+    }
+    
+    private void addSent(Message message, long locator) {
+        int handle = (int) locator;
+        int characters = message.getMessageContent().length();
+        int length = Math.min(characters, MAX_LENGTH);
+        int number = MessageEngine.messageNumberOf(message.getMessageHash());
+        Stripe stripe = stripes[(int) (locator >>> 32)];
+        synchronized (stripe) {
+            if (handle >= stripe.lengths.length) {
+                int newLength = Math.max(stripe.lengths.length * 2, handle + 1);
+                stripe.previous = Arrays.copyOf(stripe.previous, newLength);
+                stripe.next = Arrays.copyOf(stripe.next, newLength);
+                stripe.numbers = Arrays.copyOf(stripe.numbers, newLength);
+                stripe.lengths = Arrays.copyOf(stripe.lengths, newLength);
+            }
+            
+            // Usually the newest number, so this links at the tail
+            int after = stripe.tails[length];
+            while (after != NONE && stripe.numbers[after] > number) {
+                after = stripe.previous[after];
+            }
+            int before = after == NONE ? stripe.heads[length] : stripe.next[after];
+            stripe.previous[handle] = after;
+            stripe.next[handle] = before;
+            if (after == NONE) {
+                stripe.heads[length] = handle;
+            } else {
+                stripe.next[after] = handle;
+            }
+            if (before == NONE) {
+                stripe.tails[length] = handle;
+            } else {
+                stripe.previous[before] = handle;
+            }
+            stripe.numbers[handle] = number;
+            stripe.lengths[handle] = characters + 1;
+            
+            stripe.lengthCounts[length]++;
+            stripe.sentCount++;
+            stripe.sentCharacters += characters;
+        }
+    }
+    
+    private void removeSent(long locator) {
+        int handle = (int) locator;
+        Stripe stripe = stripes[(int) (locator >>> 32)];
+        synchronized (stripe) {
+            if (handle >= stripe.lengths.length || stripe.lengths[handle] == 0) {
+                return;
+            }
+            int characters = stripe.lengths[handle] - 1;
+            int length = Math.min(characters, MAX_LENGTH);
+            int after = stripe.previous[handle];
+            int before = stripe.next[handle];
+            if (after == NONE) {
+                stripe.heads[length] = before;
+            } else {
+                stripe.next[after] = before;
+            }
+            if (before == NONE) {
+                stripe.tails[length] = after;
+            } else {
+                stripe.previous[before] = after;
+            }
+            stripe.lengths[handle] = 0;
+            
+            stripe.lengthCounts[length]--;
+            stripe.sentCount--;
+            stripe.sentCharacters -= characters;
+        }
+    }
+    
+    // The store has already interned the recipient, so this is a lookup
+    private int canonicalCodeOf(Message message) {
+        return recipients.canonicalCodeOf(recipients.intern(message.getRecipient()));
+    }
+    
+    private AtomicIntegerArray recipientChunk(int canonicalCode) {
+        int chunk = canonicalCode >>> RECIPIENT_CHUNK_SHIFT;
+        AtomicIntegerArray[] chunks = recipientCounts;
+        if (chunk < chunks.length) {
+            return chunks[chunk];
+        }
+        synchronized (recipientGrowLock) {
+            chunks = recipientCounts;
+            if (chunk >= chunks.length) {
+                AtomicIntegerArray[] grown = Arrays.copyOf(chunks, Math.max(chunks.length * 2, chunk + 1));
+                for (int i = chunks.length; i < grown.length; i++) {
+                    grown[i] = new AtomicIntegerArray(1 << RECIPIENT_CHUNK_SHIFT);
+                }
+                recipientCounts = grown;
+                chunks = grown;
+            }
+            return chunks[chunk];
+        }
+    }
+}
@@ -0,0 +1,143 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Unit tests for the MessageStatistics class kept by the MessageEngine
+ */
+public class MessageStatisticsTest {
+    
+    private QuickChat createQuickChat() {
+        return new QuickChat(new NoOpNotificationSink(), false);
+    }
+    
+    @Test
+    public void testLongestSurvivesDeletes() {
+        QuickChat quickChat = createQuickChat();
+        quickChat.processMessage("+27718693002", "Short", 1);
+        quickChat.processMessage("+27718693002", "The longest message of them all", 1);
+        quickChat.processMessage("+27838884567", "A medium length one", 1);
+        quickChat.processMessage("+27838884567", "An even longer message that is only stored", 3);
+        MessageStatistics statistics = quickChat.getMessageEngine().getStatistics();
+        
+        assertTrue(quickChat.getMessageEngine().getLongestSent().getMessageContent().equals("The longest message of them all"));
+        quickChat.deleteMessage(quickChat.getAllMessages()[1].getMessageHash());
+        assertTrue(quickChat.getMessageEngine().getLongestSent().getMessageContent().equals("A medium length one"));
+        assertEquals(19, statistics.getKthLongestLength(1));
+        assertEquals(5, statistics.getKthLongestLength(2));
+        assertEquals(-1, statistics.getKthLongestLength(3));
+        assertEquals(2, statistics.getRecipientCount("027838884567"));
+        assertEquals(2, statistics.getDistinctRecipients());
+    }
+    
+    @Test
+    public void testMatchesFullRescanAfterRandomChanges() {
+        QuickChat quickChat = createQuickChat();
+        Random random = new Random(7);
+        List<String> hashes = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            if (!hashes.isEmpty() && random.nextInt(4) == 0) {
+                quickChat.deleteMessage(hashes.remove(random.nextInt(hashes.size())));
+                continue;
+            }
+            StringBuilder content = new StringBuilder();
+            int length = 1 + random.nextInt(250);
+            for (int j = 0; j < length; j++) {
+                content.append((char) ('a' + random.nextInt(26)));
+            }
+            quickChat.processMessage("+2771869300" + random.nextInt(10), content.toString(), 1 + random.nextInt(3));
+            Message[] all = quickChat.getAllMessages();
+            hashes.add(all[all.length - 1].getMessageHash());
+        }
+        
+        // The first of the longest sent messages, and the histogram, as a full scan sees them
+        String longest = "";
+        int[] histogram = new int[6];
+        for (String content : quickChat.getSentMessages()) {
+            if (content.length() > longest.length()) {
+                longest = content;
+            }
+            histogram[content.length() / 50]++;
+        }
+        MessageStatistics statistics = quickChat.getMessageEngine().getStatistics();
+        assertTrue(quickChat.getMessageEngine().getLongestSent().getMessageContent().equals(longest));
+        assertEquals(quickChat.getSentCount(), statistics.getSentCount());
+        int[] kept = statistics.getLengthHistogram(50);
+        for (int i = 0; i < histogram.length; i++) {
+            assertEquals(histogram[i], kept[i]);
+        }
+        int total = 0;
+        for (int i = 0; i < 10; i++) {
+            total += statistics.getRecipientCount("+2771869300" + i);
+        }
+        assertEquals(quickChat.getTotalMessagesCount(), total);
+        
+        // The report's figures agree with a full parallel count
+        MessageAnalytics analytics = MessageAnalytics.of(quickChat.getMessageEngine());
+        assertEquals(analytics.lengthPercentile(90, MessageStatus.SENT), statistics.getLengthPercentile(90));
+        assertEquals(analytics.lengthPercentile(99, MessageStatus.SENT), statistics.getLengthPercentile(99));
+        assertTrue(analytics.countByRecipient(3).equals(statistics.getTopRecipients(3)));
+    }
+    
+    @Test
+    public void testStripesAddUpAcrossShards() throws InterruptedException {
+        MessageEngine messageEngine = new MessageEngine(8);
+        Thread[] writers = new Thread[4];
+        for (int t = 0; t < writers.length; t++) {
+            int writer = t;
+            writers[t] = new Thread(() -> {
+                for (int i = 0; i < 500; i++) {
+                    Message message = new Message();
+                    message.setNotificationSink(new NoOpNotificationSink());
+                    message.setRecipient("+2771869300" + writer);
+                    message.setMessageContent("x".repeat(1 + (i * 7 + writer) % 200));
+                    message.setMessageHash("00:" + messageEngine.nextMessageNumber() + ":XX");
+                    messageEngine.add(message, MessageStatus.SENT);
+                    if (i % 3 == 0) {
+                        messageEngine.delete(message.getMessageHash());
+                    }
+                }
+            });
+            writers[t].start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        
+        MessageStatistics statistics = messageEngine.getStatistics();
+        Message[] sent = messageEngine.toArray(MessageStatus.SENT);
+        int longest = 0;
+        for (Message message : sent) {
+            longest = Math.max(longest, message.getMessageContent().length());
+        }
+        assertEquals(sent.length, statistics.getSentCount());
+        assertEquals(longest, statistics.getKthLongestLength(1));
+        assertEquals(longest, messageEngine.getLongestSent().getMessageContent().length());
+        assertEquals(4, statistics.getDistinctRecipients());
+        assertEquals(sent.length / 4, statistics.getRecipientCount("027718693002"));
+    }
+    
+    @Test
+    public void testHashPagesFollowInsertionOrder() {
+        QuickChat quickChat = createQuickChat();
+        for (int i = 0; i < 45; i++) {
+            quickChat.processMessage("+27718693002", "Message " + i, 1);
+        }
+        String[] hashes = quickChat.getMessageHashes();
+        Message[] page = quickChat.getMessageEngine().page(MessageStatus.SENT, 40, 20);
+        assertEquals(5, page.length);
+        assertTrue(page[0].getMessageHash().equals(hashes[40]));
+    }
+    
+    private void assertTrue(boolean condition) {
+        if (!condition) {
+            throw new AssertionError("Expected condition to be true");
+        }
+    }
+    
+    private void assertEquals(int expected, int actual) {
+        if (expected != actual) {
+            throw new AssertionError("Expected " + expected + " but was " + actual);
+        }
+    }
+}
@@ -0,0 +1,9 @@
+/**
+ * MessageStatus enum - The state a message is kept in by the MessageStore
+ * Linked to: MessageStore.java and QuickChat.java
+ */
+public enum MessageStatus {
+    SENT,
+    STORED,
+    DISREGARDED
+}
@@ -0,0 +1,624 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * MessageStore class - Growable, indexed, column-oriented storage for QuickChat messages
+ * Keeps a single record per message together with its status, but never the
+ * Message object itself: each field lives in its own primitive column. IDs of
+ * digits are packed into a long, the status is a byte, the recipient is a code
+ * from a RecipientDictionary that can be shared with other stores, and text
+ * (content, hash and sender) is UTF-8 in a TextPool, so a message costs a few
+ * dozen bytes of arrays instead of a Message and four Strings.
+ * get() decodes a fresh Message from the columns. It is a copy: changing it
+ * does not change the store, status changes go through setStatus().
+ * Columns live in fixed-size chunks so growing the store never copies
+ * existing messages, only the small chunk directory.
+ * Deleting a message leaves a tombstone in its slot, so lookups and deletes
+ * are constant time. Once tombstones outnumber live messages, compactIfSparse()
+ * slides the live rows down in order and copies their text into a fresh
+ * TextPool, so memory follows the live messages under delete churn. That
+ * renumbers handles, so positions that must outlive a compaction are kept as
+ * sequence numbers, which are issued in insertion order and never change.
+ * Each status has its own view, one bit per slot in chunks alongside the
+ * columns, so moving a message between views or removing it is constant time
+ * and every view stays in insertion order, whatever the status changes.
+ * Each recipient's messages are a doubly linked list through two more columns,
+ * also in insertion order and also unlinked in constant time.
+ * Linked to: QuickChat.java, Message.java, MessageStatus.java, TextPool.java, HandleIndex.java,
+ * RecipientDictionary.java and ContentIndex.java
+ */
+public class MessageStore {
+    // 1024 messages per chunk
+    private static final int CHUNK_SHIFT = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int NONE = -1;
+    private static final MessageStatus[] STATUSES = MessageStatus.values();
+    
+    // Packed ID values: 0 is a null ID, -1 an ID kept as text in otherIDs
+    private static final long NULL_ID = 0;
+    static final long UNPACKED_ID = -1;
+    private static final int MAX_PACKED_DIGITS = 15;
+    
+    private long[][] idChunks = new long[4][];
+    private byte[][] statusChunks = new byte[4][];       // MessageStatus ordinal + 1, 0 once removed
+    private int[][] recipientChunks = new int[4][];      // RecipientDictionary codes
+    private long[][] contentChunks = new long[4][];      // TextPool references
+    private long[][] hashChunks = new long[4][];
+    private long[][] senderChunks = new long[4][];
+    private long[][] sequenceChunks = new long[4][];
+    private int[][] recipientPreviousChunks = new int[4][];  // Previous handle to the same canonical recipient
+    private int[][] recipientNextChunks = new int[4][];      // Next handle to the same canonical recipient
+    private int chunkCount = 0;
+    private int handleLimit = 0;  // Handles ever issued, including tombstones
+    private int size = 0;         // Live messages only
+    private long nextSequence = 0;
+    
+    // Replaced by a compacted copy when the store compacts
+    private TextPool text = new TextPool();
+    private final RecipientDictionary recipients;
+    
+    // IDs that are not plain digits, such as ones from old archives
+    private final Map<Integer, String> otherIDs = new HashMap<>();
+    
+    // Status views, indexed by MessageStatus.ordinal(), with a count per chunk so empty chunks are skipped
+    private final long[][][] viewBits = new long[STATUSES.length][4][];
+    private final int[][] viewChunkCounts = new int[STATUSES.length][4];
+    private final int[] viewCounts = new int[STATUSES.length];
+    
+    // Hash indexes from message ID and message hash to handle, keys are read back from the columns
+    private final HandleIndex idIndex = new HandleIndex(this::idMatches);
+    private final HandleIndex hashIndex = new HandleIndex(
+        (handle, key) -> text.matches(hashChunks[handle >>> CHUNK_SHIFT][handle & CHUNK_MASK], key));
+    
+    // First and last handle and message count per canonical recipient code, the dictionary finds the codes
+    private int[] recipientHeads = new int[16];
+    private int[] recipientTails = new int[16];
+    private int[] recipientCounts = new int[16];
+    
+    // Inverted index over the words in each message
+    private ContentIndex contentIndex = new ContentIndex();
+    
+    public MessageStore() {
+        this(new RecipientDictionary());
+    }
+    
+    // Share recipient codes with other stores, such as the other shards of a MessageEngine
+    public MessageStore(RecipientDictionary recipients) {
+        this.recipients = recipients;
+        Arrays.fill(recipientHeads, NONE);
+        Arrays.fill(recipientTails, NONE);
+    }
+    
+    // Add a message and return its handle (position in the store)
+    public int add(Message message, MessageStatus status) {
+        if (message == null || status == null) {
+            throw new IllegalArgumentException("Message and status are required.");
+        }
+        
+        int handle = handleLimit;
+        int chunk = handle >>> CHUNK_SHIFT;
+        int slot = handle & CHUNK_MASK;
+        if (chunk == chunkCount) {
+            addChunk();
+        }
+        
+        long packedID = packID(message.getMessageID());
+        if (packedID == UNPACKED_ID) {
+            otherIDs.put(handle, message.getMessageID());
+        }
+        idChunks[chunk][slot] = packedID;
+        statusChunks[chunk][slot] = (byte) (status.ordinal() + 1);
+        contentChunks[chunk][slot] = text.add(message.getMessageContent());
+        int recipientCode = recipients.intern(message.getRecipient());
+        recipientChunks[chunk][slot] = recipientCode;
+        hashChunks[chunk][slot] = text.add(message.getMessageHash());
+        senderChunks[chunk][slot] = text.add(message.getSender());
+        sequenceChunks[chunk][slot] = nextSequence++;
+        handleLimit++;
+        size++;
+        addToView(status, handle);
+        
+        idIndex.put(message.getMessageID(), handle);
+        hashIndex.put(message.getMessageHash(), handle);
+        linkRecipient(recipients.canonicalCodeOf(recipientCode), handle);
+        contentIndex.add(message.getMessageContent(), handle);
+        return handle;
+    }
+    
+    // Decode the message for a handle, or null if it has been removed
+    public Message get(int handle) {
+        MessageStatus status = getStatus(handle);
+        if (status == null) {
+            return null;
+        }
+        
+        int chunk = handle >>> CHUNK_SHIFT;
+        int slot = handle & CHUNK_MASK;
+        Message message = new Message(text.get(senderChunks[chunk][slot]));
+        message.setMessageID(getMessageID(handle));
+        message.setMessageHash(text.get(hashChunks[chunk][slot]));
+        message.setRecipient(recipients.textOf(recipientChunks[chunk][slot]));
+        String content = text.get(contentChunks[chunk][slot]);
+        if (content != null) {
+            message.setMessageContent(content);
+        }
+        message.setSent(status == MessageStatus.SENT);
+        message.setStored(status == MessageStatus.STORED);
+        return message;
+    }
+    
+    // Get the status for a handle, or null if it has been removed
+    public MessageStatus getStatus(int handle) {
+        checkHandle(handle);
+        int status = statusChunks[handle >>> CHUNK_SHIFT][handle & CHUNK_MASK];
+        return status == 0 ? null : STATUSES[status - 1];
+    }
+    
+    // Check if a handle still holds a message
+    public boolean isLive(int handle) {
+        checkHandle(handle);
+        return statusChunks[handle >>> CHUNK_SHIFT][handle & CHUNK_MASK] != 0;
+    }
+    
+    // Message ID for a handle, read without decoding the rest of the message
+    public String getMessageID(int handle) {
+        checkHandle(handle);
+        long packed = idChunks[handle >>> CHUNK_SHIFT][handle & CHUNK_MASK];
+        return packed == UNPACKED_ID ? otherIDs.get(handle) : unpackID(packed);
+    }
+    
+    // Message hash for a handle, read without decoding the rest of the message
+    public String getMessageHash(int handle) {
+        checkHandle(handle);
+        return text.get(hashChunks[handle >>> CHUNK_SHIFT][handle & CHUNK_MASK]);
+    }
+    
+    // Find the handle of a message by ID, or -1 if there is none
+    public int findByID(String messageID) {
+        return idIndex.find(messageID);
+    }
+    
+    // Find the handle of a message by hash, or -1 if there is none
+    public int findByHash(String messageHash) {
+        return hashIndex.find(messageHash);
+    }
+    
+    // Find the handles of messages sent to a number or number prefix, in insertion order
+    public int[] findByRecipient(String recipientPrefix) {
+        int[] canonicalCodes = recipients.canonicalCodesWithPrefix(recipientPrefix);
+        int total = 0;
+        for (int code : canonicalCodes) {
+            total += code < recipientCounts.length ? recipientCounts[code] : 0;
+        }
+        
+        int[] handles = new int[total];
+        int count = 0;
+        for (int code : canonicalCodes) {
+            if (code < recipientCounts.length) {
+                for (int handle = recipientHeads[code]; handle != NONE; 
+                     handle = recipientNextChunks[handle >>> CHUNK_SHIFT][handle & CHUNK_MASK]) {
+                    handles[count++] = handle;
+                }
+            }
+        }
+        
+        // Each number's handles are already in insertion order, only a prefix needs them merged
+        if (canonicalCodes.length > 1) {
+            Arrays.sort(handles);
+        }
+        return handles;
+    }
+    
+    // Recipient code for a handle, see getRecipients()
+    public int getRecipientCode(int handle) {
+        checkHandle(handle);
+        return recipientChunks[handle >>> CHUNK_SHIFT][handle & CHUNK_MASK];
+    }
+    
+    // Dictionary that recipient codes belong to
+    public RecipientDictionary getRecipients() {
+        return recipients;
+    }
+    
+    // Find the handles of up to limit messages containing every word of a query, newest first
+    public int[] findByContent(String query, int limit) {
+        return contentIndex.search(query, limit);
+    }
+    
+    // First handle in a status view, or -1 if the view is empty
+    public int firstHandle(MessageStatus status) {
+        return handleFrom(status, 0);
+    }
+    
+    // First handle at or after a handle in a status view (any live message when status is null), or -1
+    public int handleFrom(MessageStatus status, int handle) {
+        if (status == null) {
+            int first = NONE;
+            for (MessageStatus view : STATUSES) {
+                int found = handleFrom(view, handle);
+                if (found != NONE && (first == NONE || found < first)) {
+                    first = found;
+                }
+            }
+            return first;
+        }
+        
+        int view = status.ordinal();
+        int from = Math.max(handle, 0) & CHUNK_MASK;
+        for (int chunk = Math.max(handle, 0) >>> CHUNK_SHIFT; chunk < chunkCount; chunk++, from = 0) {
+            if (viewChunkCounts[view][chunk] == 0) {
+                continue;
+            }
+            long[] bits = viewBits[view][chunk];
+            for (int word = from >>> 6; word < bits.length; word++) {
+                long set = word == from >>> 6 ? bits[word] & (-1L << (from & 63)) : bits[word];
+                if (set != 0) {
+                    return (chunk << CHUNK_SHIFT) | (word << 6) | Long.numberOfTrailingZeros(set);
+                }
+            }
+        }
+        return NONE;
+    }
+    
+    // Sequence number of a handle, kept through compactions, later messages have higher ones
+    public long getSequence(int handle) {
+        checkHandle(handle);
+        return sequenceChunks[handle >>> CHUNK_SHIFT][handle & CHUNK_MASK];
+    }
+    
+    // First handle whose sequence number is at least sequence, or handleLimit() if there is none
+    public int handleAtSequence(long sequence) {
+        int low = 0;
+        int high = handleLimit;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sequenceChunks[middle >>> CHUNK_SHIFT][middle & CHUNK_MASK] < sequence) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+    
+    // Move a message to another status view, where it keeps its insertion order, returns its old status or null if removed
+    public MessageStatus setStatus(int handle, MessageStatus status) {
+        MessageStatus previous = getStatus(handle);
+        if (previous == null || previous == status) {
+            return previous;
+        }
+        
+        removeFromView(previous, handle);
+        statusChunks[handle >>> CHUNK_SHIFT][handle & CHUNK_MASK] = (byte) (status.ordinal() + 1);
+        addToView(status, handle);
+        return previous;
+    }
+    
+    // Remove the message for a handle, leaving a tombstone in its slot
+    public Message remove(int handle) {
+        Message removed = get(handle);
+        if (removed == null) {
+            return null;
+        }
+        
+        // Only drop index entries that still point at this handle, while the columns still hold the keys
+        idIndex.remove(removed.getMessageID(), handle);
+        hashIndex.remove(removed.getMessageHash(), handle);
+        unlinkRecipient(recipients.canonicalCodeOf(getRecipientCode(handle)), handle);
+        contentIndex.remove(removed.getMessageContent(), handle);
+        
+        int chunk = handle >>> CHUNK_SHIFT;
+        int slot = handle & CHUNK_MASK;
+        removeFromView(getStatus(handle), handle);
+        statusChunks[chunk][slot] = 0;
+        otherIDs.remove(handle);
+        text.release(contentChunks[chunk][slot]);
+        text.release(hashChunks[chunk][slot]);
+        text.release(senderChunks[chunk][slot]);
+        size--;
+        return removed;
+    }
+    
+    // Compact the store once tombstones outnumber live messages, returns the new handle
+    // for each old one (-1 for tombstones), or null if the store was left as it is
+    public int[] compactIfSparse() {
+        int tombstones = handleLimit - size;
+        if (tombstones < CHUNK_SIZE || tombstones <= size) {
+            return null;
+        }
+        
+        int[] newHandles = new int[handleLimit];
+        TextPool oldText = text;
+        text = new TextPool();
+        Map<Integer, String> oldIDs = new HashMap<>(otherIDs);
+        otherIDs.clear();
+        for (int view = 0; view < STATUSES.length; view++) {
+            for (int chunk = 0; chunk < chunkCount; chunk++) {
+                Arrays.fill(viewBits[view][chunk], 0);
+                viewChunkCounts[view][chunk] = 0;
+            }
+        }
+        Arrays.fill(viewCounts, 0);
+        Arrays.fill(recipientHeads, NONE);
+        Arrays.fill(recipientTails, NONE);
+        Arrays.fill(recipientCounts, 0);
+        
+        // Live rows only ever move down, so copying in handle order never overwrites one still to be read
+        int live = 0;
+        for (int handle = 0; handle < handleLimit; handle++) {
+            int chunk = handle >>> CHUNK_SHIFT;
+            int slot = handle & CHUNK_MASK;
+            byte status = statusChunks[chunk][slot];
+            if (status == 0) {
+                newHandles[handle] = NONE;
+                continue;
+            }
+            
+            int to = live++;
+            int toChunk = to >>> CHUNK_SHIFT;
+            int toSlot = to & CHUNK_MASK;
+            newHandles[handle] = to;
+            idChunks[toChunk][toSlot] = idChunks[chunk][slot];
+            if (idChunks[toChunk][toSlot] == UNPACKED_ID) {
+                otherIDs.put(to, oldIDs.get(handle));
+            }
+            statusChunks[toChunk][toSlot] = status;
+            recipientChunks[toChunk][toSlot] = recipientChunks[chunk][slot];
+            sequenceChunks[toChunk][toSlot] = sequenceChunks[chunk][slot];
+            contentChunks[toChunk][toSlot] = text.copy(oldText, contentChunks[chunk][slot]);
+            hashChunks[toChunk][toSlot] = text.copy(oldText, hashChunks[chunk][slot]);
+            senderChunks[toChunk][toSlot] = text.copy(oldText, senderChunks[chunk][slot]);
+            addToView(STATUSES[status - 1], to);
+            linkRecipient(recipients.canonicalCodeOf(recipientChunks[toChunk][toSlot]), to);
+        }
+        
+        // Drop the chunks no longer needed and clear what is left of the last one
+        for (int handle = live; handle < Math.min(handleLimit, chunksFor(live) << CHUNK_SHIFT); handle++) {
+            statusChunks[handle >>> CHUNK_SHIFT][handle & CHUNK_MASK] = 0;
+        }
+        for (int chunk = chunksFor(live); chunk < chunkCount; chunk++) {
+            idChunks[chunk] = null;
+            statusChunks[chunk] = null;
+            recipientChunks[chunk] = null;
+            contentChunks[chunk] = null;
+            hashChunks[chunk] = null;
+            senderChunks[chunk] = null;
+            sequenceChunks[chunk] = null;
+            recipientPreviousChunks[chunk] = null;
+            recipientNextChunks[chunk] = null;
+            for (int view = 0; view < STATUSES.length; view++) {
+                viewBits[view][chunk] = null;
+            }
+        }
+        chunkCount = chunksFor(live);
+        handleLimit = live;
+        
+        idIndex.renumber(newHandles);
+        hashIndex.renumber(newHandles);
+        contentIndex.renumber(newHandles);
+        return newHandles;
+    }
+    
+    // Number of live messages in the store
+    public int size() {
+        return size;
+    }
+    
+    // Upper bound for handles, use with isLive() to walk the store
+    public int handleLimit() {
+        return handleLimit;
+    }
+    
+    // Number of message slots allocated so far
+    public int capacity() {
+        return chunkCount * CHUNK_SIZE;
+    }
+    
+    // Number of messages with the given status
+    public int count(MessageStatus status) {
+        return viewCounts[status.ordinal()];
+    }
+    
+    // Bytes of message text still in use
+    public long textBytes() {
+        return text.liveBytes();
+    }
+    
+    // Bytes held by the columns and the text pool, not counting the indexes
+    public long columnBytes() {
+        // Five long columns, a byte column, three int columns and a view bit per status per slot
+        long perSlot = 5 * Long.BYTES + 1 + 3 * Integer.BYTES;
+        return capacity() * perSlot + capacity() / Byte.SIZE * STATUSES.length + text.allocatedBytes();
+    }
+    
+    // Copy the columns of every live message into a snapshot from position on, returns the next position
+    int copyInto(MessageSnapshot snapshot, int shardIndex, int position) {
+        snapshot.shardStarts[shardIndex] = position;
+        snapshot.pools[shardIndex] = text.readOnlyView();
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            int limit = Math.min(CHUNK_SIZE, handleLimit - (chunk << CHUNK_SHIFT));
+            byte[] statuses = statusChunks[chunk];
+            for (int slot = 0; slot < limit; slot++) {
+                if (statuses[slot] == 0) {
+                    continue;
+                }
+                snapshot.statuses[position] = (byte) (statuses[slot] - 1);
+                snapshot.recipientCodes[position] = recipientChunks[chunk][slot];
+                snapshot.ids[position] = idChunks[chunk][slot];
+                snapshot.contentRefs[position] = contentChunks[chunk][slot];
+                snapshot.hashRefs[position] = hashChunks[chunk][slot];
+                snapshot.senderRefs[position] = senderChunks[chunk][slot];
+                if (idChunks[chunk][slot] == UNPACKED_ID) {
+                    snapshot.otherIDs.put(position, otherIDs.get((chunk << CHUNK_SHIFT) | slot));
+                }
+                position++;
+            }
+        }
+        return position;
+    }
+    
+    // Copy of all messages in insertion order
+    public Message[] toArray() {
+        Message[] result = new Message[size];
+        int index = 0;
+        for (int i = 0; i < handleLimit; i++) {
+            Message message = get(i);
+            if (message != null) {
+                result[index++] = message;
+            }
+        }
+        return result;
+    }
+    
+    // Copy of all messages in a status view, in insertion order
+    public Message[] toArray(MessageStatus status) {
+        Message[] result = new Message[count(status)];
+        int index = 0;
+        for (int handle = firstHandle(status); handle != NONE; handle = handleFrom(status, handle + 1)) {
+            result[index++] = get(handle);
+        }
+        return result;
+    }
+    
+    private void addToView(MessageStatus status, int handle) {
+        int view = status.ordinal();
+        int chunk = handle >>> CHUNK_SHIFT;
+        int slot = handle & CHUNK_MASK;
+        viewBits[view][chunk][slot >>> 6] |= 1L << slot;
+        viewChunkCounts[view][chunk]++;
+        viewCounts[view]++;
+    }
+    
+    private void removeFromView(MessageStatus status, int handle) {
+        int view = status.ordinal();
+        int chunk = handle >>> CHUNK_SHIFT;
+        int slot = handle & CHUNK_MASK;
+        viewBits[view][chunk][slot >>> 6] &= ~(1L << slot);
+        viewChunkCounts[view][chunk]--;
+        viewCounts[view]--;
+    }
+    
+    private void addChunk() {
+        if (chunkCount == idChunks.length) {
+            // Only the chunk directory is copied, never the messages themselves
+            int newLength = chunkCount * 2;
+            idChunks = Arrays.copyOf(idChunks, newLength);
+            statusChunks = Arrays.copyOf(statusChunks, newLength);
+            contentChunks = Arrays.copyOf(contentChunks, newLength);
+            recipientChunks = Arrays.copyOf(recipientChunks, newLength);
+            hashChunks = Arrays.copyOf(hashChunks, newLength);
+            senderChunks = Arrays.copyOf(senderChunks, newLength);
+            sequenceChunks = Arrays.copyOf(sequenceChunks, newLength);
+            recipientPreviousChunks = Arrays.copyOf(recipientPreviousChunks, newLength);
+            recipientNextChunks = Arrays.copyOf(recipientNextChunks, newLength);
+            for (int view = 0; view < STATUSES.length; view++) {
+                viewBits[view] = Arrays.copyOf(viewBits[view], newLength);
+                viewChunkCounts[view] = Arrays.copyOf(viewChunkCounts[view], newLength);
+            }
+        }
+        idChunks[chunkCount] = new long[CHUNK_SIZE];
+        statusChunks[chunkCount] = new byte[CHUNK_SIZE];
+        contentChunks[chunkCount] = new long[CHUNK_SIZE];
+        recipientChunks[chunkCount] = new int[CHUNK_SIZE];
+        hashChunks[chunkCount] = new long[CHUNK_SIZE];
+        senderChunks[chunkCount] = new long[CHUNK_SIZE];
+        sequenceChunks[chunkCount] = new long[CHUNK_SIZE];
+        recipientPreviousChunks[chunkCount] = new int[CHUNK_SIZE];
+        recipientNextChunks[chunkCount] = new int[CHUNK_SIZE];
+        for (int view = 0; view < STATUSES.length; view++) {
+            viewBits[view][chunkCount] = new long[CHUNK_SIZE / Long.SIZE];
+        }
+        chunkCount++;
+    }
+    
+    private static int chunksFor(int handles) {
+        return (handles + CHUNK_SIZE - 1) >>> CHUNK_SHIFT;
+    }
+    
+    // Append a handle to the end of its recipient's list
+    private void linkRecipient(int canonicalCode, int handle) {
+        if (canonicalCode >= recipientCounts.length) {
+            int oldLength = recipientCounts.length;
+            int newLength = Math.max(oldLength * 2, canonicalCode + 1);
+            recipientHeads = Arrays.copyOf(recipientHeads, newLength);
+            recipientTails = Arrays.copyOf(recipientTails, newLength);
+            recipientCounts = Arrays.copyOf(recipientCounts, newLength);
+            Arrays.fill(recipientHeads, oldLength, newLength, NONE);
+            Arrays.fill(recipientTails, oldLength, newLength, NONE);
+        }
+        int tail = recipientTails[canonicalCode];
+        recipientPreviousChunks[handle >>> CHUNK_SHIFT][handle & CHUNK_MASK] = tail;
+        recipientNextChunks[handle >>> CHUNK_SHIFT][handle & CHUNK_MASK] = NONE;
+        if (tail == NONE) {
+            recipientHeads[canonicalCode] = handle;
+        } else {
+            recipientNextChunks[tail >>> CHUNK_SHIFT][tail & CHUNK_MASK] = handle;
+        }
+        recipientTails[canonicalCode] = handle;
+        recipientCounts[canonicalCode]++;
+    }
+    
+    // Take a handle out of its recipient's list without touching any other handle
+    private void unlinkRecipient(int canonicalCode, int handle) {
+        int previous = recipientPreviousChunks[handle >>> CHUNK_SHIFT][handle & CHUNK_MASK];
+        int next = recipientNextChunks[handle >>> CHUNK_SHIFT][handle & CHUNK_MASK];
+        if (previous == NONE) {
+            recipientHeads[canonicalCode] = next;
+        } else {
+            recipientNextChunks[previous >>> CHUNK_SHIFT][previous & CHUNK_MASK] = next;
+        }
+        if (next == NONE) {
+            recipientTails[canonicalCode] = previous;
+        } else {
+            recipientPreviousChunks[next >>> CHUNK_SHIFT][next & CHUNK_MASK] = previous;
+        }
+        recipientCounts[canonicalCode]--;
+    }
+    
+    // IDs of up to 15 digits become the digits as a number with the digit count on top,
+    // so leading zeros survive: "0012" packs as 12 | 4 << 56
+    static long packID(String messageID) {
+        if (messageID == null) {
+            return NULL_ID;
+        }
+        int digits = messageID.length();
+        if (digits == 0 || digits > MAX_PACKED_DIGITS) {
+            return UNPACKED_ID;
+        }
+        long value = 0;
+        for (int i = 0; i < digits; i++) {
+            char c = messageID.charAt(i);
+            if (c < '0' || c > '9') {
+                return UNPACKED_ID;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return ((long) digits << 56) | value;
+    }
+    
+    static String unpackID(long packed) {
+        if (packed == NULL_ID) {
+            return null;
+        }
+        char[] digits = new char[(int) (packed >>> 56)];
+        long value = packed & ((1L << 56) - 1);
+        for (int i = digits.length - 1; i >= 0; i--) {
+            digits[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return new String(digits);
+    }
+    
+    private boolean idMatches(int handle, String messageID) {
+        long packed = idChunks[handle >>> CHUNK_SHIFT][handle & CHUNK_MASK];
+        return packed == UNPACKED_ID ? messageID.equals(otherIDs.get(handle)) : packed == packID(messageID);
+    }
+    
+    private void checkHandle(int handle) {
+        if (handle < 0 || handle >= handleLimit) {
+            throw new IndexOutOfBoundsException("Invalid message handle: " + handle);
+        }
+    }
+}
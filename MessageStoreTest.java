@@ -0,0 +1,281 @@
+
+/**
+ * Unit tests for the MessageStore class
+ */
+public class MessageStoreTest {
+    
+    private Message createMessage(String recipient, String content) {
+        Message message = new Message();
+        message.setRecipient(recipient);
+        message.setMessageContent(content);
+        return message;
+    }
+    
+    @Test
+    public void testAddKeepsOneRecordPerMessage() {
+        MessageStore store = new MessageStore();
+        Message message = createMessage("+27718693002", "Did you get the cake?");
+        int handle = store.add(message, MessageStatus.SENT);
+        
+        assertEquals("Did you get the cake?", store.get(handle).getMessageContent());
+        assertEquals("+27718693002", store.get(handle).getRecipient());
+        assertTrue(store.get(handle).isSent() && !store.get(handle).isStored());
+        assertTrue(store.getStatus(handle) == MessageStatus.SENT);
+        assertEquals(1, store.size());
+        assertEquals(1, store.count(MessageStatus.SENT));
+    }
+    
+    @Test
+    public void testStoreGrowsPastOneHundredMessages() {
+        MessageStore store = new MessageStore();
+        for (int i = 0; i < 5000; i++) {
+            store.add(createMessage("+27718693002", "Message " + i), 
+                i % 2 == 0 ? MessageStatus.SENT : MessageStatus.STORED);
+        }
+        
+        assertEquals(5000, store.size());
+        assertEquals(2500, store.count(MessageStatus.SENT));
+        assertEquals(2500, store.count(MessageStatus.STORED));
+        assertEquals("Message 4999", store.get(4999).getMessageContent());
+    }
+    
+    @Test
+    public void testRemoveUpdatesCounts() {
+        MessageStore store = new MessageStore();
+        store.add(createMessage("+27718693002", "First"), MessageStatus.SENT);
+        store.add(createMessage("+27718693002", "Second"), MessageStatus.DISREGARDED);
+        
+        store.remove(0);
+        
+        assertEquals(1, store.size());
+        assertEquals(0, store.count(MessageStatus.SENT));
+        assertEquals(1, store.toArray(MessageStatus.DISREGARDED).length);
+        assertEquals("Second", store.get(1).getMessageContent());
+    }
+    
+    @Test
+    public void testSetStatusMovesBetweenViews() {
+        MessageStore store = new MessageStore();
+        store.add(createMessage("+27718693002", "First"), MessageStatus.STORED);
+        store.add(createMessage("+27718693002", "Second"), MessageStatus.SENT);
+        
+        assertTrue(store.setStatus(0, MessageStatus.SENT) == MessageStatus.STORED);
+        
+        assertEquals(0, store.count(MessageStatus.STORED));
+        assertEquals(2, store.count(MessageStatus.SENT));
+        assertEquals("First", store.toArray(MessageStatus.SENT)[0].getMessageContent());
+        assertTrue(store.firstHandle(MessageStatus.STORED) == -1);
+    }
+    
+    @Test
+    public void testLookupByIDAndHash() {
+        MessageStore store = new MessageStore();
+        for (int i = 0; i < 1000; i++) {
+            Message message = createMessage("+27718693002", "Message number " + i);
+            message.setMessageID(String.format("%010d", i));
+            message.createMessageHash(i + 1);
+            store.add(message, MessageStatus.SENT);
+        }
+        
+        int handle = store.findByID("0000000500");
+        assertEquals("Message number 500", store.get(handle).getMessageContent());
+        assertEquals(handle, store.findByHash(store.get(handle).getMessageHash()));
+        
+        store.remove(handle);
+        assertEquals(-1, store.findByID("0000000500"));
+        assertTrue(!store.isLive(handle));
+        assertEquals(999, store.size());
+    }
+    
+    @Test
+    public void testFindByRecipientMatchesBothPrefixes() {
+        MessageStore store = new MessageStore();
+        int first = store.add(createMessage("+27718693002", "Where are you?"), MessageStatus.SENT);
+        int second = store.add(createMessage("027718693002", "Running late"), MessageStatus.STORED);
+        store.add(createMessage("+27834557896", "Did you get the cake?"), MessageStatus.SENT);
+        
+        int[] handles = store.findByRecipient("+27718693002");
+        assertEquals(2, handles.length);
+        assertEquals(first, handles[0]);
+        assertEquals(second, handles[1]);
+        assertEquals(3, store.findByRecipient("027").length);
+        assertEquals(1, store.findByRecipient("+2783").length);
+        
+        store.remove(first);
+        assertEquals(1, store.findByRecipient("027718693002").length);
+    }
+    
+    @Test
+    public void testStatusViewsStayConsistentAfterDeleteChurn() {
+        MessageStore store = new MessageStore();
+        MessageStatus[] statuses = MessageStatus.values();
+        int[] handles = new int[3000];
+        for (int i = 0; i < handles.length; i++) {
+            // Duplicate texts must not confuse which entry is deleted
+            Message message = createMessage("+27718693002", "Same text");
+            message.setMessageHash("00:" + i + ":SAMETEXT");
+            handles[i] = store.add(message, statuses[i % 3]);
+        }
+        for (int i = 0; i < handles.length; i += 2) {
+            store.remove(handles[i]);
+        }
+        
+        int total = 0;
+        for (MessageStatus status : statuses) {
+            Message[] view = store.toArray(status);
+            assertEquals(store.count(status), view.length);
+            for (Message message : view) {
+                int number = Integer.parseInt(message.getMessageHash().split(":")[1]);
+                assertTrue(number % 2 == 1 && statuses[number % 3] == status);
+            }
+            total += view.length;
+        }
+        assertEquals(1500, total);
+        assertEquals(1500, store.size());
+    }
+    
+    @Test
+    public void testColumnsRoundTripEveryField() {
+        MessageStore store = new MessageStore();
+        Message message = new Message("Kyle");
+        message.setRecipient("+27718693002");
+        message.setMessageContent("Café at 5? 🍰");
+        message.setMessageID("0012345678");
+        message.createMessageHash(7);
+        Message legacy = createMessage(null, "Old archive");
+        legacy.setMessageID("MSG-17");
+        
+        int handle = store.add(message, MessageStatus.STORED);
+        int legacyHandle = store.add(legacy, MessageStatus.DISREGARDED);
+        Message empty = new Message();
+        empty.setRecipient("+27718693002");
+        store.add(empty, MessageStatus.SENT);
+        
+        Message copy = store.get(handle);
+        assertTrue(copy != message);
+        assertEquals("Kyle", copy.getSender());
+        assertEquals("0012345678", copy.getMessageID());
+        assertEquals(message.getMessageHash(), copy.getMessageHash());
+        assertEquals("Café at 5? 🍰", copy.getMessageContent());
+        assertTrue(copy.isStored() && !copy.isSent());
+        assertEquals(handle, store.findByID("0012345678"));
+        assertEquals(-1, store.findByID("12345678"));
+        assertEquals(legacyHandle, store.findByID("MSG-17"));
+        assertEquals(null, store.get(legacyHandle).getRecipient());
+        assertEquals(null, store.get(2).getMessageContent());
+        
+        long before = store.textBytes();
+        store.remove(legacyHandle);
+        assertTrue(store.textBytes() < before);
+        assertEquals(-1, store.findByID("MSG-17"));
+    }
+    
+    @Test
+    public void testIndexesSurviveHeavyChurn() {
+        MessageStore store = new MessageStore();
+        int[] handles = new int[20000];
+        for (int i = 0; i < handles.length; i++) {
+            Message message = createMessage("+27718693002", "Message " + i);
+            message.setMessageID(String.format("%010d", i));
+            message.setMessageHash("00:" + i + ":MESSAGE" + i);
+            handles[i] = store.add(message, MessageStatus.SENT);
+            if (i % 3 == 0) {
+                store.remove(handles[i / 2]);
+            }
+        }
+        
+        for (int i = 0; i < handles.length; i++) {
+            int expected = store.isLive(handles[i]) ? handles[i] : -1;
+            assertEquals(expected, store.findByID(String.format("%010d", i)));
+            assertEquals(expected, store.findByHash("00:" + i + ":MESSAGE" + i));
+        }
+    }
+    
+    @Test
+    public void testCompactionKeepsOrderAndReclaimsSpace() {
+        MessageStore store = new MessageStore();
+        MessageStatus[] statuses = MessageStatus.values();
+        for (int i = 0; i < 4000; i++) {
+            Message message = createMessage("+2771869300" + i % 4, "Message " + i + (i % 5 == 0 ? " dinner" : ""));
+            message.setMessageID(i % 100 == 0 ? "MSG-" + i : String.format("%010d", i));
+            message.setMessageHash("00:" + i + ":MESSAGE");
+            store.add(message, statuses[i % 3]);
+        }
+        long sequence = store.getSequence(3001);
+        assertTrue(store.compactIfSparse() == null);
+        for (int i = 0; i < 4000; i++) {
+            if (i % 4 != 1) {
+                store.remove(store.findByHash("00:" + i + ":MESSAGE"));
+            }
+        }
+        long capacity = store.capacity();
+        long allocated = store.columnBytes();
+        
+        int[] newHandles = store.compactIfSparse();
+        assertTrue(newHandles != null && store.compactIfSparse() == null);
+        assertEquals(1000, store.size());
+        assertEquals(1000, store.handleLimit());
+        assertTrue(store.capacity() < capacity && store.columnBytes() < allocated);
+        assertEquals(newHandles[3001], store.handleAtSequence(sequence));
+        
+        // Views, recipient lists and indexes follow the new handles, still in insertion order
+        for (MessageStatus status : statuses) {
+            int previous = -1;
+            for (Message message : store.toArray(status)) {
+                int number = Integer.parseInt(message.getMessageHash().split(":")[1]);
+                assertTrue(number % 4 == 1 && number > previous && statuses[number % 3] == status);
+                previous = number;
+            }
+        }
+        assertEquals(1000, store.findByRecipient("+2771869300").length);
+        assertEquals(1000, store.findByRecipient("027718693001").length);
+        assertEquals(0, store.findByRecipient("+27718693002").length);
+        assertEquals(newHandles[3001], store.findByID("0000003001"));
+        assertEquals(newHandles[2101], store.findByHash("00:2101:MESSAGE"));
+        assertEquals(-1, store.findByHash("00:2102:MESSAGE"));
+        assertEquals("Message 3985 dinner", store.get(store.findByContent("dinner", 1)[0]).getMessageContent());
+        
+        // New messages carry on after the compacted ones
+        int handle = store.add(createMessage("+27718693001", "After"), MessageStatus.SENT);
+        assertEquals(1000, handle);
+        assertTrue(store.getSequence(handle) > store.getSequence(handle - 1));
+        assertEquals(1001, store.findByRecipient("+27718693001").length);
+    }
+    
+    @Test
+    public void testStoresShareRecipientCodes() {
+        RecipientDictionary recipients = new RecipientDictionary();
+        MessageStore first = new MessageStore(recipients);
+        MessageStore second = new MessageStore(recipients);
+        int a = first.add(createMessage("+27718693002", "One"), MessageStatus.SENT);
+        int b = second.add(createMessage("+27718693002", "Two"), MessageStatus.SENT);
+        int c = second.add(createMessage("027718693002", "Three"), MessageStatus.STORED);
+        
+        assertEquals(first.getRecipientCode(a), second.getRecipientCode(b));
+        assertTrue(first.get(a).getRecipient() == second.get(b).getRecipient());
+        assertEquals(2, recipients.size());
+        assertEquals(recipients.canonicalCodeOf(second.getRecipientCode(b)), 
+            recipients.canonicalCodeOf(second.getRecipientCode(c)));
+        assertEquals(recipients.canonicalCodeOf("+27 71 869 3002"), recipients.canonicalCodeOf(second.getRecipientCode(c)));
+        assertEquals(2, second.findByRecipient("+27718693002").length);
+        assertEquals(1, first.findByRecipient("027718693002").length);
+    }
+    
+    private void assertTrue(boolean condition) {
+        if (!condition) {
+            throw new AssertionError("Expected condition to be true");
+        }
+    }
+    
+    private void assertEquals(int expected, int actual) {
+        if (expected != actual) {
+            throw new AssertionError("Expected " + expected + " but was " + actual);
+        }
+    }
+    
+    private void assertEquals(String expected, String actual) {
+        if (expected == null ? actual != null : !expected.equals(actual)) {
+            throw new AssertionError("Expected \"" + expected + "\" but was \"" + actual + "\"");
+        }
+    }
+}
@@ -0,0 +1,17 @@
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * MessageTransport interface - Where the DeliveryPipeline hands sent messages
+ * A transport receives whole batches and either delivers all of them or
+ * throws, in which case the pipeline retries the same batch later.
+ * Linked to: DeliveryPipeline.java, FileMessageTransport.java and LoopbackMessageTransport.java
+ */
+public interface MessageTransport extends AutoCloseable {
+    void deliver(List<Message> batch) throws IOException;
+    
+    // Release whatever the transport holds open
+    @Override
+    default void close() throws IOException {
+    }
+}
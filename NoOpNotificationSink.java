@@ -0,0 +1,28 @@
+/**
+ * NoOpNotificationSink class - Drops every notification
+ * Used for batch ingestion where nobody is watching
+ * Linked to: NotificationSink.java
+ */
+public class NoOpNotificationSink implements NotificationSink {
+    
+    @Override
+    public void success(String title, String message) {
+    }
+    
+    @Override
+    public void error(String title, String message) {
+    }
+    
+    @Override
+    public void warning(String title, String message) {
+    }
+    
+    @Override
+    public void info(String title, String message) {
+    }
+    
+    @Override
+    public boolean isEnabled() {
+        return false;
+    }
+}
@@ -0,0 +1,24 @@
+/**
+ * NotificationSink interface - Where QuickChat sends its user notifications
+ * Lets the interactive app show dialogs while batch runs stay silent
+ * Linked to: Message.java, QuickChat.java and poe.java
+ */
+public interface NotificationSink {
+    
+    // Something completed successfully
+    void success(String title, String message);
+    
+    // Something went wrong
+    void error(String title, String message);
+    
+    // Something needs the user's attention
+    void warning(String title, String message);
+    
+    // General information
+    void info(String title, String message);
+    
+    // False when notifications are dropped, so callers can skip building them
+    default boolean isEnabled() {
+        return true;
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * NotificationSinks class - Creates sinks by name and holds the default sink
+ * The default is Swing dialogs when a display is available and console output
+ * otherwise, so headless, server and benchmark runs never initialise AWT.
+ * Linked to: NotificationSink.java, Message.java, QuickChat.java and poe.java
+ */
+public final class NotificationSinks {
+    
+    private static volatile NotificationSink defaultSink;
+    
+    private NotificationSinks() {
+    }
+    
+    // Create a sink from its name: swing, console, async or none
+    public static NotificationSink forName(String name) {
+        switch (name.toLowerCase()) {
+            case "swing":
+                return new SwingNotificationSink();
+            case "console":
+                return new ConsoleNotificationSink();
+            case "async":
+                return new AsyncNotificationSink(hasDisplay() ? new SwingNotificationSink() : new ConsoleNotificationSink());
+            case "none":
+                return new NoOpNotificationSink();
+            default:
+                throw new IllegalArgumentException("Unknown notification sink: " + name);
+        }
+    }
+    
+    // Sink used by new Message and QuickChat objects that are not given one
+    public static NotificationSink getDefault() {
+        NotificationSink sink = defaultSink;
+        if (sink == null) {
+            synchronized (NotificationSinks.class) {
+                if (defaultSink == null) {
+                    defaultSink = hasDisplay() ? new SwingNotificationSink() : new ConsoleNotificationSink();
+                }
+                sink = defaultSink;
+            }
+        }
+        return sink;
+    }
+    
+    public static void setDefault(NotificationSink sink) {
+        defaultSink = sink;
+    }
+    
+    // Decide without touching AWT, since loading the toolkit is the cost we avoid
+    private static boolean hasDisplay() {
+        if (Boolean.getBoolean("java.awt.headless")) {
+            return false;
+        }
+        String os = System.getProperty("os.name", "").toLowerCase();
+        if (os.contains("win") || os.contains("mac")) {
+            return true;
+        }
+        String display = System.getenv("DISPLAY");
+        return display != null && !display.isEmpty();
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * PhoneNumbers class - Shared validator and normaliser for South African cell numbers
+ * A valid number is "+27" or "027" followed by exactly 9 digits. A single
+ * space or hyphen is allowed after the prefix and between digit groups, but
+ * not doubled or at the end, and surrounding whitespace is ignored.
+ * Validation is a single pass that compiles and allocates nothing; the
+ * canonical form is E.164, "+27" and 9 digits.
+ * Linked to: Login.java and Message.java
+ */
+public final class PhoneNumbers {
+    private static final int NATIONAL_DIGITS = 9;
+    
+    private PhoneNumbers() {
+    }
+    
+    // Check a number without allocating anything
+    public static boolean isValid(CharSequence number) {
+        return scan(number, null);
+    }
+    
+    // Canonical "+27XXXXXXXXX" form of a valid number, or null if it is not valid
+    public static String normalise(CharSequence number) {
+        char[] canonical = new char[3 + NATIONAL_DIGITS];
+        if (!scan(number, canonical)) {
+            return null;
+        }
+        canonical[0] = '+';
+        canonical[1] = '2';
+        canonical[2] = '7';
+        return new String(canonical);
+    }
+    
+    // Validate a whole list into results, returns how many are valid
+    public static int validateAll(CharSequence[] numbers, boolean[] results) {
+        int valid = 0;
+        for (int i = 0; i < numbers.length; i++) {
+            results[i] = scan(numbers[i], null);
+            if (results[i]) {
+                valid++;
+            }
+        }
+        return valid;
+    }
+    
+    // Walk the number once, copying the 9 national digits into canonical when it is given
+    private static boolean scan(CharSequence number, char[] canonical) {
+        if (number == null) {
+            return false;
+        }
+        
+        int start = 0;
+        int end = number.length();
+        while (start < end && Character.isWhitespace(number.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(number.charAt(end - 1))) {
+            end--;
+        }
+        
+        // Country prefix: "+27" or "027"
+        if (end - start < 3) {
+            return false;
+        }
+        char first = number.charAt(start);
+        if ((first != '+' && first != '0') || number.charAt(start + 1) != '2' || number.charAt(start + 2) != '7') {
+            return false;
+        }
+        
+        int digits = 0;
+        boolean lastWasSeparator = false;
+        for (int i = start + 3; i < end; i++) {
+            char c = number.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (digits == NATIONAL_DIGITS) {
+                    return false;
+                }
+                if (canonical != null) {
+                    canonical[3 + digits] = c;
+                }
+                digits++;
+                lastWasSeparator = false;
+            } else if ((c == ' ' || c == '-') && !lastWasSeparator) {
+                lastWasSeparator = true;
+            } else {
+                return false;
+            }
+        }
+        return digits == NATIONAL_DIGITS && !lastWasSeparator;
+    }
+}
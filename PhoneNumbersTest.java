@@ -0,0 +1,72 @@
+
+/**
+ * Unit tests for the PhoneNumbers class
+ */
+public class PhoneNumbersTest {
+    
+    @Test
+    public void testValidNumbers() {
+        assertTrue(PhoneNumbers.isValid("+27838968976"));
+        assertTrue(PhoneNumbers.isValid("027838968976"));
+        assertTrue(PhoneNumbers.isValid(" +27 83 896 8976 "));
+        assertTrue(PhoneNumbers.isValid("027-838-968-976"));
+    }
+    
+    @Test
+    public void testInvalidNumbers() {
+        assertFalse(PhoneNumbers.isValid(null));
+        assertFalse(PhoneNumbers.isValid("08966553"));
+        assertFalse(PhoneNumbers.isValid("08575975889"));
+        assertFalse(PhoneNumbers.isValid("invalid_number"));
+        assertFalse(PhoneNumbers.isValid("+2783896897"));
+        assertFalse(PhoneNumbers.isValid("+278389689761"));
+        assertFalse(PhoneNumbers.isValid("+27a838968976"));
+        assertFalse(PhoneNumbers.isValid("+27  838968976"));
+    }
+    
+    @Test
+    public void testTrailingSeparatorIsInvalid() {
+        assertFalse(PhoneNumbers.isValid("+27838968976-"));
+        assertFalse(PhoneNumbers.isValid("027 838 968 976 -"));
+        assertEquals(null, PhoneNumbers.normalise("+27838968976 -"));
+    }
+    
+    @Test
+    public void testSeparatorAfterPrefixIsValid() {
+        assertTrue(PhoneNumbers.isValid("+27-838968976"));
+        assertTrue(PhoneNumbers.isValid("027 838 968 976"));
+        assertEquals("+27838968976", PhoneNumbers.normalise("+27 83 896 8976"));
+        assertFalse(PhoneNumbers.isValid("+27 -838968976"));
+    }
+    
+    @Test
+    public void testNormaliseReturnsE164() {
+        assertEquals("+27838968976", PhoneNumbers.normalise("027 838 968 976"));
+        assertEquals("+27838968976", PhoneNumbers.normalise("+27838968976"));
+        assertEquals(null, PhoneNumbers.normalise("08966553"));
+    }
+    
+    @Test
+    public void testValidateAll() {
+        String[] numbers = { "+27838968976", "bad", "027718693002" };
+        boolean[] results = new boolean[numbers.length];
+        assertTrue(PhoneNumbers.validateAll(numbers, results) == 2);
+        assertTrue(results[0] && !results[1] && results[2]);
+    }
+    
+    private void assertTrue(boolean condition) {
+        if (!condition) {
+            throw new AssertionError("Expected condition to be true");
+        }
+    }
+    
+    private void assertFalse(boolean condition) {
+        assertTrue(!condition);
+    }
+    
+    private void assertEquals(String expected, String actual) {
+        if (expected == null ? actual != null : !expected.equals(actual)) {
+            throw new AssertionError("Expected \"" + expected + "\" but was \"" + actual + "\"");
+        }
+    }
+}
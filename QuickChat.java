@@ -1,26 +1,95 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
-import javax.swing.JOptionPane;
 
 /**
- * QuickChat class - Main messaging system with Arrays (No ArrayList)
- * Linked to: poe.java (main) and Message.java
+ * QuickChat class - Main messaging system front end over a MessageEngine
+ * Can run interactively from a Scanner or headless through processMessage()
+ * Several QuickChat front ends can share one engine and send at the same time,
+ * each printing to its own stream, such as a ChatServer connection
+ * Messages can be saved to and loaded from a streamed JSON archive
+ * With the write-ahead log enabled every change is logged and replayed on startup
+ * An attached MessageSegment adds read-only, memory-mapped history to searches and listings
+ * An attached DeliveryPipeline delivers sent messages in the background
+ * With a StoredMessageScheduler, stored messages are sent once their delay has passed
+ * Linked to: poe.java (main), Message.java, MessageEngine.java and NotificationSink.java
  */
 public class QuickChat {
-    // Arrays for Part 3 requirements - NO ARRAYLISTS
-    private Message[] allMessages = new Message[100];  // Array to store all messages
-    private String[] sentMessages = new String[100];   // Array for sent message content
-    private String[] disregardedMessages = new String[100]; // Array for disregarded messages
-    private String[] storedMessages = new String[100]; // Array for stored messages
-    private String[] messageHashes = new String[100];  // Array for message hashes
-    private String[] messageIDs = new String[100];     // Array for message IDs
-    
-    // Counters for each array
-    private int totalMessagesCount = 0;
-    private int totalMessagesSent = 0;
-    private int sentCount = 0;
-    private int disregardedCount = 0;
-    private int storedCount = 0;
-    private int messageCounter = 0;
+    // Messages, counters and persistence, possibly shared with other front ends
+    private final MessageEngine messageEngine;
+    
+    // Where notifications go and whether each action is echoed to the console
+    private final NotificationSink notificationSink;
+    private final boolean echoActions;
+    
+    // Where menus, prompts and results are printed
+    private final PrintStream out;
+    
+    // Separators are drawn on every menu, so they are built once
+    private static final String SEPARATOR = "=".repeat(40);
+    private static final String WIDE_SEPARATOR = "=".repeat(50);
+    
+    // Hashes shown per page in the report, and how wide each length range is
+    private static final int HASH_PAGE_SIZE = 20;
+    private static final int LENGTH_RANGE = 50;
+    
+    // Most messages listed by a word search
+    private static final int CONTENT_RESULT_LIMIT = 20;
+    
+    // Busiest recipients shown in the report
+    private static final int TOP_RECIPIENTS = 3;
+    
+    // Archived messages per page when listing the archive
+    private static final int ARCHIVE_PAGE_SIZE = 20;
+    
+    // Messages per page when listing every message in the engine
+    private static final int MESSAGE_PAGE_SIZE = 20;
+    
+    // Sent messages shown by the recent messages view
+    private static final int RECENT_COUNT = 10;
+    
+    // Listings are written in one go per page rather than one flush per line
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+    
+    // Read-only archived history, null when no archive is attached
+    private MessageSegment archiveSegment;
+    
+    // Background delivery of sent messages, null when sending only records them
+    private DeliveryPipeline deliveryPipeline;
+    
+    // Sends stored messages later, null when they wait until sent by hand
+    private static final long STORED_RETRY_MILLIS = 1000;
+    private StoredMessageScheduler storedMessageScheduler;
+    private long sendStoredAfterMillis;
+    
+    // Login session every menu action is checked against, null when no login is needed
+    private SessionManager sessionManager;
+    private String sessionToken;
+    
+    public QuickChat() {
+        this(NotificationSinks.getDefault(), true);
+    }
+    
+    public QuickChat(NotificationSink notificationSink, boolean echoActions) {
+        this(new MessageEngine(), notificationSink, echoActions);
+    }
+    
+    public QuickChat(MessageEngine messageEngine, NotificationSink notificationSink, boolean echoActions) {
+        this(messageEngine, notificationSink, echoActions, System.out);
+    }
+    
+    public QuickChat(MessageEngine messageEngine, NotificationSink notificationSink, boolean echoActions, PrintStream out) {
+        this.messageEngine = messageEngine;
+        this.notificationSink = notificationSink;
+        this.echoActions = echoActions;
+        this.out = out;
+    }
     
     public void startMessagingSystem(Scanner scanner) {
         showWelcomeNotification();
@@ -28,12 +97,18 @@ public class QuickChat {
         boolean running = true;
         while (running) {
             displayMainMenu();
-            System.out.print("Choose an option (1-5): ");
+            out.print("Choose an option (1-5): ");
             
             try {
                 int choice = scanner.nextInt();
                 scanner.nextLine(); // Clear buffer
                 
+                // An expired or ended session closes the menu, each valid check keeps it alive
+                if (choice != 5 && sessionManager != null && sessionManager.validate(sessionToken) == null) {
+                    out.println("🔒 Your session has expired. Please log in again.");
+                    return;
+                }
+                
                 switch (choice) {
                     case 1:
                         sendMessages(scanner);
@@ -42,7 +117,7 @@ public class QuickChat {
                         showRecentMessages();
                         break;
                     case 3:
-                        displayMessageReport();
+                        displayMessageReport(scanner);
                         break;
                     case 4:
                         searchAndManageMessages(scanner);
@@ -52,195 +127,362 @@ public class QuickChat {
                         showExitNotification();
                         break;
                     default:
-                        System.out.println("❌ Invalid option. Please choose 1-5.");
+                        out.println("❌ Invalid option. Please choose 1-5.");
                 }
             } catch (Exception e) {
-                System.out.println("❌ Invalid input. Please enter a number.");
+                out.println("❌ Invalid input. Please enter a number.");
                 scanner.nextLine(); // Clear invalid input
             }
         }
     }
     
     private void sendMessages(Scanner scanner) {
-        System.out.println("\n" + "=".repeat(40));
-        System.out.println("📤 SEND MESSAGES");
-        System.out.println("=".repeat(40));
+        out.println("\n" + SEPARATOR);
+        out.println("📤 SEND MESSAGES");
+        out.println(SEPARATOR);
         
-        System.out.print("How many messages do you wish to send? ");
+        out.print("How many messages do you wish to send? ");
         int numMessages = scanner.nextInt();
         scanner.nextLine(); // Clear buffer
         
         if (numMessages <= 0) {
-            System.out.println("❌ Please enter a positive number.");
-            return;
-        }
-        
-        // Check if we have enough space in arrays
-        if (totalMessagesCount + numMessages > allMessages.length) {
-            System.out.println("❌ Cannot add " + numMessages + " messages. Maximum capacity is " + 
-                             (allMessages.length - totalMessagesCount) + " more messages.");
+            out.println("❌ Please enter a positive number.");
             return;
         }
         
-        System.out.println("📝 Preparing to send " + numMessages + " message(s)...");
+        out.println("📝 Preparing to send " + numMessages + " message(s)...");
         
         // For loop as required - runs for assigned number of messages
         for (int i = 0; i < numMessages; i++) {
-            System.out.println("\n--- Message " + (i + 1) + " of " + numMessages + " ---");
-            
-            // Create new message object
-            Message message = new Message();
+            out.println("\n--- Message " + (i + 1) + " of " + numMessages + " ---");
             
             // Get recipient
-            System.out.print("Enter recipient cell number (+27/027 format): ");
+            out.print("Enter recipient cell number (+27/027 format): ");
             String recipient = scanner.nextLine();
-            message.setRecipient(recipient);
             
             // Get message content
-            System.out.print("Enter your message (max 250 characters): ");
+            out.print("Enter your message (max 250 characters): ");
             String messageContent = scanner.nextLine();
-            message.setMessageContent(messageContent);
             
-            // Generate message ID and hash using loop counter
-            message.generateMessageID();
-            message.createMessageHash(messageCounter + 1);
-            messageCounter++;
+            Message message = createMessage(recipient, messageContent);
             
             // Show message options
             int action = showMessageOptions(scanner);
             processMessageAction(action, message);
         }
         
-        System.out.println("\n✅ Session completed! Total messages sent: " + totalMessagesSent);
+        out.println("\n✅ Session completed! Total messages sent: " + messageEngine.getTotalMessagesSent());
     }
     
     private int showMessageOptions(Scanner scanner) {
-        System.out.println("\n💡 Message Options:");
-        System.out.println("1) 🚀 Send Message Now");
-        System.out.println("2) ❌ Disregard Message");
-        System.out.println("3) 💾 Store for Later");
-        System.out.print("Choose action (1-3): ");
+        out.println("\n💡 Message Options:");
+        out.println("1) 🚀 Send Message Now");
+        out.println("2) ❌ Disregard Message");
+        out.println("3) 💾 Store for Later");
+        out.print("Choose action (1-3): ");
         
         return scanner.nextInt();
     }
     
-    private void processMessageAction(int action, Message message) {
+    // Create a message with its ID and hash, ready for an action
+    public Message createMessage(String recipient, String messageContent) {
+        Message message = new Message();
+        message.setNotificationSink(notificationSink);
+        message.setRecipient(recipient);
+        message.setMessageContent(messageContent);
+        
+        // Generate message ID and hash using the message counter
+        // IDs never repeat within a run, the check also covers IDs loaded from earlier runs
+        do {
+            message.generateMessageID();
+        } while (messageEngine.containsID(message.getMessageID()));
+        echo("🔑 Message ID generated: " + message.getMessageID());
+        message.createMessageHash(messageEngine.nextMessageNumber());
+        return message;
+    }
+    
+    // Create a message and apply an action to it (1 = send, 2 = disregard, 3 = store)
+    public MessageStatus processMessage(String recipient, String messageContent, int action) {
+        return processMessageAction(action, createMessage(recipient, messageContent));
+    }
+    
+    // Apply an action to a message made by createMessage()
+    public MessageStatus processMessage(Message message, int action) {
+        return processMessageAction(action, message);
+    }
+    
+    // Apply an action and keep the message, returns null if it was rejected
+    private MessageStatus processMessageAction(int action, Message message) {
         switch (action) {
             case 1: // Send message
                 String result = message.sendMessage();
-                System.out.println("📨 " + result);
+                echo("📨 " + result);
                 
                 if (result.equals("Message successfully sent.")) {
+                    // Kept before it is queued, so a delivery given up on can store it again
                     message.setSent(true);
+                    messageEngine.add(message, MessageStatus.SENT);
                     
-                    // Add to allMessages array
-                    allMessages[totalMessagesCount] = message;
-                    totalMessagesCount++;
-                    
-                    // Add to sent messages array
-                    sentMessages[sentCount] = message.getMessageContent();
-                    messageHashes[sentCount] = message.getMessageHash();
-                    messageIDs[sentCount] = message.getMessageID();
-                    sentCount++;
-                    
-                    totalMessagesSent++;
+                    // Sending only waits for a queue slot, a full queue keeps the message for later
+                    if (deliveryPipeline != null && !deliveryPipeline.submit(message)) {
+                        message.setSent(false);
+                        message.setStored(true);
+                        messageEngine.changeStatus(message.getMessageHash(), MessageStatus.SENT, MessageStatus.STORED);
+                        echo("⏳ Delivery queue is full, message stored for later.");
+                        if (storedMessageScheduler != null) {
+                            storedMessageScheduler.schedule(message.getMessageHash(), 
+                                System.currentTimeMillis() + STORED_RETRY_MILLIS);
+                        }
+                        return MessageStatus.STORED;
+                    }
+                    return MessageStatus.SENT;
                 }
-                break;
-                
+                return null;
+            
             case 2: // Disregard message
                 String disregardResult = message.disregardMessage();
-                System.out.println("🗑️ " + disregardResult);
-                
-                // Add to allMessages array
-                allMessages[totalMessagesCount] = message;
-                totalMessagesCount++;
-                
-                // Add to disregarded array
-                disregardedMessages[disregardedCount] = message.getMessageContent();
-                disregardedCount++;
-                break;
+                echo("🗑️ " + disregardResult);
                 
+                messageEngine.add(message, MessageStatus.DISREGARDED);
+                return MessageStatus.DISREGARDED;
+            
             case 3: // Store message
                 message.storeMessage();
                 
-                // Add to allMessages array
-                allMessages[totalMessagesCount] = message;
-                totalMessagesCount++;
-                
-                // Add to stored array
-                storedMessages[storedCount] = message.getMessageContent();
-                storedCount++;
-                
-                System.out.println("💾 Message stored successfully.");
-                break;
+                messageEngine.add(message, MessageStatus.STORED);
                 
+                echo("💾 Message stored successfully.");
+                if (storedMessageScheduler != null) {
+                    storedMessageScheduler.schedule(message.getMessageHash(), 
+                        System.currentTimeMillis() + sendStoredAfterMillis);
+                    echo("⏰ It will be sent in " + (sendStoredAfterMillis / 1000) + " second(s).");
+                }
+                return MessageStatus.STORED;
+            
             default:
-                System.out.println("❌ Invalid action. Message disregarded.");
+                echo("❌ Invalid action. Message disregarded.");
+                return null;
+        }
+    }
+    
+    // Delete a message by hash and log it, returns the deleted message or null
+    public Message deleteMessage(String messageHash) {
+        return messageEngine.delete(messageHash);
+    }
+    
+    // Recover from "<base>.snapshot.json" and "<base>.wal", then log every change
+    public void enableWriteAheadLog(Path basePath, boolean waitForCommit) throws IOException {
+        messageEngine.enableWriteAheadLog(basePath, waitForCommit);
+    }
+    
+    // Commit and close the write-ahead log
+    public void closeWriteAheadLog() throws IOException {
+        messageEngine.closeWriteAheadLog();
+    }
+    
+    // Attach a memory-mapped archive for searches and listings
+    public void attachArchive(MessageSegment segment) {
+        this.archiveSegment = segment;
+    }
+    
+    // Only run menu actions while a login session's token is still valid
+    public void attachSession(SessionManager sessionManager, String sessionToken) {
+        this.sessionManager = sessionManager;
+        this.sessionToken = sessionToken;
+    }
+    
+    // Deliver sent messages through a pipeline from now on
+    public void attachDeliveryPipeline(DeliveryPipeline pipeline) {
+        this.deliveryPipeline = pipeline;
+    }
+    
+    // Store messages whose delivery was given up on again, the scheduler retries them later
+    public void storeUndelivered(List<Message> messages) {
+        long sendAt = System.currentTimeMillis() + sendStoredAfterMillis;
+        for (Message message : messages) {
+            String messageHash = message.getMessageHash();
+            if (messageEngine.changeStatus(messageHash, MessageStatus.SENT, MessageStatus.STORED) 
+                    && storedMessageScheduler != null) {
+                storedMessageScheduler.schedule(messageHash, sendAt);
+            }
+        }
+    }
+    
+    // Send stored messages through a scheduler once they have waited sendAfterMillis
+    public void scheduleStoredMessages(StoredMessageScheduler scheduler, long sendAfterMillis) {
+        this.storedMessageScheduler = scheduler;
+        this.sendStoredAfterMillis = sendAfterMillis;
+    }
+    
+    // Schedule every message that is already stored, such as ones loaded from an archive
+    public int scheduleExistingStoredMessages() {
+        long sendAt = System.currentTimeMillis() + sendStoredAfterMillis;
+        Message[] stored = messageEngine.toArray(MessageStatus.STORED);
+        for (Message message : stored) {
+            storedMessageScheduler.schedule(message.getMessageHash(), sendAt);
+        }
+        return stored.length;
+    }
+    
+    // Send a batch of stored messages, returns how many were sent
+    public int sendStoredMessages(List<String> messageHashes) {
+        int sent = 0;
+        for (String messageHash : messageHashes) {
+            if (sendStoredMessage(messageHash)) {
+                sent++;
+            }
+        }
+        return sent;
+    }
+    
+    // Send a stored message through the normal send path, false if it is gone, invalid or already sent
+    public boolean sendStoredMessage(String messageHash) {
+        Message message = messageEngine.findByHash(messageHash);
+        if (message == null || !message.isStored()) {
+            return false;
+        }
+        
+        // Decoded from the store with the default sink, notifications go where this QuickChat's go
+        message.setNotificationSink(notificationSink);
+        String result = message.sendMessage();
+        if (!result.equals("Message successfully sent.")) {
+            message.setSent(false);
+            echo("❌ Stored message " + messageHash + " could not be sent: " + result);
+            return false;
+        }
+        if (!messageEngine.changeStatus(messageHash, MessageStatus.STORED, MessageStatus.SENT)) {
+            return false;
+        }
+        
+        // A full delivery queue puts the message back and tries again a little later
+        if (deliveryPipeline != null && !deliveryPipeline.submit(message)) {
+            messageEngine.changeStatus(messageHash, MessageStatus.SENT, MessageStatus.STORED);
+            if (storedMessageScheduler != null) {
+                storedMessageScheduler.schedule(messageHash, System.currentTimeMillis() + STORED_RETRY_MILLIS);
+            }
+            return false;
+        }
+        echo("⏰ Stored message sent to " + message.getRecipient());
+        return true;
+    }
+    
+    // Write every message to a memory-mappable archive segment
+    public int writeArchiveSegment(Path segmentPath) throws IOException {
+        return MessageSegment.write(segmentPath, messageEngine.snapshot());
+    }
+    
+    // Save every message to a JSON archive, streaming one message at a time
+    public int saveMessages(Path path) throws IOException {
+        return messageEngine.saveMessages(path);
+    }
+    
+    // Load messages from a JSON archive, reading one message at a time
+    public int loadMessages(Path path) throws IOException {
+        return messageEngine.loadMessages(path);
+    }
+    
+    private void echo(String text) {
+        if (echoActions) {
+            out.println(text);
         }
     }
     
     private void showRecentMessages() {
-        System.out.println("\n" + "=".repeat(40));
-        System.out.println("📨 RECENTLY SENT MESSAGES");
-        System.out.println("=".repeat(40));
+        out.println("\n" + SEPARATOR);
+        out.println("📨 RECENTLY SENT MESSAGES");
+        out.println(SEPARATOR);
         
-        if (sentCount == 0) {
-            System.out.println("No messages sent yet.");
+        Message[] recent = messageEngine.recentlySent(RECENT_COUNT);
+        if (recent.length == 0) {
+            out.println("No messages sent yet.");
             return;
         }
         
-        for (int i = 0; i < sentCount; i++) {
-            if (sentMessages[i] != null) {
-                System.out.println((i + 1) + ". " + sentMessages[i]);
-            }
+        // Numbered by position among all sent messages, oldest first
+        int sent = Math.max(messageEngine.count(MessageStatus.SENT), recent.length);
+        if (sent > recent.length) {
+            out.println("Showing the last " + recent.length + " of " + sent + " sent messages");
+        }
+        PrintWriter writer = pageWriter();
+        for (int i = 0; i < recent.length; i++) {
+            writer.println((sent - recent.length + i + 1) + ". " + recent[i].getMessageContent());
         }
+        writer.flush();
     }
     
-    private void displayMessageReport() {
-        System.out.println("\n" + "=".repeat(40));
-        System.out.println("📊 MESSAGE SYSTEM REPORT");
-        System.out.println("=".repeat(40));
+    private void displayMessageReport(Scanner scanner) {
+        out.println("\n" + SEPARATOR);
+        out.println("📊 MESSAGE SYSTEM REPORT");
+        out.println(SEPARATOR);
         
-        System.out.println("📂 All Messages in System: " + totalMessagesCount);
-        System.out.println("✅ Sent Messages: " + sentCount);
-        System.out.println("💾 Stored Messages: " + storedCount);
-        System.out.println("❌ Disregarded Messages: " + disregardedCount);
-        System.out.println("📈 Total Processed: " + totalMessagesSent);
+        out.println("📂 All Messages in System: " + messageEngine.size());
+        out.println("✅ Sent Messages: " + messageEngine.count(MessageStatus.SENT));
+        out.println("💾 Stored Messages: " + messageEngine.count(MessageStatus.STORED));
+        out.println("❌ Disregarded Messages: " + messageEngine.count(MessageStatus.DISREGARDED));
+        out.println("📈 Total Processed: " + messageEngine.getTotalMessagesSent());
         
-        // Find and display longest message
+        // Figures are kept up to date on every change, nothing is scanned here
+        MessageStatistics statistics = messageEngine.getStatistics();
         String longestMessage = findLongestMessage();
         if (longestMessage != null) {
-            System.out.println("📏 Longest Message: \"" + 
+            out.println("📏 Longest Message: \"" + 
                 (longestMessage.length() > 50 ? longestMessage.substring(0, 50) + "..." : longestMessage) + "\"");
-            System.out.println("   Length: " + longestMessage.length() + " characters");
+            out.println("   Length: " + longestMessage.length() + " characters");
+            out.println(String.format("📐 Sent Lengths: median %d, average %.1f characters", 
+                statistics.getMedianLength(), statistics.getAverageLength()));
+            int[] histogram = statistics.getLengthHistogram(LENGTH_RANGE);
+            for (int i = 0; i < histogram.length; i++) {
+                if (histogram[i] > 0) {
+                    int from = i * LENGTH_RANGE;
+                    int to = Math.min(from + LENGTH_RANGE - 1, MessageStatistics.MAX_LENGTH);
+                    out.println("   " + from + "-" + to + ": " + histogram[i]);
+                }
+            }
         }
+        out.println("👥 Recipients: " + statistics.getDistinctRecipients());
+        for (Map.Entry<String, Integer> entry : statistics.getTopRecipients(TOP_RECIPIENTS).entrySet()) {
+            out.println("   " + entry.getKey() + ": " + entry.getValue() + " message(s)");
+        }
+        int p90 = statistics.getLengthPercentile(90);
+        if (p90 >= 0) {
+            out.println("📐 Sent Length Percentiles: p90 " + p90 + ", p99 " + 
+                statistics.getLengthPercentile(99) + " characters");
+        }
+        
+        // Display store usage
+        out.println("\n💾 Store Usage:");
+        out.println("   All Messages: " + messageEngine.size() + " (" + messageEngine.capacity() + " slots allocated)");
+        out.println("   Message Text: " + (messageEngine.textBytes() + 1023) / 1024 + " KB");
         
-        // Display all message hashes
-        System.out.println("\n🔗 Message Hashes:");
-        for (int i = 0; i < sentCount; i++) {
-            if (messageHashes[i] != null) {
-                System.out.println("  " + (i + 1) + ". " + messageHashes[i]);
+        // Hashes are listed a page at a time, the cursor neither skips nor repeats one if statuses change meanwhile
+        out.println("\n🔗 Message Hashes:");
+        MessageCursor cursor = messageEngine.cursor();
+        int number = 0;
+        while (cursor.hasMore()) {
+            for (Message message : messageEngine.next(cursor, MessageStatus.SENT, HASH_PAGE_SIZE)) {
+                out.println("  " + (++number) + ". " + message.getMessageHash());
+            }
+            if (cursor.hasMore()) {
+                out.print("Press Enter for more hashes, or q to stop: ");
+                if (scanner.nextLine().trim().equalsIgnoreCase("q")) {
+                    return;
+                }
             }
         }
-        
-        // Display array usage
-        System.out.println("\n💾 Array Capacity Usage:");
-        System.out.println("   All Messages: " + totalMessagesCount + "/" + allMessages.length);
-        System.out.println("   Sent Messages: " + sentCount + "/" + sentMessages.length);
-        System.out.println("   Stored Messages: " + storedCount + "/" + storedMessages.length);
     }
     
     private void searchAndManageMessages(Scanner scanner) {
-        System.out.println("\n" + "=".repeat(40));
-        System.out.println("🔍 SEARCH & MANAGE MESSAGES");
-        System.out.println("=".repeat(40));
+        out.println("\n" + SEPARATOR);
+        out.println("🔍 SEARCH & MANAGE MESSAGES");
+        out.println(SEPARATOR);
         
-        System.out.println("1) 🔎 Search by Message ID");
-        System.out.println("2) 👤 Search by Recipient");
-        System.out.println("3) 📋 Display All Messages");
-        System.out.println("4) 🗑️ Delete by Message Hash");
-        System.out.println("5) ↩️ Back to Main Menu");
-        System.out.print("Choose option (1-5): ");
+        out.println("1) 🔎 Search by Message ID");
+        out.println("2) 👤 Search by Recipient");
+        out.println("3) 📋 Display All Messages");
+        out.println("4) 🗑️ Delete by Message Hash");
+        out.println("5) 🔤 Search by Words");
+        out.println("6) ↩️ Back to Main Menu");
+        out.print("Choose option (1-6): ");
         
         int choice = scanner.nextInt();
         scanner.nextLine(); // Clear buffer
@@ -253,206 +495,267 @@ public class QuickChat {
                 searchByRecipient(scanner);
                 break;
             case 3:
-                displayAllMessages();
+                displayAllMessages(scanner);
                 break;
             case 4:
                 deleteByMessageHash(scanner);
                 break;
             case 5:
+                searchByContent(scanner);
+                break;
+            case 6:
                 return;
             default:
-                System.out.println("❌ Invalid option.");
+                out.println("❌ Invalid option.");
         }
     }
     
     private void searchByMessageID(Scanner scanner) {
-        System.out.print("Enter Message ID to search: ");
+        out.print("Enter Message ID to search: ");
         String searchID = scanner.nextLine();
         
-        boolean found = false;
-        for (int i = 0; i < totalMessagesCount; i++) {
-            if (allMessages[i] != null && allMessages[i].getMessageID() != null && 
-                allMessages[i].getMessageID().equals(searchID)) {
-                System.out.println("✅ Message Found:");
-                System.out.println("   📱 Recipient: " + allMessages[i].getRecipient());
-                System.out.println("   💬 Message: " + allMessages[i].getMessageContent());
-                System.out.println("   🔗 Hash: " + allMessages[i].getMessageHash());
-                System.out.println("   📊 Status: " + (allMessages[i].isSent() ? "SENT" : 
-                    (allMessages[i].isStored() ? "STORED" : "DISREGARDED")));
-                found = true;
-                break;
+        Message found = messageEngine.findByID(searchID);
+        int record = found == null && archiveSegment != null ? archiveSegment.findByID(searchID) : -1;
+        if (found != null || record >= 0) {
+            // Archived messages are only decoded once they are found
+            Message message;
+            MessageStatus status;
+            try {
+                message = found != null ? found : archiveSegment.read(record);
+                status = found != null ? statusOf(found) : archiveSegment.readStatus(record);
+            } catch (IOException e) {
+                out.println("❌ Could not read archived message: " + e.getMessage());
+                return;
             }
-        }
-        
-        if (!found) {
-            System.out.println("❌ No message found with ID: " + searchID);
+            out.println("✅ Message Found" + (found != null ? ":" : " in archive:"));
+            out.println("   📱 Recipient: " + message.getRecipient());
+            out.println("   💬 Message: " + message.getMessageContent());
+            out.println("   🔗 Hash: " + message.getMessageHash());
+            out.println("   📊 Status: " + status);
+        } else {
+            out.println("❌ No message found with ID: " + searchID);
         }
     }
     
     private void searchByRecipient(Scanner scanner) {
-        System.out.print("Enter recipient number to search: ");
+        out.print("Enter recipient number to search: ");
         String recipient = scanner.nextLine();
         
-        System.out.println("📨 Messages for " + recipient + ":");
+        out.println("📨 Messages for " + recipient + ":");
+        // "+27..." and "027..." numbers match each other, a partial number matches as a prefix
+        Message[] messages = messageEngine.findByRecipient(recipient);
         int count = 0;
-        for (int i = 0; i < totalMessagesCount; i++) {
-            if (allMessages[i] != null && allMessages[i].getRecipient() != null && 
-                allMessages[i].getRecipient().contains(recipient)) {
-                count++;
-                String status = allMessages[i].isSent() ? "SENT" : 
-                              (allMessages[i].isStored() ? "STORED" : "DISREGARDED");
-                System.out.println("   " + count + ". [" + status + "] " + allMessages[i].getMessageContent());
-            }
+        for (Message message : messages) {
+            count++;
+            out.println("   " + count + ". [" + statusOf(message) + "] " + message.getMessageContent());
         }
         
         if (count == 0) {
-            System.out.println("❌ No messages found for this recipient.");
+            out.println("❌ No messages found for this recipient.");
         } else {
-            System.out.println("   Found " + count + " message(s)");
+            out.println("   Found " + count + " message(s)");
         }
     }
     
-    private void displayAllMessages() {
-        System.out.println("\n" + "=".repeat(50));
-        System.out.println("📋 ALL MESSAGES IN SYSTEM");
-        System.out.println("=".repeat(50));
+    private void searchByContent(Scanner scanner) {
+        out.print("Enter words to search for: ");
+        String query = scanner.nextLine();
         
-        if (totalMessagesCount == 0) {
-            System.out.println("No messages in the system.");
+        // Every word has to appear, newest messages are shown first
+        Message[] messages = messageEngine.findByContent(query, CONTENT_RESULT_LIMIT);
+        if (messages.length == 0) {
+            out.println("❌ No messages contain: " + query);
             return;
         }
         
-        for (int i = 0; i < totalMessagesCount; i++) {
-            if (allMessages[i] != null) {
-                String status = allMessages[i].isSent() ? "✅ SENT" : 
-                              (allMessages[i].isStored() ? "💾 STORED" : "❌ DISREGARDED");
-                String preview = allMessages[i].getMessageContent().length() > 30 ? 
-                    allMessages[i].getMessageContent().substring(0, 30) + "..." : 
-                    allMessages[i].getMessageContent();
-                
-                System.out.println((i + 1) + ". " + status + " | To: " + allMessages[i].getRecipient());
-                System.out.println("   Message: " + preview);
-                System.out.println("   Hash: " + allMessages[i].getMessageHash());
-                System.out.println("   ID: " + allMessages[i].getMessageID());
-                System.out.println("   ---");
-            }
+        out.println("📨 Messages containing \"" + query + "\":");
+        for (int i = 0; i < messages.length; i++) {
+            out.println("   " + (i + 1) + ". [" + statusOf(messages[i]) + "] To " + messages[i].getRecipient() + 
+                ": " + messages[i].getMessageContent());
+        }
+        if (messages.length == CONTENT_RESULT_LIMIT) {
+            out.println("   Showing the newest " + CONTENT_RESULT_LIMIT + ", add words to narrow the search");
         }
     }
     
-    private void deleteByMessageHash(Scanner scanner) {
-        System.out.print("Enter Message Hash to delete: ");
-        String hash = scanner.nextLine();
+    private void displayAllMessages(Scanner scanner) {
+        out.println("\n" + WIDE_SEPARATOR);
+        out.println("📋 ALL MESSAGES IN SYSTEM");
+        out.println(WIDE_SEPARATOR);
         
-        boolean deleted = false;
-        for (int i = 0; i < totalMessagesCount; i++) {
-            if (allMessages[i] != null && allMessages[i].getMessageHash() != null && 
-                allMessages[i].getMessageHash().equals(hash)) {
-                
-                String content = allMessages[i].getMessageContent();
-                String recipient = allMessages[i].getRecipient();
-                
-                // Remove from allMessages array by shifting elements
-                for (int j = i; j < totalMessagesCount - 1; j++) {
-                    allMessages[j] = allMessages[j + 1];
+        int archived = archiveSegment == null ? 0 : archiveSegment.size();
+        if (messageEngine.size() == 0 && archived == 0) {
+            out.println("No messages in the system.");
+            return;
+        }
+        
+        // Page through the engine with a cursor, only the messages shown are decoded
+        PrintWriter writer = pageWriter();
+        MessageCursor cursor = messageEngine.cursor();
+        int number = 0;
+        while (cursor.hasMore()) {
+            for (Message message : messageEngine.next(cursor, MESSAGE_PAGE_SIZE)) {
+                printMessageSummary(writer, ++number, message, statusOf(message));
+            }
+            writer.flush();
+            
+            if (cursor.hasMore()) {
+                out.print("Press Enter for more messages, or q to stop: ");
+                if (scanner.nextLine().trim().equalsIgnoreCase("q")) {
+                    return;
                 }
-                allMessages[totalMessagesCount - 1] = null;
-                totalMessagesCount--;
-                
-                // Also remove from specific arrays
-                removeFromArray(sentMessages, sentCount, content);
-                removeFromArray(storedMessages, storedCount, content);
-                removeFromArray(disregardedMessages, disregardedCount, content);
-                
-                System.out.println("✅ Message deleted: \"" + 
-                    (content.length() > 30 ? content.substring(0, 30) + "..." : content) + "\"");
-                System.out.println("   Recipient: " + recipient);
-                deleted = true;
-                break;
             }
         }
         
-        if (!deleted) {
-            System.out.println("❌ No message found with hash: " + hash);
+        if (archived == 0) {
+            return;
         }
-    }
-    
-    // Helper method to remove item from array
-    private void removeFromArray(String[] array, int count, String content) {
-        for (int i = 0; i < count; i++) {
-            if (array[i] != null && array[i].equals(content)) {
-                // Shift elements to remove the item
-                for (int j = i; j < count - 1; j++) {
-                    array[j] = array[j + 1];
+        
+        // Page through the mapped archive, only the records shown are decoded
+        writer.println("\n📦 ARCHIVED MESSAGES (" + archived + ")");
+        for (int start = 0; start < archived; start += ARCHIVE_PAGE_SIZE) {
+            int end = Math.min(start + ARCHIVE_PAGE_SIZE, archived);
+            try {
+                for (int record = start; record < end; record++) {
+                    printMessageSummary(writer, record + 1, archiveSegment.read(record), archiveSegment.readStatus(record));
+                }
+            } catch (IOException e) {
+                writer.println("❌ Could not read archived message: " + e.getMessage());
+                writer.flush();
+                return;
+            }
+            writer.flush();
+            
+            if (end < archived) {
+                out.print("Press Enter for more archived messages, or q to stop: ");
+                if (scanner.nextLine().trim().equalsIgnoreCase("q")) {
+                    break;
                 }
-                array[count - 1] = null;
-                break;
             }
         }
     }
     
-    private String findLongestMessage() {
-        String longest = "";
-        for (int i = 0; i < sentCount; i++) {
-            if (sentMessages[i] != null && sentMessages[i].length() > longest.length()) {
-                longest = sentMessages[i];
-            }
+    // Buffered writer over out for long listings, flushed once per page and never closed,
+    // since closing it would close out as well
+    private PrintWriter pageWriter() {
+        return new PrintWriter(new BufferedWriter(new OutputStreamWriter(out, out.charset()), OUTPUT_BUFFER_SIZE));
+    }
+    
+    private void printMessageSummary(PrintWriter writer, int number, Message message, MessageStatus messageStatus) {
+        String status = messageStatus == MessageStatus.SENT ? "✅ SENT" : 
+                      (messageStatus == MessageStatus.STORED ? "💾 STORED" : "❌ DISREGARDED");
+        String preview = message.getMessageContent().length() > 30 ? 
+            message.getMessageContent().substring(0, 30) + "..." : 
+            message.getMessageContent();
+        
+        writer.println(number + ". " + status + " | To: " + message.getRecipient());
+        writer.println("   Message: " + preview);
+        writer.println("   Hash: " + message.getMessageHash());
+        writer.println("   ID: " + message.getMessageID());
+        writer.println("   ---");
+    }
+    
+    private void deleteByMessageHash(Scanner scanner) {
+        out.print("Enter Message Hash to delete: ");
+        String hash = scanner.nextLine();
+        
+        Message message = deleteMessage(hash);
+        if (message != null) {
+            String content = message.getMessageContent();
+            
+            out.println("✅ Message deleted: \"" + 
+                (content.length() > 30 ? content.substring(0, 30) + "..." : content) + "\"");
+            out.println("   Recipient: " + message.getRecipient());
+        } else {
+            out.println("❌ No message found with hash: " + hash);
         }
-        return longest.isEmpty() ? null : longest;
+    }
+    
+    private String findLongestMessage() {
+        Message longest = messageEngine.getLongestSent();
+        return longest == null ? null : longest.getMessageContent();
     }
     
     private void showWelcomeNotification() {
-        JOptionPane.showMessageDialog(null, 
+        notificationSink.info("💬 QuickChat", 
             "🚀 Welcome to QuickChat Messaging System!\n\n" +
-            "Now using ARRAYS (No ArrayList) for Part 3 requirements!\n\n" +
+            "Messages are kept in a growable message store!\n\n" +
             "You can now:\n" +
             "• Send messages to recipients\n" +
             "• Store messages for later\n" +
             "• Search and manage your messages\n" +
-            "• View detailed reports with arrays", 
-            "💬 QuickChat with Arrays", 
-            JOptionPane.INFORMATION_MESSAGE);
+            "• View detailed reports");
         
-        System.out.println("\n🎉 QuickChat Messaging System Activated!");
-        System.out.println("✨ Now using ARRAYS instead of ArrayList");
-        System.out.println("=====================================");
+        out.println("\n🎉 QuickChat Messaging System Activated!");
+        out.println("✨ Messages kept in a growable message store");
+        out.println("=====================================");
     }
     
     private void showExitNotification() {
-        JOptionPane.showMessageDialog(null, 
+        notificationSink.info("🚪 QuickChat Closed", 
             "Thank you for using QuickChat!\n\n" +
-            "Array Usage Summary:\n" +
-            "• Total messages: " + totalMessagesCount + "/" + allMessages.length + "\n" +
-            "• Messages sent: " + sentCount + "\n" +
-            "• Messages stored: " + storedCount + "\n" +
-            "• Array capacity used: " + ((totalMessagesCount * 100) / allMessages.length) + "%", 
-            "🚪 QuickChat Closed", 
-            JOptionPane.INFORMATION_MESSAGE);
+            "Message Store Summary:\n" +
+            "• Total messages: " + messageEngine.size() + "\n" +
+            "• Messages sent: " + messageEngine.count(MessageStatus.SENT) + "\n" +
+            "• Messages stored: " + messageEngine.count(MessageStatus.STORED));
     }
     
     private void displayMainMenu() {
-        System.out.println("\n" + "=".repeat(40));
-        System.out.println("🚀 QUICKCHAT MAIN MENU (ARRAYS)");
-        System.out.println("=".repeat(40));
-        System.out.println("1) 📤 Send Messages");
-        System.out.println("2) 📨 Show Recent Messages");
-        System.out.println("3) 📊 Display System Report");
-        System.out.println("4) 🔍 Search & Manage Messages");
-        System.out.println("5) 🚪 Exit QuickChat");
-        System.out.println("=".repeat(40));
-        System.out.println("Array Usage: " + totalMessagesCount + "/" + allMessages.length + " messages");
-        System.out.println("=".repeat(40));
-    }
-    
-    // Getters for testing - NOW RETURNING ARRAYS
-    public int returnTotalMessages() { return totalMessagesSent; }
-    public Message[] getAllMessages() { return allMessages; }
-    public String[] getSentMessages() { return sentMessages; }
-    public String[] getStoredMessages() { return storedMessages; }
-    public String[] getDisregardedMessages() { return disregardedMessages; }
-    public String[] getMessageHashes() { return messageHashes; }
-    public String[] getMessageIDs() { return messageIDs; }
-    public int getTotalMessagesCount() { return totalMessagesCount; }
-    public int getSentCount() { return sentCount; }
-    public int getStoredCount() { return storedCount; }
-    public int getDisregardedCount() { return disregardedCount; }
+        out.println("\n" + SEPARATOR);
+        out.println("🚀 QUICKCHAT MAIN MENU");
+        out.println(SEPARATOR);
+        out.println("1) 📤 Send Messages");
+        out.println("2) 📨 Show Recent Messages");
+        out.println("3) 📊 Display System Report");
+        out.println("4) 🔍 Search & Manage Messages");
+        out.println("5) 🚪 Exit QuickChat");
+        out.println(SEPARATOR);
+        out.println("Store Usage: " + messageEngine.size() + " messages");
+        out.println(SEPARATOR);
+    }
+    
+    // Helper method to copy the content of every message with a status
+    private String[] contentsOf(MessageStatus status) {
+        Message[] messages = messageEngine.toArray(status);
+        String[] contents = new String[messages.length];
+        for (int i = 0; i < messages.length; i++) {
+            contents[i] = messages[i].getMessageContent();
+        }
+        return contents;
+    }
+    
+    // Status from the flags set when the action was applied
+    private static MessageStatus statusOf(Message message) {
+        return message.isSent() ? MessageStatus.SENT : 
+               (message.isStored() ? MessageStatus.STORED : MessageStatus.DISREGARDED);
+    }
+    
+    // Getters for testing - arrays are copies sized to the messages they hold
+    public int returnTotalMessages() { return messageEngine.getTotalMessagesSent(); }
+    public MessageEngine getMessageEngine() { return messageEngine; }
+    public MessageStore getMessageStore() { return messageEngine.snapshot(); }
+    public Message[] getAllMessages() { return messageEngine.toArray(); }
+    public String[] getSentMessages() { return contentsOf(MessageStatus.SENT); }
+    public String[] getStoredMessages() { return contentsOf(MessageStatus.STORED); }
+    public String[] getDisregardedMessages() { return contentsOf(MessageStatus.DISREGARDED); }
+    public String[] getMessageHashes() {
+        Message[] sent = messageEngine.toArray(MessageStatus.SENT);
+        String[] hashes = new String[sent.length];
+        for (int i = 0; i < sent.length; i++) {
+            hashes[i] = sent[i].getMessageHash();
+        }
+        return hashes;
+    }
+    public String[] getMessageIDs() {
+        Message[] sent = messageEngine.toArray(MessageStatus.SENT);
+        String[] ids = new String[sent.length];
+        for (int i = 0; i < sent.length; i++) {
+            ids[i] = sent[i].getMessageID();
+        }
+        return ids;
+    }
+    public int getTotalMessagesCount() { return messageEngine.size(); }
+    public int getSentCount() { return messageEngine.count(MessageStatus.SENT); }
+    public int getStoredCount() { return messageEngine.count(MessageStatus.STORED); }
+    public int getDisregardedCount() { return messageEngine.count(MessageStatus.DISREGARDED); }
 }
\ No newline at end of file
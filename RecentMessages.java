@@ -0,0 +1,48 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * RecentMessages class - Ring buffer of the hashes of the last messages sent
+ * One fixed array and a write position, so recording a send is O(1) and the
+ * memory used never grows however many messages are sent. Entries are only
+ * hashes: whoever reads them checks the message is still there and still sent.
+ * Writers claim a slot from an atomic counter and take no lock, so sends on
+ * different shards never wait for each other here.
+ * Linked to: MessageEngine.java and QuickChat.java
+ */
+public class RecentMessages {
+    private final AtomicReferenceArray<String> hashes;
+    
+    // Sends ever recorded, the next slot is this modulo the capacity
+    private final AtomicLong recorded = new AtomicLong();
+    
+    public RecentMessages(int capacity) {
+        this.hashes = new AtomicReferenceArray<>(capacity);
+    }
+    
+    // Remember a sent message, overwriting the oldest one once full
+    public void record(String messageHash) {
+        long slot = recorded.getAndIncrement();
+        hashes.set((int) (slot % hashes.length()), messageHash);
+    }
+    
+    // Up to count hashes, newest first, a slot still being written may be skipped
+    public String[] newest(int count) {
+        long end = recorded.get();
+        int size = (int) Math.min(Math.min(count, end), hashes.length());
+        String[] result = new String[size];
+        int found = 0;
+        for (int i = 0; i < size; i++) {
+            String hash = hashes.get((int) ((end - 1 - i) % hashes.length()));
+            if (hash != null) {
+                result[found++] = hash;
+            }
+        }
+        return found == size ? result : Arrays.copyOf(result, found);
+    }
+    
+    public int capacity() {
+        return hashes.length();
+    }
+}
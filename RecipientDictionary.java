@@ -0,0 +1,123 @@
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * RecipientDictionary class - Shared table giving every recipient number a small int code
+ * Each recipient is kept once, as typed, and stores keep its code per message
+ * rather than their own copy of the number. The canonical form of a number
+ * ("+27..." and "027..." are the same number) has a code of its own, so
+ * per-recipient lookups and counts compare ints instead of strings, and prefix
+ * searches walk one digit trie over the canonical numbers for all stores.
+ * Codes are never reused. Lookups of known numbers take no lock, only adding
+ * a new number does.
+ * Linked to: MessageEngine.java, MessageStore.java, MessageStatistics.java, RecipientIndex.java and MessageSegment.java
+ */
+public class RecipientDictionary {
+    // Code of a null recipient
+    public static final int NONE = -1;
+    
+    // Canonical code of "", shared by null recipients and ones without digits
+    public static final int NO_NUMBER = 0;
+    
+    private final ConcurrentHashMap<String, Integer> codes = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Integer> canonicalCodes = new ConcurrentHashMap<>();
+    
+    // Written under the lock before a code is published through the maps above
+    private volatile String[] recipients = new String[16];
+    private volatile int[] canonicalOf = new int[16];
+    private volatile String[] canonicals = new String[16];
+    
+    // Guarded by this
+    private int recipientCount = 0;
+    private int canonicalCount = 0;
+    private final RecipientIndex canonicalIndex = new RecipientIndex();
+    
+    public RecipientDictionary() {
+        addCanonical("");
+    }
+    
+    // Code for a recipient as typed, adding it if it is new, NONE for null
+    public int intern(String recipient) {
+        if (recipient == null) {
+            return NONE;
+        }
+        Integer code = codes.get(recipient);
+        return code != null ? code : add(recipient);
+    }
+    
+    // Code for a recipient as typed, or NONE if it has never been seen
+    public int codeOf(String recipient) {
+        Integer code = recipient == null ? null : codes.get(recipient);
+        return code == null ? NONE : code;
+    }
+    
+    // Recipient as typed for a code, null for NONE
+    public String textOf(int code) {
+        return code == NONE ? null : recipients[code];
+    }
+    
+    // Canonical code for a recipient code, NO_NUMBER for NONE
+    public int canonicalCodeOf(int code) {
+        return code == NONE ? NO_NUMBER : canonicalOf[code];
+    }
+    
+    // Canonical code for a number in any of its formats, or NONE if no such number has been seen
+    public int canonicalCodeOf(String recipient) {
+        Integer code = canonicalCodes.get(RecipientIndex.canonicalise(recipient));
+        return code == null ? NONE : code;
+    }
+    
+    // Canonical number for a canonical code, digits only
+    public String canonicalTextOf(int canonicalCode) {
+        return canonicals[canonicalCode];
+    }
+    
+    // Canonical codes of every number starting with a number or prefix, in code order
+    public synchronized int[] canonicalCodesWithPrefix(String recipientPrefix) {
+        return canonicalIndex.findByPrefix(recipientPrefix);
+    }
+    
+    // Number of different recipients, as typed
+    public synchronized int size() {
+        return recipientCount;
+    }
+    
+    // Number of different canonical numbers, including NO_NUMBER
+    public synchronized int canonicalSize() {
+        return canonicalCount;
+    }
+    
+    private synchronized int add(String recipient) {
+        Integer existing = codes.get(recipient);
+        if (existing != null) {
+            return existing;
+        }
+        
+        String canonical = RecipientIndex.canonicalise(recipient);
+        Integer canonicalCode = canonicalCodes.get(canonical);
+        int canonicalValue = canonicalCode != null ? canonicalCode : addCanonical(canonical);
+        
+        int code = recipientCount;
+        if (code == recipients.length) {
+            recipients = Arrays.copyOf(recipients, code * 2);
+            canonicalOf = Arrays.copyOf(canonicalOf, code * 2);
+        }
+        recipients[code] = recipient;
+        canonicalOf[code] = canonicalValue;
+        recipientCount++;
+        codes.put(recipient, code);
+        return code;
+    }
+    
+    private synchronized int addCanonical(String canonical) {
+        int code = canonicalCount;
+        if (code == canonicals.length) {
+            canonicals = Arrays.copyOf(canonicals, code * 2);
+        }
+        canonicals[code] = canonical;
+        canonicalCount++;
+        canonicalIndex.add(canonical, code);
+        canonicalCodes.put(canonical, code);
+        return code;
+    }
+}
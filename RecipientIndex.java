@@ -0,0 +1,136 @@
+import java.util.Arrays;
+
+/**
+ * RecipientIndex class - Digit trie over canonical recipient numbers
+ * "+27..." and "027..." numbers are stored under the same key, so a lookup
+ * by full number or by number prefix only visits the matching part of the trie.
+ * The RecipientDictionary keeps one trie of canonical codes for every store,
+ * so each number is in the trie once however many messages are sent to it.
+ * Linked to: RecipientDictionary.java and MessageStore.java
+ */
+public class RecipientIndex {
+    
+    // One trie node per digit, codes are kept on the node where their number ends
+    private static class Node {
+        private final Node[] children = new Node[10];
+        private int[] codes;
+        private int codeCount;
+    }
+    
+    private final Node root = new Node();
+    private int size = 0;
+    
+    // Canonical key for a recipient or prefix: digits only, "+27"/"027" become "27"
+    public static String canonicalise(String recipient) {
+        if (recipient == null) {
+            return "";
+        }
+        
+        StringBuilder digits = new StringBuilder(recipient.length());
+        boolean plus = false;
+        for (int i = 0; i < recipient.length(); i++) {
+            char c = recipient.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
+            } else if (c == '+' && digits.length() == 0) {
+                plus = true;
+            }
+        }
+        
+        // "027..." is the same number as "+27..."
+        if (!plus && digits.length() >= 3 && digits.charAt(0) == '0' 
+                && digits.charAt(1) == '2' && digits.charAt(2) == '7') {
+            digits.deleteCharAt(0);
+        }
+        return digits.toString();
+    }
+    
+    // Index a code under its recipient number
+    public void add(String recipient, int code) {
+        String key = canonicalise(recipient);
+        if (key.isEmpty()) {
+            return;
+        }
+        
+        Node node = root;
+        for (int i = 0; i < key.length(); i++) {
+            int digit = key.charAt(i) - '0';
+            if (node.children[digit] == null) {
+                node.children[digit] = new Node();
+            }
+            node = node.children[digit];
+        }
+        
+        if (node.codes == null) {
+            node.codes = new int[2];
+        } else if (node.codeCount == node.codes.length) {
+            node.codes = Arrays.copyOf(node.codes, node.codeCount * 2);
+        }
+        node.codes[node.codeCount++] = code;
+        size++;
+    }
+    
+    // Remove a code from its recipient number
+    public boolean remove(String recipient, int code) {
+        Node node = findNode(canonicalise(recipient));
+        if (node == null || node.codes == null) {
+            return false;
+        }
+        
+        for (int i = 0; i < node.codeCount; i++) {
+            if (node.codes[i] == code) {
+                node.codeCount--;
+                System.arraycopy(node.codes, i + 1, node.codes, i, node.codeCount - i);
+                size--;
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    // Codes of all numbers that start with the given number or prefix, in ascending order
+    public int[] findByPrefix(String recipientPrefix) {
+        String key = canonicalise(recipientPrefix);
+        Node node = key.isEmpty() ? null : findNode(key);
+        if (node == null) {
+            return new int[0];
+        }
+        
+        int[][] result = { new int[8] };
+        int count = collect(node, result, 0);
+        
+        // Codes are issued in insertion order, so sorting keeps that order
+        int[] codes = Arrays.copyOf(result[0], count);
+        Arrays.sort(codes);
+        return codes;
+    }
+    
+    // Number of codes in the index
+    public int size() {
+        return size;
+    }
+    
+    private Node findNode(String key) {
+        Node node = root;
+        for (int i = 0; i < key.length() && node != null; i++) {
+            node = node.children[key.charAt(i) - '0'];
+        }
+        return node;
+    }
+    
+    private int collect(Node node, int[][] result, int count) {
+        if (node.codeCount > 0) {
+            if (count + node.codeCount > result[0].length) {
+                result[0] = Arrays.copyOf(result[0], Math.max(result[0].length * 2, count + node.codeCount));
+            }
+            System.arraycopy(node.codes, 0, result[0], count, node.codeCount);
+            count += node.codeCount;
+        }
+        for (Node child : node.children) {
+            if (child != null) {
+                count = collect(child, result, count);
+            }
+        }
+        return count;
+    }
+}
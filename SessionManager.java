@@ -0,0 +1,169 @@
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * SessionManager class - Bounded cache of session tokens issued after login
+ * A token is "id.secret". The id finds the session in an access-ordered map,
+ * so lookups and LRU eviction are constant time, and the secret is compared
+ * with MessageDigest.isEqual, so validating a token never needs the password
+ * hash again. A session expires once it has been idle for the time to live.
+ * QuickChat checks the token before every menu action, so a session that has
+ * expired or been ended stops the menu until the user logs in again.
+ * Linked to: Login.java, QuickChat.java, ChatServer.java and poe.java
+ */
+public class SessionManager {
+    private static final int ID_BYTES = 12;
+    private static final int SECRET_BYTES = 32;
+    
+    // One logged in user
+    private static final class Session {
+        private final String username;
+        private final byte[] secret;
+        private long expiresAt;
+        
+        Session(String username, byte[] secret, long expiresAt) {
+            this.username = username;
+            this.secret = secret;
+            this.expiresAt = expiresAt;
+        }
+    }
+    
+    private static final SecureRandom random = new SecureRandom();
+    private static final Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+    
+    private final int maxSessions;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+    private final LinkedHashMap<String, Session> sessions;
+    
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    
+    public SessionManager(int maxSessions, long timeToLive, TimeUnit unit) {
+        this(maxSessions, timeToLive, unit, System::nanoTime);
+    }
+    
+    SessionManager(int maxSessions, long timeToLive, TimeUnit unit, LongSupplier clock) {
+        if (maxSessions < 1) {
+            throw new IllegalArgumentException("At least one session is required.");
+        }
+        this.maxSessions = maxSessions;
+        this.ttlNanos = unit.toNanos(timeToLive);
+        this.clock = clock;
+        
+        // Access order turns the map into an LRU list, the eldest entry goes first
+        this.sessions = new LinkedHashMap<String, Session>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Session> eldest) {
+                if (size() > SessionManager.this.maxSessions) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+    
+    // Start a session for a user who has just logged in and return its token
+    public String createSession(String username) {
+        byte[] id = new byte[ID_BYTES];
+        byte[] secret = new byte[SECRET_BYTES];
+        random.nextBytes(id);
+        random.nextBytes(secret);
+        
+        String sessionID = encoder.encodeToString(id);
+        String token = sessionID + "." + encoder.encodeToString(secret);
+        synchronized (sessions) {
+            sessions.put(sessionID, new Session(username, secret, clock.getAsLong() + ttlNanos));
+        }
+        return token;
+    }
+    
+    // Username for a valid token, or null if it is unknown, forged or expired
+    public String validate(String token) {
+        int dot = token == null ? -1 : token.indexOf('.');
+        if (dot <= 0) {
+            misses.increment();
+            return null;
+        }
+        
+        byte[] secret;
+        try {
+            secret = Base64.getUrlDecoder().decode(token.substring(dot + 1).getBytes(StandardCharsets.US_ASCII));
+        } catch (IllegalArgumentException e) {
+            misses.increment();
+            return null;
+        }
+        
+        String sessionID = token.substring(0, dot);
+        long now = clock.getAsLong();
+        synchronized (sessions) {
+            Session session = sessions.get(sessionID);
+            if (session == null || !MessageDigest.isEqual(session.secret, secret)) {
+                misses.increment();
+                return null;
+            }
+            if (now - session.expiresAt >= 0) {
+                sessions.remove(sessionID);
+                expirations.increment();
+                misses.increment();
+                return null;
+            }
+            
+            // Sliding expiry, an active session stays alive
+            session.expiresAt = now + ttlNanos;
+            hits.increment();
+            return session.username;
+        }
+    }
+    
+    // End a session, returns true if the token was valid
+    public boolean invalidate(String token) {
+        int dot = token == null ? -1 : token.indexOf('.');
+        if (dot <= 0 || validate(token) == null) {
+            return false;
+        }
+        synchronized (sessions) {
+            return sessions.remove(token.substring(0, dot)) != null;
+        }
+    }
+    
+    // Drop every expired session, returns how many were dropped
+    public int removeExpired() {
+        long now = clock.getAsLong();
+        int removed = 0;
+        synchronized (sessions) {
+            Iterator<Session> iterator = sessions.values().iterator();
+            while (iterator.hasNext()) {
+                if (now - iterator.next().expiresAt >= 0) {
+                    iterator.remove();
+                    removed++;
+                }
+            }
+        }
+        expirations.add(removed);
+        return removed;
+    }
+    
+    public int size() {
+        synchronized (sessions) {
+            return sessions.size();
+        }
+    }
+    
+    // Cache statistics
+    public long getHitCount() { return hits.sum(); }
+    public long getMissCount() { return misses.sum(); }
+    public long getEvictionCount() { return evictions.sum(); }
+    public long getExpiredCount() { return expirations.sum(); }
+}
@@ -0,0 +1,101 @@
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit tests for the SessionManager class
+ */
+public class SessionManagerTest {
+    private long now = 0;
+    
+    private SessionManager createManager(int maxSessions) {
+        return new SessionManager(maxSessions, 10, TimeUnit.SECONDS, () -> now);
+    }
+    
+    @Test
+    public void testValidTokenHits() {
+        SessionManager sessions = createManager(10);
+        String token = sessions.createSession("kvl_1");
+        
+        assertTrue("kvl_1".equals(sessions.validate(token)));
+        assertTrue(sessions.getHitCount() == 1);
+        assertTrue(sessions.validate(token.substring(0, token.length() - 2) + "AA") == null);
+        assertTrue(sessions.validate("nonsense") == null);
+        assertTrue(sessions.getMissCount() == 2);
+    }
+    
+    @Test
+    public void testIdleSessionsExpire() {
+        SessionManager sessions = createManager(10);
+        String token = sessions.createSession("kvl_1");
+        
+        now += TimeUnit.SECONDS.toNanos(9);
+        assertTrue(sessions.validate(token) != null);
+        now += TimeUnit.SECONDS.toNanos(9);
+        assertTrue(sessions.validate(token) != null);
+        now += TimeUnit.SECONDS.toNanos(11);
+        assertTrue(sessions.validate(token) == null);
+        assertTrue(sessions.getExpiredCount() == 1);
+    }
+    
+    @Test
+    public void testExpiredSessionClosesTheMenu() {
+        SessionManager sessions = createManager(10);
+        String token = sessions.createSession("kvl_1");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        QuickChat quickChat = new QuickChat(new MessageEngine(), new NoOpNotificationSink(), false,
+            new PrintStream(output, true, StandardCharsets.UTF_8));
+        quickChat.attachSession(sessions, token);
+        
+        // The first action runs, the second comes after the session has been idle too long
+        now += TimeUnit.SECONDS.toNanos(9);
+        Scanner first = new Scanner("2\n");
+        try {
+            quickChat.startMessagingSystem(first);
+        } catch (NoSuchElementException e) {
+            // Out of input after the first action
+        }
+        assertTrue(!output.toString(StandardCharsets.UTF_8).contains("session has expired"));
+        
+        now += TimeUnit.SECONDS.toNanos(11);
+        quickChat.startMessagingSystem(new Scanner("2\n"));
+        assertTrue(output.toString(StandardCharsets.UTF_8).contains("session has expired"));
+        assertTrue(sessions.validate(token) == null);
+    }
+    
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        SessionManager sessions = createManager(2);
+        String first = sessions.createSession("a_1");
+        String second = sessions.createSession("b_1");
+        sessions.validate(first);
+        sessions.createSession("c_1");
+        
+        assertTrue(sessions.validate(first) != null);
+        assertTrue(sessions.validate(second) == null);
+        assertTrue(sessions.getEvictionCount() == 1);
+        assertTrue(sessions.size() == 2);
+    }
+    
+    @Test
+    public void testLoginIssuesToken() {
+        Login login = new Login(new UserRegistry(), new PasswordHasher(1000));
+        login.registerUser("kvl_1", "Ch&&sec@ke99!", "+27838968976");
+        SessionManager sessions = createManager(10);
+        
+        assertTrue(login.loginUser("kvl_1", "wrong", sessions) == null);
+        String token = login.loginUser("kvl_1", "Ch&&sec@ke99!", sessions);
+        assertTrue("kvl_1".equals(sessions.validate(token)));
+        assertTrue(sessions.invalidate(token));
+        assertTrue(sessions.validate(token) == null);
+    }
+    
+    private void assertTrue(boolean condition) {
+        if (!condition) {
+            throw new AssertionError("Expected condition to be true");
+        }
+    }
+}
@@ -0,0 +1,209 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/**
+ * StoredMessageScheduler class - Sends "Store for Later" messages once they are due
+ * Pending messages are kept in a binary min-heap ordered by their send-after
+ * time, held in parallel primitive arrays so a million pending messages cost
+ * a few arrays rather than a million objects. Scheduling and releasing are
+ * O(log n), and the worker thread sleeps until the earliest message is due,
+ * so nothing is scanned per tick. Due messages are released in batches to a
+ * Releaser, normally QuickChat.sendStoredMessages().
+ * Messages deleted or sent by hand while waiting are skipped by the releaser.
+ * Linked to: QuickChat.java, poe.java (--send-stored-after) and ChatServer.java
+ */
+public class StoredMessageScheduler implements AutoCloseable {
+    private static final int DEFAULT_BATCH_SIZE = 256;
+    private static final int INITIAL_CAPACITY = 64;
+    
+    // Receives each batch of due message hashes
+    public interface Releaser {
+        void release(List<String> messageHashes);
+    }
+    
+    private final Releaser releaser;
+    private final int batchSize;
+    private final LongSupplier clock;
+    
+    // Guarded by this: heap of (send-after time, arrival order, hash), earliest at index 0
+    private long[] dueTimes = new long[INITIAL_CAPACITY];
+    private long[] arrivals = new long[INITIAL_CAPACITY];
+    private String[] hashes = new String[INITIAL_CAPACITY];
+    private int size = 0;
+    private long nextArrival = 0;
+    private long releasedCount = 0;
+    private boolean closed = false;
+    private Thread worker;
+    
+    public StoredMessageScheduler(Releaser releaser) {
+        this(releaser, DEFAULT_BATCH_SIZE, System::currentTimeMillis);
+    }
+    
+    // Clock in milliseconds, tests pass their own and call releaseDue() themselves
+    StoredMessageScheduler(Releaser releaser, int batchSize, LongSupplier clock) {
+        this.releaser = releaser;
+        this.batchSize = batchSize;
+        this.clock = clock;
+    }
+    
+    // Send a stored message once the clock reaches sendAtMillis
+    public synchronized void schedule(String messageHash, long sendAtMillis) {
+        if (size == dueTimes.length) {
+            int newLength = size * 2;
+            dueTimes = Arrays.copyOf(dueTimes, newLength);
+            arrivals = Arrays.copyOf(arrivals, newLength);
+            hashes = Arrays.copyOf(hashes, newLength);
+        }
+        int index = size++;
+        dueTimes[index] = sendAtMillis;
+        arrivals[index] = nextArrival++;
+        hashes[index] = messageHash;
+        siftUp(index);
+        
+        // Only a new earliest message changes how long the worker should sleep
+        if (hashes[0] == messageHash) {
+            notifyAll();
+        }
+    }
+    
+    // Start releasing due messages on a background thread
+    public synchronized void start() {
+        if (worker == null) {
+            worker = new Thread(this::releaseLoop, "quickchat-scheduler");
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+    
+    // Release every message that is due now, in batches, returns how many were released
+    public int releaseDue() {
+        int released = 0;
+        while (true) {
+            List<String> batch = pollDue();
+            if (batch.isEmpty()) {
+                return released;
+            }
+            releaser.release(batch);
+            released += batch.size();
+        }
+    }
+    
+    // Number of messages waiting to be sent
+    public synchronized int size() {
+        return size;
+    }
+    
+    // Send-after time of the earliest waiting message, or -1 if none are waiting
+    public synchronized long nextDueTime() {
+        return size == 0 ? -1 : dueTimes[0];
+    }
+    
+    public synchronized long getReleasedCount() {
+        return releasedCount;
+    }
+    
+    // Stop the worker, messages that are not due yet stay unsent
+    @Override
+    public void close() {
+        Thread current;
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+            current = worker;
+        }
+        if (current != null) {
+            try {
+                current.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+    
+    private void releaseLoop() {
+        while (true) {
+            synchronized (this) {
+                try {
+                    // Sleep until the earliest message is due or an earlier one arrives
+                    while (!closed && (size == 0 || dueTimes[0] > clock.getAsLong())) {
+                        wait(size == 0 ? 0 : Math.max(1, dueTimes[0] - clock.getAsLong()));
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (closed) {
+                    return;
+                }
+            }
+            try {
+                releaseDue();
+            } catch (RuntimeException e) {
+                System.err.println("❌ Could not send stored messages: " + e.getMessage());
+            }
+        }
+    }
+    
+    // Take up to one batch of due messages off the heap
+    private synchronized List<String> pollDue() {
+        long now = clock.getAsLong();
+        List<String> batch = new ArrayList<>(Math.min(size, batchSize));
+        while (size > 0 && dueTimes[0] <= now && batch.size() < batchSize) {
+            batch.add(hashes[0]);
+            size--;
+            dueTimes[0] = dueTimes[size];
+            arrivals[0] = arrivals[size];
+            hashes[0] = hashes[size];
+            hashes[size] = null;
+            siftDown(0);
+        }
+        releasedCount += batch.size();
+        return batch;
+    }
+    
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!earlier(index, parent)) {
+                break;
+            }
+            swap(index, parent);
+            index = parent;
+        }
+    }
+    
+    private void siftDown(int index) {
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && earlier(child + 1, child)) {
+                child++;
+            }
+            if (!earlier(child, index)) {
+                break;
+            }
+            swap(index, child);
+            index = child;
+        }
+    }
+    
+    // Earlier send-after time first, then first scheduled first
+    private boolean earlier(int a, int b) {
+        return dueTimes[a] != dueTimes[b] ? dueTimes[a] < dueTimes[b] : arrivals[a] < arrivals[b];
+    }
+    
+    private void swap(int a, int b) {
+        long due = dueTimes[a];
+        dueTimes[a] = dueTimes[b];
+        dueTimes[b] = due;
+        long arrival = arrivals[a];
+        arrivals[a] = arrivals[b];
+        arrivals[b] = arrival;
+        String hash = hashes[a];
+        hashes[a] = hashes[b];
+        hashes[b] = hash;
+    }
+}
@@ -0,0 +1,112 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Unit tests for the StoredMessageScheduler class and sending stored messages
+ */
+public class StoredMessageSchedulerTest {
+    private long now = 0;
+    
+    @Test
+    public void testReleasesDueMessagesInTimeOrder() {
+        List<List<String>> batches = new ArrayList<>();
+        StoredMessageScheduler scheduler = new StoredMessageScheduler(batches::add, 100, () -> now);
+        Random random = new Random(42);
+        int pending = 1_000_000;
+        for (int i = 0; i < pending; i++) {
+            long due = random.nextInt(10_000);
+            scheduler.schedule(due + ":" + i, due);
+        }
+        
+        now = 4999;
+        int releasedEarly = scheduler.releaseDue();
+        assertEquals(releasedEarly + scheduler.size(), pending);
+        assertTrue(scheduler.nextDueTime() >= 5000);
+        now = 10_000;
+        assertEquals(pending - releasedEarly, scheduler.releaseDue());
+        assertEquals(0, scheduler.size());
+        
+        // Never more than one batch at a time, and never out of order
+        long previous = -1;
+        for (List<String> batch : batches) {
+            assertTrue(batch.size() <= 100);
+            for (String hash : batch) {
+                long due = Long.parseLong(hash.substring(0, hash.indexOf(':')));
+                assertTrue(due >= previous);
+                previous = due;
+            }
+        }
+    }
+    
+    @Test
+    public void testEqualTimesKeepScheduleOrder() {
+        List<String> released = new ArrayList<>();
+        StoredMessageScheduler scheduler = new StoredMessageScheduler(released::addAll, 10, () -> now);
+        for (int i = 0; i < 50; i++) {
+            scheduler.schedule("m" + i, 100);
+        }
+        now = 100;
+        scheduler.releaseDue();
+        for (int i = 0; i < 50; i++) {
+            assertTrue(released.get(i).equals("m" + i));
+        }
+    }
+    
+    @Test
+    public void testStoredMessagesAreSentWhenDue() {
+        QuickChat quickChat = new QuickChat(new NoOpNotificationSink(), false);
+        StoredMessageScheduler scheduler = new StoredMessageScheduler(quickChat::sendStoredMessages, 256, () -> now);
+        quickChat.scheduleStoredMessages(scheduler, 1000);
+        
+        quickChat.processMessage("+27838884567", "Where are you? You are late!", 3);
+        quickChat.processMessage("+27838884567", "Ok, I am leaving without you.", 3);
+        quickChat.processMessage("08575975889", "Invalid recipient, stays stored", 3);
+        quickChat.deleteMessage(quickChat.getAllMessages()[1].getMessageHash());
+        assertEquals(3, scheduler.size());
+        
+        // Scheduled against the wall clock, so jump far enough past it
+        now = System.currentTimeMillis() + 2000;
+        assertEquals(3, scheduler.releaseDue());
+        assertEquals(1, quickChat.getSentCount());
+        assertEquals(1, quickChat.getStoredCount());
+        assertEquals(1, quickChat.returnTotalMessages());
+        assertTrue(quickChat.getSentMessages()[0].equals("Where are you? You are late!"));
+        assertTrue(quickChat.getAllMessages()[0].isSent());
+    }
+    
+    @Test
+    public void testStoredMessagesNotifyThroughTheQuickChatSink() {
+        List<String> titles = new ArrayList<>();
+        NotificationSink recording = new NotificationSink() {
+            public void success(String title, String message) { titles.add(title); }
+            public void error(String title, String message) { titles.add(title); }
+            public void warning(String title, String message) { titles.add(title); }
+            public void info(String title, String message) { titles.add(title); }
+        };
+        NotificationSink previousDefault = NotificationSinks.getDefault();
+        NotificationSinks.setDefault(new NoOpNotificationSink());
+        try {
+            QuickChat quickChat = new QuickChat(recording, false);
+            quickChat.processMessage("+27838884567", "Where are you? You are late!", 3);
+            int before = titles.size();
+            
+            assertTrue(quickChat.sendStoredMessage(quickChat.getAllMessages()[0].getMessageHash()));
+            assertTrue(titles.size() > before);
+        } finally {
+            NotificationSinks.setDefault(previousDefault);
+        }
+    }
+    
+    private void assertTrue(boolean condition) {
+        if (!condition) {
+            throw new AssertionError("Expected condition to be true");
+        }
+    }
+    
+    private void assertEquals(long expected, long actual) {
+        if (expected != actual) {
+            throw new AssertionError("Expected " + expected + " but was " + actual);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+import javax.swing.JOptionPane;
+
+/**
+ * SwingNotificationSink class - Shows notifications as JOptionPane dialogs
+ * This is the default sink for the interactive application
+ * Linked to: NotificationSink.java
+ */
+public class SwingNotificationSink implements NotificationSink {
+    
+    @Override
+    public void success(String title, String message) {
+        JOptionPane.showMessageDialog(null, message, "✅ " + title, JOptionPane.INFORMATION_MESSAGE);
+    }
+    
+    @Override
+    public void error(String title, String message) {
+        JOptionPane.showMessageDialog(null, message, "❌ " + title, JOptionPane.ERROR_MESSAGE);
+    }
+    
+    @Override
+    public void warning(String title, String message) {
+        JOptionPane.showMessageDialog(null, message, "⚠️ " + title, JOptionPane.WARNING_MESSAGE);
+    }
+    
+    @Override
+    public void info(String title, String message) {
+        JOptionPane.showMessageDialog(null, message, title, JOptionPane.INFORMATION_MESSAGE);
+    }
+}
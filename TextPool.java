@@ -0,0 +1,220 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * TextPool class - Append-only UTF-8 storage for the text columns of a MessageStore
+ * Strings are written back to back into 1 MiB byte slabs, each behind a short
+ * length prefix, and referred to by a long holding the slab number and offset.
+ * A million messages then cost a handful of large arrays rather than millions
+ * of String objects, and the garbage collector has almost nothing to trace.
+ * Text is decoded again on every read. Space from released text is not reused
+ * in place: when its store compacts, live text is copied into a fresh pool and
+ * the old slabs are dropped.
+ * Linked to: MessageStore.java
+ */
+public class TextPool {
+    // Reference used for null text
+    public static final long NULL = -1;
+    
+    // 1 MiB per slab, longer text gets a slab of its own
+    private static final int SLAB_SHIFT = 20;
+    private static final int SLAB_SIZE = 1 << SLAB_SHIFT;
+    private static final int SLAB_MASK = SLAB_SIZE - 1;
+    
+    private byte[][] slabs = new byte[4][];
+    private int slabCount = 0;
+    private int position = 0;  // Next free byte in the last slab
+    private long allocatedBytes = 0;
+    private long usedBytes = 0;
+    private long releasedBytes = 0;
+    private boolean readOnly = false;
+    
+    public TextPool() {
+    }
+    
+    private TextPool(byte[][] slabs, int slabCount) {
+        this.slabs = slabs;
+        this.slabCount = slabCount;
+        this.readOnly = true;
+    }
+    
+    // Append text and return its reference
+    public long add(String text) {
+        if (text == null) {
+            return NULL;
+        }
+        if (readOnly) {
+            throw new IllegalStateException("Text pool view is read-only.");
+        }
+        
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        int needed = prefixLength(bytes.length) + bytes.length;
+        if (slabCount == 0 || position + needed > slabs[slabCount - 1].length) {
+            addSlab(Math.max(SLAB_SIZE, needed));
+        }
+        
+        byte[] slab = slabs[slabCount - 1];
+        int offset = position;
+        position = writeLength(slab, position, bytes.length);
+        System.arraycopy(bytes, 0, slab, position, bytes.length);
+        position += bytes.length;
+        usedBytes += needed;
+        return ((long) (slabCount - 1) << SLAB_SHIFT) | offset;
+    }
+    
+    // Append the text behind a reference in another pool, copying its bytes without decoding them
+    public long copy(TextPool source, long reference) {
+        if (reference == NULL) {
+            return NULL;
+        }
+        if (readOnly) {
+            throw new IllegalStateException("Text pool view is read-only.");
+        }
+        byte[] from = source.slabs[(int) (reference >>> SLAB_SHIFT)];
+        int offset = (int) (reference & SLAB_MASK);
+        int length = readLength(from, offset);
+        int needed = prefixLength(length) + length;
+        if (slabCount == 0 || position + needed > slabs[slabCount - 1].length) {
+            addSlab(Math.max(SLAB_SIZE, needed));
+        }
+        
+        int start = position;
+        System.arraycopy(from, offset, slabs[slabCount - 1], position, needed);
+        position += needed;
+        usedBytes += needed;
+        return ((long) (slabCount - 1) << SLAB_SHIFT) | start;
+    }
+    
+    // Decode the text behind a reference
+    public String get(long reference) {
+        if (reference == NULL) {
+            return null;
+        }
+        byte[] slab = slabs[(int) (reference >>> SLAB_SHIFT)];
+        int offset = (int) (reference & SLAB_MASK);
+        int length = readLength(slab, offset);
+        int start = offset + prefixLength(length);
+        return new String(slab, start, length, StandardCharsets.UTF_8);
+    }
+    
+    // Check if the text behind a reference equals a string, without decoding ASCII text
+    public boolean matches(long reference, String text) {
+        if (reference == NULL || text == null) {
+            return reference == NULL && text == null;
+        }
+        byte[] slab = slabs[(int) (reference >>> SLAB_SHIFT)];
+        int offset = (int) (reference & SLAB_MASK);
+        int length = readLength(slab, offset);
+        int start = offset + prefixLength(length);
+        if (length != text.length()) {
+            // Different byte and char counts can still be equal once non-ASCII text is decoded
+            return length > text.length() && text.equals(get(reference));
+        }
+        for (int i = 0; i < length; i++) {
+            byte b = slab[start + i];
+            if (b < 0) {
+                return text.equals(get(reference));
+            }
+            if (b != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    // Length of the text behind a reference in chars, as String.length() would give, without decoding it
+    public int charLength(long reference) {
+        if (reference == NULL) {
+            return 0;
+        }
+        byte[] slab = slabs[(int) (reference >>> SLAB_SHIFT)];
+        int offset = (int) (reference & SLAB_MASK);
+        int length = readLength(slab, offset);
+        int start = offset + prefixLength(length);
+        int chars = 0;
+        for (int i = start; i < start + length; i++) {
+            // Every byte but a continuation byte starts a char, four byte sequences need two
+            int b = slab[i] & 0xFF;
+            if ((b & 0xC0) != 0x80) {
+                chars += b >= 0xF0 ? 2 : 1;
+            }
+        }
+        return chars;
+    }
+    
+    // One byte of the text behind a reference, or -1 past its end
+    public int byteAt(long reference, int index) {
+        if (reference == NULL) {
+            return -1;
+        }
+        byte[] slab = slabs[(int) (reference >>> SLAB_SHIFT)];
+        int offset = (int) (reference & SLAB_MASK);
+        int length = readLength(slab, offset);
+        return index < length ? slab[offset + prefixLength(length) + index] & 0xFF : -1;
+    }
+    
+    // Read-only pool over the text written so far, safe to read from another thread
+    // once the writer's lock has been released, since written bytes never change
+    public TextPool readOnlyView() {
+        return new TextPool(Arrays.copyOf(slabs, slabCount), slabCount);
+    }
+    
+    // Mark text as no longer needed, only the usage figures change
+    public void release(long reference) {
+        if (reference != NULL) {
+            byte[] slab = slabs[(int) (reference >>> SLAB_SHIFT)];
+            int length = readLength(slab, (int) (reference & SLAB_MASK));
+            releasedBytes += prefixLength(length) + length;
+        }
+    }
+    
+    // Bytes of text still referenced
+    public long liveBytes() {
+        return usedBytes - releasedBytes;
+    }
+    
+    // Bytes held in slabs, including free and released space
+    public long allocatedBytes() {
+        return allocatedBytes;
+    }
+    
+    private void addSlab(int length) {
+        if (slabCount == slabs.length) {
+            slabs = Arrays.copyOf(slabs, slabCount * 2);
+        }
+        slabs[slabCount++] = new byte[length];
+        allocatedBytes += length;
+        position = 0;
+    }
+    
+    // Lengths are written 7 bits at a time, so text up to 127 bytes has a one byte prefix
+    private static int prefixLength(int length) {
+        int bytes = 1;
+        while (length >= 0x80) {
+            length >>>= 7;
+            bytes++;
+        }
+        return bytes;
+    }
+    
+    private static int writeLength(byte[] slab, int offset, int length) {
+        while (length >= 0x80) {
+            slab[offset++] = (byte) ((length & 0x7F) | 0x80);
+            length >>>= 7;
+        }
+        slab[offset++] = (byte) length;
+        return offset;
+    }
+    
+    private static int readLength(byte[] slab, int offset) {
+        int length = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = slab[offset++];
+            length |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return length;
+    }
+}
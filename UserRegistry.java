@@ -0,0 +1,52 @@
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * UserRegistry class - Thread-safe store of registered QuickChat users
+ * Backed by a ConcurrentHashMap, so lookups never lock and registrations
+ * only contend on the same map bin. One registry can be shared by many
+ * Login objects, for example one per connected session.
+ * Linked to: Login.java and PasswordHasher.java
+ */
+public class UserRegistry {
+    
+    // One registered user, the password is only kept as a salted hash
+    public static final class UserAccount {
+        private final String username;
+        private final String passwordHash;
+        private final String cellPhone;
+        
+        public UserAccount(String username, String passwordHash, String cellPhone) {
+            this.username = username;
+            this.passwordHash = passwordHash;
+            this.cellPhone = cellPhone;
+        }
+        
+        public String getUsername() { return username; }
+        public String getPasswordHash() { return passwordHash; }
+        public String getCellPhone() { return cellPhone; }
+    }
+    
+    private final ConcurrentHashMap<String, UserAccount> accounts;
+    
+    public UserRegistry() {
+        this(1024);
+    }
+    
+    public UserRegistry(int expectedUsers) {
+        this.accounts = new ConcurrentHashMap<>(expectedUsers);
+    }
+    
+    // Add an account, returns false if the username is already taken
+    public boolean register(UserAccount account) {
+        return accounts.putIfAbsent(account.getUsername(), account) == null;
+    }
+    
+    // Find an account by username, or null
+    public UserAccount find(String username) {
+        return username == null ? null : accounts.get(username);
+    }
+    
+    public int size() {
+        return accounts.size();
+    }
+}
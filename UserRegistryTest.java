@@ -0,0 +1,55 @@
+
+/**
+ * Unit tests for the UserRegistry and PasswordHasher classes through Login
+ */
+public class UserRegistryTest {
+    // Low cost keeps the tests fast, the format is the same at any cost
+    private final PasswordHasher hasher = new PasswordHasher(1000);
+    
+    @Test
+    public void testPasswordIsStoredHashed() {
+        Login login = new Login(new UserRegistry(), hasher);
+        assertTrue(login.registerUser("kvl_1", "Ch&&sec@ke99!", "+27838968976").equals("User registered successfully."));
+        assertTrue(!login.getStoredPassword().contains("Ch&&sec@ke99!"));
+        assertTrue(login.getStoredPassword().startsWith("pbkdf2-sha256$1000$"));
+        assertTrue(login.loginUser("kvl_1", "Ch&&sec@ke99!"));
+        assertTrue(!login.loginUser("kvl_1", "Ch&&sec@ke99?"));
+        assertTrue(!login.loginUser("nobody", "Ch&&sec@ke99!"));
+    }
+    
+    @Test
+    public void testSameSaltIsNeverReused() {
+        assertTrue(!hasher.hash("Ch&&sec@ke99!").equals(hasher.hash("Ch&&sec@ke99!")));
+        assertTrue(!hasher.verify("Ch&&sec@ke99!", "not-a-hash"));
+    }
+    
+    @Test
+    public void testRegistryIsSharedAcrossLogins() throws InterruptedException {
+        UserRegistry registry = new UserRegistry();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int id = t;
+            threads[t] = new Thread(() -> {
+                Login login = new Login(registry, hasher);
+                for (int i = 0; i < 25; i++) {
+                    login.registerUser("u" + id + "_" + (char) ('a' + i), "Ch&&sec@ke99!", "+27838968976");
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        
+        assertTrue(registry.size() == 100);
+        Login other = new Login(registry, hasher);
+        assertTrue(other.loginUser("u3_y", "Ch&&sec@ke99!"));
+        assertTrue(other.registerUser("u3_y", "Ch&&sec@ke99!", "+27838968976").contains("already registered"));
+    }
+    
+    private void assertTrue(boolean condition) {
+        if (!condition) {
+            throw new AssertionError("Expected condition to be true");
+        }
+    }
+}
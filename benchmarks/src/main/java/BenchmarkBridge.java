@@ -0,0 +1,127 @@
+import com.quickchat.benchmarks.AppBridge;
+import java.util.Random;
+
+/**
+ * BenchmarkBridge class - AppBridge over the default package application classes
+ * Lives in the default package so it can reach Login, Message and QuickChat,
+ * and hands the JMH benchmarks in com.quickchat.benchmarks what they measure.
+ * Every notification goes to a no-op sink and echo is off, so nothing is shown.
+ * Linked to: AppBridge.java, Login.java, Message.java, QuickChat.java and MessageEngine.java
+ */
+public class BenchmarkBridge implements AppBridge {
+    public BenchmarkBridge() {
+        NotificationSinks.setDefault(new NoOpNotificationSink());
+    }
+    
+    @Override
+    public LoginTarget login() {
+        Login login = new Login(new UserRegistry(), new PasswordHasher(1000));
+        return new LoginTarget() {
+            @Override
+            public boolean checkCellPhoneNumber(String cellPhone) {
+                return login.checkCellPhoneNumber(cellPhone);
+            }
+            
+            @Override
+            public boolean checkPasswordComplexity(String password) {
+                return login.checkPasswordComplexity(password);
+            }
+        };
+    }
+    
+    @Override
+    public MessageTarget message(String recipient) {
+        Message message = new Message();
+        message.setNotificationSink(new NoOpNotificationSink());
+        message.setRecipient(recipient);
+        message.setMessageContent("Hi Mike, can you join us for dinner tonight");
+        message.generateMessageID();
+        return new MessageTarget() {
+            @Override
+            public String createMessageHash(int messageNumber) {
+                return message.createMessageHash(messageNumber);
+            }
+            
+            @Override
+            public String generateMessageID() {
+                message.generateMessageID();
+                return message.getMessageID();
+            }
+            
+            @Override
+            public boolean checkRecipientCell() {
+                return message.checkRecipientCell();
+            }
+        };
+    }
+    
+    @Override
+    public QuickChatTarget quickChat(int messageCount, int recipientCount) {
+        QuickChat quickChat = new QuickChat(new NoOpNotificationSink(), false);
+        MessageEngine messageEngine = quickChat.getMessageEngine();
+        for (int i = 0; i < messageCount; i++) {
+            quickChat.processMessage(recipientOf(i, recipientCount), "Message " + i + " for dinner tonight", i % 3 + 1);
+        }
+        
+        return new QuickChatTarget() {
+            @Override
+            public void sample(String[] ids, String[] hashes, long seed) {
+                Message[] all = quickChat.getAllMessages();
+                Random random = new Random(seed);
+                for (int i = 0; i < ids.length; i++) {
+                    Message message = all[random.nextInt(all.length)];
+                    ids[i] = message.getMessageID();
+                    hashes[i] = message.getMessageHash();
+                }
+            }
+            
+            @Override
+            public Object sendThenDelete() {
+                Message message = quickChat.createMessage("+27718693002", "Hi Mike, can you join us for dinner tonight");
+                MessageStatus status = quickChat.processMessage(message, 1);
+                quickChat.deleteMessage(message.getMessageHash());
+                return status;
+            }
+            
+            @Override
+            public Object deleteThenRestore(String messageHash) {
+                Message message = quickChat.deleteMessage(messageHash);
+                if (message != null) {
+                    messageEngine.add(message, message.isSent() ? MessageStatus.SENT
+                        : (message.isStored() ? MessageStatus.STORED : MessageStatus.DISREGARDED));
+                }
+                return message;
+            }
+            
+            @Override
+            public Object searchByID(String messageID) {
+                return messageEngine.findByID(messageID);
+            }
+            
+            @Override
+            public Object searchByHash(String messageHash) {
+                return messageEngine.findByHash(messageHash);
+            }
+            
+            @Override
+            public Object searchByRecipient(String recipient) {
+                return messageEngine.findByRecipient(recipient);
+            }
+            
+            @Override
+            public Object analyticsReport() {
+                MessageAnalytics analytics = MessageAnalytics.of(messageEngine);
+                analytics.countByStatus();
+                analytics.countByRecipient(3);
+                analytics.lengthPercentile(90, MessageStatus.SENT);
+                analytics.countByHashPrefix();
+                return analytics.longest(5, MessageStatus.SENT);
+            }
+        };
+    }
+    
+    @Override
+    public String recipientOf(int i, int recipientCount) {
+        return "+27718" + String.format("%06d", i % recipientCount);
+    }
+}
@@ -0,0 +1,67 @@
+package com.quickchat.benchmarks;
+
+/**
+ * AppBridge interface - What the benchmarks need from the QuickChat application classes
+ * JMH refuses benchmarks in the default package, and a named package cannot
+ * import the application classes, which are all in the default package. So
+ * the benchmarks call through these interfaces, implemented by BenchmarkBridge
+ * next to the application classes and loaded by name. Each call site only ever
+ * sees one implementation, so the JIT inlines the extra call away.
+ * Linked to: BenchmarkBridge.java, LoginBenchmark.java, MessageBenchmark.java and QuickChatBenchmark.java
+ */
+public interface AppBridge {
+    // Registration checks on a Login
+    interface LoginTarget {
+        boolean checkCellPhoneNumber(String cellPhone);
+        
+        boolean checkPasswordComplexity(String password);
+    }
+    
+    // Per-message work on one Message
+    interface MessageTarget {
+        String createMessageHash(int messageNumber);
+        
+        String generateMessageID();
+        
+        boolean checkRecipientCell();
+    }
+    
+    // Single operations on a filled QuickChat, results are returned so JMH keeps them
+    interface QuickChatTarget {
+        // Fill the arrays with the IDs and hashes of random existing messages
+        void sample(String[] ids, String[] hashes, long seed);
+        
+        Object sendThenDelete();
+        
+        Object deleteThenRestore(String messageHash);
+        
+        Object searchByID(String messageID);
+        
+        Object searchByHash(String messageHash);
+        
+        Object searchByRecipient(String recipient);
+        
+        Object analyticsReport();
+    }
+    
+    // Login with a cheap password hasher, only the constructor's dummy hash uses it
+    LoginTarget login();
+    
+    // Typical message to a recipient, with its ID already generated
+    MessageTarget message(String recipient);
+    
+    // QuickChat filled with messageCount messages spread over recipientCount recipients
+    QuickChatTarget quickChat(int messageCount, int recipientCount);
+    
+    // Recipient number used for the i-th message of quickChat()
+    String recipientOf(int i, int recipientCount);
+    
+    // The bridge compiled with the application classes, with notifications silenced
+    static AppBridge load() {
+        try {
+            return (AppBridge) Class.forName("BenchmarkBridge").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("BenchmarkBridge is missing from the benchmark build.", e);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.quickchat.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * LoginBenchmark class - JMH benchmarks for the registration checks in Login
+ * Password hashing is left out on purpose, it is meant to be slow.
+ * Linked to: AppBridge.java, Login.java and PhoneNumbers.java
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class LoginBenchmark {
+    @Param({"+27838968976", "08966553"})
+    public String cellPhone;
+    
+    @Param({"Ch&&sec@ke99!", "password"})
+    public String password;
+    
+    private AppBridge.LoginTarget login;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        login = AppBridge.load().login();
+    }
+    
+    @Benchmark
+    public boolean checkCellPhoneNumber() {
+        return login.checkCellPhoneNumber(cellPhone);
+    }
+    
+    @Benchmark
+    public boolean checkPasswordComplexity() {
+        return login.checkPasswordComplexity(password);
+    }
+}
@@ -0,0 +1,54 @@
+package com.quickchat.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * MessageBenchmark class - JMH benchmarks for the per-message work in Message
+ * Covers ID generation, hashing and recipient validation for a typical message.
+ * Linked to: AppBridge.java, Message.java, MessageIdGenerator.java and PhoneNumbers.java
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class MessageBenchmark {
+    @Param({"+27718693002", "08575975889", "+27 71 869 3002"})
+    public String recipient;
+    
+    private AppBridge.MessageTarget message;
+    private int messageNumber;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        message = AppBridge.load().message(recipient);
+    }
+    
+    @Benchmark
+    public String createMessageHash() {
+        return message.createMessageHash(++messageNumber);
+    }
+    
+    @Benchmark
+    public String generateMessageID() {
+        return message.generateMessageID();
+    }
+    
+    @Benchmark
+    public boolean checkRecipientCell() {
+        return message.checkRecipientCell();
+    }
+}
@@ -0,0 +1,92 @@
+package com.quickchat.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * QuickChatBenchmark class - JMH benchmarks for inserting, searching and deleting
+ * Each trial fills a QuickChat with messageCount messages spread over a
+ * thousand recipients, then measures single operations against it, and the
+ * parallel analytics report over the whole store. Inserts
+ * are paired with a delete so the store stays the same size while measured.
+ * Notifications go to a no-op sink and echo is off, so nothing is printed.
+ * Linked to: AppBridge.java, QuickChat.java and MessageEngine.java
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "-Xmx4g"})
+public class QuickChatBenchmark {
+    private static final int RECIPIENTS = 1000;
+    private static final int LOOKUPS = 4096;  // Power of two, cycled through with a mask
+    
+    @Param({"1000", "100000", "1000000"})
+    public int messageCount;
+    
+    private AppBridge bridge;
+    private AppBridge.QuickChatTarget quickChat;
+    private String[] lookupIDs;
+    private String[] lookupHashes;
+    private String[] lookupRecipients;
+    private int next;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        bridge = AppBridge.load();
+        quickChat = bridge.quickChat(messageCount, RECIPIENTS);
+        
+        // Random existing messages, picked up front so picking is not measured
+        lookupIDs = new String[LOOKUPS];
+        lookupHashes = new String[LOOKUPS];
+        lookupRecipients = new String[LOOKUPS];
+        quickChat.sample(lookupIDs, lookupHashes, 42);
+        Random random = new Random(42);
+        for (int i = 0; i < LOOKUPS; i++) {
+            lookupRecipients[i] = bridge.recipientOf(random.nextInt(RECIPIENTS), RECIPIENTS);
+        }
+    }
+    
+    @Benchmark
+    public Object sendThenDelete() {
+        return quickChat.sendThenDelete();
+    }
+    
+    @Benchmark
+    public Object deleteThenRestore() {
+        return quickChat.deleteThenRestore(lookupHashes[next++ & (LOOKUPS - 1)]);
+    }
+    
+    @Benchmark
+    public Object searchByID() {
+        return quickChat.searchByID(lookupIDs[next++ & (LOOKUPS - 1)]);
+    }
+    
+    @Benchmark
+    public Object searchByHash() {
+        return quickChat.searchByHash(lookupHashes[next++ & (LOOKUPS - 1)]);
+    }
+    
+    @Benchmark
+    public Object searchByRecipient() {
+        return quickChat.searchByRecipient(lookupRecipients[next++ & (LOOKUPS - 1)]);
+    }
+    
+    @Benchmark
+    public Object analyticsReport() {
+        return quickChat.analyticsReport();
+    }
+}
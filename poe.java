@@ -1,95 +1,380 @@
-import java.util.Scanner;
-import javax.swing.JOptionPane;
-
-/**
- * PROG5121 POE Part 1, 2 & 3 - Registration, Login and Messaging System
- * Main application file that links all components
- * Student: Dilshad Amardien (ST10488991)
- */
-public class poe {
-    public static void main(String[] args) {
-        System.out.println("🚀 Starting QuickChat Application...");
-        System.out.println("=====================================");
-        
-        // Initialize the login system
-        Login loginSystem = new Login();
-        Scanner scanner = new Scanner(System.in);
-        
-        // Show welcome message
-        showWelcomeMessage();
-        
-        // Registration process
-        System.out.println("\n" + "=".repeat(40));
-        System.out.println("📝 REGISTRATION");
-        System.out.println("=".repeat(40));
-        
-        System.out.print("Enter username: ");
-        String username = scanner.nextLine();
-        
-        System.out.print("Enter password: ");
-        String password = scanner.nextLine();
-        
-        System.out.print("Enter cell phone number: ");
-        String cellPhone = scanner.nextLine();
-        
-        // Register user
-        String registrationResult = loginSystem.registerUser(username, password, cellPhone);
-        System.out.println("\n" + registrationResult);
-        
-        // If registration was successful, proceed to login and messaging
-        if (registrationResult.equals("User registered successfully.")) {
-            System.out.println("\n" + "=".repeat(40));
-            System.out.println("🔐 LOGIN");
-            System.out.println("=".repeat(40));
-            
-            System.out.print("Enter username: ");
-            String loginUsername = scanner.nextLine();
-            
-            System.out.print("Enter password: ");
-            String loginPassword = scanner.nextLine();
-            
-            // Attempt login
-            boolean loginSuccess = loginSystem.loginUser(loginUsername, loginPassword);
-            String loginStatus = loginSystem.returnLoginStatus(loginSuccess, "Dilshad", "Amardien");
-            System.out.println("\n" + loginStatus);
-            
-            // If login successful, proceed to messaging system
-            if (loginSuccess) {
-                showSuccessNotification("Login Successful!", "Welcome to QuickChat " + loginUsername + "!");
-                
-                // Initialize and start QuickChat system
-                QuickChat quickChat = new QuickChat();
-                quickChat.startMessagingSystem(scanner);
-            } else {
-                showErrorNotification("Login Failed", "Invalid username or password. Please try again.");
-            }
-        } else {
-            showErrorNotification("Registration Failed", "Please fix the errors and try again.");
-        }
-        
-        scanner.close();
-        System.out.println("\n=====================================");
-        System.out.println("👋 QuickChat Application Closed");
-        System.out.println("=====================================");
-    }
-    
-    private static void showWelcomeMessage() {
-        String welcomeMessage = 
-            "=====================================\n" +
-            "🚀 WELCOME TO QUICKCHAT MESSAGING SYSTEM\n" +
-            "=====================================\n" +
-            "Student: Dilshad Amardien (ST10488991)\n" +
-            "Module: PROG5121 Programming 1A\n" +
-            "=====================================";
-        
-        System.out.println(welcomeMessage);
-    }
-    
-    private static void showSuccessNotification(String title, String message) {
-        JOptionPane.showMessageDialog(null, message, "✅ " + title, JOptionPane.INFORMATION_MESSAGE);
-    }
-    
-    private static void showErrorNotification(String title, String message) {
-        JOptionPane.showMessageDialog(null, message, "❌ " + title, JOptionPane.ERROR_MESSAGE);
-    }
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PROG5121 POE Part 1, 2 & 3 - Registration, Login and Messaging System
+ * Main application file that links all components
+ * Run with "--batch [file]" to import messages without any prompts or dialogs
+ * Run with "--notify=swing|console|async|none" to choose how notifications are shown
+ * Run with "--archive file" to load messages from a JSON archive and save them on exit
+ * Run with "--wal base" to log every change to base.wal and recover it on startup
+ * Run with "--segment file" to browse a memory-mapped message archive, and add
+ * "--export-segment file" to a batch run to write one
+ * Run with "--deliver-to file" to deliver sent messages in the background to an outbox file
+ * Run with "--send-stored-after seconds" to send "Store for Later" messages once they have waited that long
+ * Run with "--serve [port]" to serve many users over TCP on one shared message engine
+ * Student: Dilshad Amardien (ST10488991)
+ */
+public class poe {
+    private static NotificationSink notificationSink;
+    private static Path archivePath;
+    private static Path walPath;
+    private static Path segmentPath;
+    private static Path exportSegmentPath;
+    private static Path outboxPath;
+    private static long sendStoredAfterSeconds = -1;
+    private static final int DEFAULT_SERVER_PORT = 5121;
+    
+    public static void main(String[] args) {
+        String notifyName = null;
+        String batchSource = null;
+        int serverPort = -1;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].startsWith("--notify=")) {
+                notifyName = args[i].substring("--notify=".length());
+                NotificationSinks.setDefault(NotificationSinks.forName(notifyName));
+            } else if (args[i].equals("--batch")) {
+                // Reads standard input when no file is given
+                batchSource = i + 1 < args.length && !args[i + 1].startsWith("--") ? args[++i] : "-";
+            } else if (args[i].equals("--archive") && i + 1 < args.length) {
+                archivePath = Paths.get(args[++i]);
+            } else if (args[i].equals("--wal") && i + 1 < args.length) {
+                walPath = Paths.get(args[++i]);
+            } else if (args[i].equals("--segment") && i + 1 < args.length) {
+                segmentPath = Paths.get(args[++i]);
+            } else if (args[i].equals("--export-segment") && i + 1 < args.length) {
+                exportSegmentPath = Paths.get(args[++i]);
+            } else if (args[i].equals("--deliver-to") && i + 1 < args.length) {
+                outboxPath = Paths.get(args[++i]);
+            } else if (args[i].equals("--send-stored-after") && i + 1 < args.length) {
+                sendStoredAfterSeconds = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--serve")) {
+                serverPort = i + 1 < args.length && args[i + 1].matches("\\d+") 
+                    ? Integer.parseInt(args[++i]) : DEFAULT_SERVER_PORT;
+            }
+        }
+        notificationSink = NotificationSinks.getDefault();
+        
+        // Headless batch mode stays silent unless a sink was asked for
+        if (batchSource != null) {
+            runBatchMode(batchSource, notifyName == null ? new NoOpNotificationSink() : notificationSink);
+            closeNotifications();
+            return;
+        }
+        
+        if (serverPort >= 0) {
+            runServer(serverPort);
+            return;
+        }
+        
+        System.out.println("🚀 Starting QuickChat Application...");
+        System.out.println("=====================================");
+        
+        // Initialize the login system
+        Login loginSystem = new Login();
+        Scanner scanner = new Scanner(System.in);
+        
+        // Show welcome message
+        showWelcomeMessage();
+        
+        // Registration process
+        System.out.println("\n" + "=".repeat(40));
+        System.out.println("📝 REGISTRATION");
+        System.out.println("=".repeat(40));
+        
+        System.out.print("Enter username: ");
+        String username = scanner.nextLine();
+        
+        System.out.print("Enter password: ");
+        String password = scanner.nextLine();
+        
+        System.out.print("Enter cell phone number: ");
+        String cellPhone = scanner.nextLine();
+        
+        // Register user
+        String registrationResult = loginSystem.registerUser(username, password, cellPhone);
+        System.out.println("\n" + registrationResult);
+        
+        // If registration was successful, proceed to login and messaging
+        if (registrationResult.equals("User registered successfully.")) {
+            System.out.println("\n" + "=".repeat(40));
+            System.out.println("🔐 LOGIN");
+            System.out.println("=".repeat(40));
+            
+            System.out.print("Enter username: ");
+            String loginUsername = scanner.nextLine();
+            
+            System.out.print("Enter password: ");
+            String loginPassword = scanner.nextLine();
+            
+            // Attempt login, a successful login starts a session
+            SessionManager sessionManager = new SessionManager(1000, 30, TimeUnit.MINUTES);
+            String sessionToken = loginSystem.loginUser(loginUsername, loginPassword, sessionManager);
+            boolean loginSuccess = sessionToken != null;
+            String loginStatus = loginSystem.returnLoginStatus(loginSuccess, "Dilshad", "Amardien");
+            System.out.println("\n" + loginStatus);
+            
+            // If login successful, proceed to messaging system
+            if (loginSuccess) {
+                showSuccessNotification("Login Successful!", "Welcome to QuickChat " + loginUsername + "!");
+                
+                // Initialize and start QuickChat system
+                QuickChat quickChat = new QuickChat();
+                quickChat.attachSession(sessionManager, sessionToken);
+                loadArchive(quickChat);
+                openWriteAheadLog(quickChat, true);
+                MessageSegment segment = openSegment(quickChat);
+                DeliveryPipeline pipeline = openDeliveryPipeline(quickChat);
+                StoredMessageScheduler scheduler = openScheduler(quickChat);
+                quickChat.startMessagingSystem(scanner);
+                closeScheduler(scheduler);
+                closeDeliveryPipeline(pipeline);
+                closeSegment(segment);
+                closeWriteAheadLog(quickChat);
+                saveArchive(quickChat);
+                sessionManager.invalidate(sessionToken);
+            } else {
+                showErrorNotification("Login Failed", "Invalid username or password. Please try again.");
+            }
+        } else {
+            showErrorNotification("Registration Failed", "Please fix the errors and try again.");
+        }
+        
+        scanner.close();
+        closeNotifications();
+        System.out.println("\n=====================================");
+        System.out.println("👋 QuickChat Application Closed");
+        System.out.println("=====================================");
+    }
+    
+    private static void runBatchMode(String source, NotificationSink batchSink) {
+        QuickChat quickChat = new QuickChat(batchSink, false);
+        BatchMessageImporter importer = new BatchMessageImporter(quickChat);
+        loadArchive(quickChat);
+        // Batch imports do not wait for each record, the log is committed in groups
+        openWriteAheadLog(quickChat, false);
+        DeliveryPipeline pipeline = openDeliveryPipeline(quickChat);
+        
+        try (BufferedReader reader = source.equals("-") 
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Paths.get(source), StandardCharsets.UTF_8)) {
+            importer.importFrom(reader);
+        } catch (IOException e) {
+            System.err.println("❌ Could not read batch input: " + e.getMessage());
+            System.exit(1);
+        }
+        
+        System.out.println(importer.getSummary());
+        closeDeliveryPipeline(pipeline);
+        closeWriteAheadLog(quickChat);
+        saveArchive(quickChat);
+        
+        if (exportSegmentPath != null) {
+            try {
+                int written = quickChat.writeArchiveSegment(exportSegmentPath);
+                System.out.println("📦 Wrote " + written + " message(s) to segment " + exportSegmentPath);
+            } catch (IOException e) {
+                System.err.println("❌ Could not write message segment: " + e.getMessage());
+            }
+        }
+    }
+    
+    private static void runServer(int port) {
+        // Sessions print their own notifications, this front end only loads and saves
+        MessageEngine messageEngine = new MessageEngine();
+        QuickChat quickChat = new QuickChat(messageEngine, new NoOpNotificationSink(), false);
+        loadArchive(quickChat);
+        openWriteAheadLog(quickChat, true);
+        
+        DeliveryPipeline pipeline = openDeliveryPipeline(quickChat);
+        StoredMessageScheduler scheduler = openScheduler(quickChat);
+        
+        ChatServer server;
+        try {
+            server = new ChatServer(port, messageEngine, new Login());
+            server.setDeliveryPipeline(pipeline);
+            server.setStoredMessageScheduler(scheduler, TimeUnit.SECONDS.toMillis(sendStoredAfterSeconds));
+        } catch (IOException e) {
+            System.err.println("❌ Could not start server: " + e.getMessage());
+            closeScheduler(scheduler);
+            closeDeliveryPipeline(pipeline);
+            closeWriteAheadLog(quickChat);
+            return;
+        }
+        
+        // Ctrl+C disconnects everyone, then the log and archive are closed as usual
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+            } catch (IOException e) {
+                System.err.println("❌ Could not stop server: " + e.getMessage());
+            }
+            closeScheduler(scheduler);
+            closeDeliveryPipeline(pipeline);
+            closeWriteAheadLog(quickChat);
+            saveArchive(quickChat);
+            System.out.println("👋 QuickChat server stopped");
+        }));
+        
+        server.start();
+        System.out.println("🌐 QuickChat server listening on localhost:" + server.getPort() + " (Ctrl+C to stop)");
+        try {
+            server.awaitTermination();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    // Stored messages, including ones loaded from earlier runs, are sent once they are due
+    private static StoredMessageScheduler openScheduler(QuickChat quickChat) {
+        if (sendStoredAfterSeconds < 0) {
+            return null;
+        }
+        StoredMessageScheduler scheduler = new StoredMessageScheduler(quickChat::sendStoredMessages);
+        quickChat.scheduleStoredMessages(scheduler, TimeUnit.SECONDS.toMillis(sendStoredAfterSeconds));
+        int waiting = quickChat.scheduleExistingStoredMessages();
+        scheduler.start();
+        if (waiting > 0) {
+            System.out.println("⏰ " + waiting + " stored message(s) will be sent in " + sendStoredAfterSeconds + " second(s)");
+        }
+        return scheduler;
+    }
+    
+    private static void closeScheduler(StoredMessageScheduler scheduler) {
+        if (scheduler != null) {
+            scheduler.close();
+        }
+    }
+    
+    private static DeliveryPipeline openDeliveryPipeline(QuickChat quickChat) {
+        if (outboxPath == null) {
+            return null;
+        }
+        try {
+            DeliveryPipeline pipeline = new DeliveryPipeline(new FileMessageTransport(outboxPath));
+            quickChat.attachDeliveryPipeline(pipeline);
+            pipeline.setUndeliveredHandler(quickChat::storeUndelivered);
+            return pipeline;
+        } catch (IOException e) {
+            System.err.println("❌ Could not open outbox: " + e.getMessage());
+            return null;
+        }
+    }
+    
+    // Deliver whatever is still queued, then report how delivery went
+    private static void closeDeliveryPipeline(DeliveryPipeline pipeline) {
+        if (pipeline == null) {
+            return;
+        }
+        try {
+            pipeline.close();
+            System.out.println(pipeline.getSummary());
+        } catch (IOException e) {
+            System.err.println("❌ Could not close outbox: " + e.getMessage());
+        }
+    }
+    
+    private static MessageSegment openSegment(QuickChat quickChat) {
+        if (segmentPath == null) {
+            return null;
+        }
+        try {
+            MessageSegment segment = MessageSegment.open(segmentPath);
+            quickChat.attachArchive(segment);
+            System.out.println("📦 Attached archive of " + segment.size() + " message(s) from " + segmentPath);
+            return segment;
+        } catch (IOException e) {
+            System.err.println("❌ Could not open message segment: " + e.getMessage());
+            return null;
+        }
+    }
+    
+    private static void closeSegment(MessageSegment segment) {
+        if (segment == null) {
+            return;
+        }
+        try {
+            segment.close();
+        } catch (IOException e) {
+            System.err.println("❌ Could not close message segment: " + e.getMessage());
+        }
+    }
+    
+    private static void loadArchive(QuickChat quickChat) {
+        if (archivePath == null || !Files.exists(archivePath)) {
+            return;
+        }
+        try {
+            int loaded = quickChat.loadMessages(archivePath);
+            System.out.println("📂 Loaded " + loaded + " message(s) from " + archivePath);
+        } catch (IOException e) {
+            System.err.println("❌ Could not load message archive: " + e.getMessage());
+        }
+    }
+    
+    private static void openWriteAheadLog(QuickChat quickChat, boolean waitForCommit) {
+        if (walPath == null) {
+            return;
+        }
+        try {
+            quickChat.enableWriteAheadLog(walPath, waitForCommit);
+            System.out.println("📜 Recovered " + quickChat.getTotalMessagesCount() + " message(s) from " + walPath);
+        } catch (IOException e) {
+            System.err.println("❌ Could not open message log: " + e.getMessage());
+        }
+    }
+    
+    private static void closeWriteAheadLog(QuickChat quickChat) {
+        try {
+            quickChat.closeWriteAheadLog();
+        } catch (IOException e) {
+            System.err.println("❌ Could not close message log: " + e.getMessage());
+        }
+    }
+    
+    private static void saveArchive(QuickChat quickChat) {
+        if (archivePath == null) {
+            return;
+        }
+        try {
+            int saved = quickChat.saveMessages(archivePath);
+            System.out.println("💾 Saved " + saved + " message(s) to " + archivePath);
+        } catch (IOException e) {
+            System.err.println("❌ Could not save message archive: " + e.getMessage());
+        }
+    }
+    
+    private static void showWelcomeMessage() {
+        String welcomeMessage = 
+            "=====================================\n" +
+            "🚀 WELCOME TO QUICKCHAT MESSAGING SYSTEM\n" +
+            "=====================================\n" +
+            "Student: Dilshad Amardien (ST10488991)\n" +
+            "Module: PROG5121 Programming 1A\n" +
+            "=====================================";
+        
+        System.out.println(welcomeMessage);
+    }
+    
+    private static void showSuccessNotification(String title, String message) {
+        notificationSink.success(title, message);
+    }
+    
+    private static void showErrorNotification(String title, String message) {
+        notificationSink.error(title, message);
+    }
+    
+    // Let queued notifications finish before the program exits
+    private static void closeNotifications() {
+        if (notificationSink instanceof AsyncNotificationSink) {
+            ((AsyncNotificationSink) notificationSink).close();
+        }
+    }
 }
\ No newline at end of file